@@ -0,0 +1,51 @@
+package com.ushakov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+/**
+ * Items submitted with an equal key through {@link FixedExecutorService#coalesce}, handed to the sink in a single
+ * call. The batch takes more items until it starts to run, after that the next item opens a new batch.
+ */
+final class CoalescedBatch<T> implements Runnable {
+    private final Object key;
+    private final Consumer<? super List<T>> sink;
+    private final ConcurrentMap<Object, CoalescedBatch<?>> open;
+    // Null once the batch has started. Guarded by this.
+    private List<T> items = new ArrayList<>();
+
+    CoalescedBatch(Object key, T first, Consumer<? super List<T>> sink, ConcurrentMap<Object, CoalescedBatch<?>> open) {
+        this.key = key;
+        this.sink = sink;
+        this.open = open;
+        items.add(first);
+    }
+
+    /**
+     * @return false if the batch has already started, the item then has to go into a new one
+     */
+    synchronized boolean add(T item) {
+        if (items == null) {
+            return false;
+        }
+        items.add(item);
+        return true;
+    }
+
+    synchronized boolean isStarted() {
+        return items == null;
+    }
+
+    @Override
+    public void run() {
+        List<T> batch;
+        synchronized (this) {
+            batch = items;
+            items = null;
+        }
+        open.remove(key, this);
+        sink.accept(batch);
+    }
+}
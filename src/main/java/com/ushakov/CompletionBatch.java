@@ -0,0 +1,278 @@
+package com.ushakov;
+
+import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link TaskBatch} whose results can be consumed in completion order, as soon as each task is done, instead of after
+ * the slowest one. Submitted through {@link FixedExecutorService#submitStreaming(Collection)}.
+ *
+ * Each task puts itself on a lock-free queue of completions when it completes, fails or is cancelled, so consumers
+ * never scan the batch for finished tasks. The completions are taken either {@code CompletionService}-style with
+ * {@link #poll()} and {@link #take()}, or pushed to one {@link Subscriber} that asks for them with
+ * {@link Subscription#request(long)}. Not both: a future taken by {@code poll} is not published and the other way
+ * round.
+ */
+public class CompletionBatch<T> extends TaskBatch<T> {
+    private final Queue<TaskFuture<T>> completions = new ConcurrentLinkedQueue<>();
+    // One permit per queued completion, for take() to wait on.
+    private final Semaphore available = new Semaphore(0);
+    // Futures neither handed out by poll() or take() nor claimed by one that waits for a completion.
+    private final AtomicInteger untaken;
+    private final AtomicReference<Publication<T>> publication = new AtomicReference<>();
+
+    CompletionBatch(Collection<? extends Callable<T>> callables, Executor asyncExecutor) {
+        super(callables, asyncExecutor);
+        this.untaken = new AtomicInteger(callables.size());
+    }
+
+    @Override
+    void completed(TaskFuture<T> task) {
+        completions.offer(task);
+        available.release();
+        // After the queue, so that a finished batch has every completion queued.
+        super.completed(task);
+        Publication<T> current = publication.get();
+        if (current != null) {
+            current.drain();
+        }
+    }
+
+    /**
+     * Takes the future of the next task that is done, or returns null if none is done yet or all were taken.
+     */
+    public Future<T> poll() {
+        if (!reserve()) {
+            return null;
+        }
+        if (!available.tryAcquire()) {
+            untaken.incrementAndGet();
+            return null;
+        }
+        return completions.poll();
+    }
+
+    /**
+     * Takes the future of the next task that is done, waiting up to the timeout for one.
+     *
+     * @return the future, or null if none was done in time or all were taken
+     */
+    public Future<T> poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!reserve()) {
+            return null;
+        }
+        boolean acquired = false;
+        try {
+            acquired = available.tryAcquire(timeout, unit);
+        } finally {
+            if (!acquired) {
+                untaken.incrementAndGet();
+            }
+        }
+        return acquired ? completions.poll() : null;
+    }
+
+    /**
+     * Takes the future of the next task that is done, waiting for one.
+     *
+     * @throws NoSuchElementException if the futures of all tasks were taken already
+     */
+    public Future<T> take() throws InterruptedException {
+        if (!reserve()) {
+            throw new NoSuchElementException("Every task of the batch has been taken");
+        }
+        try {
+            available.acquire();
+        } catch (InterruptedException e) {
+            untaken.incrementAndGet();
+            throw e;
+        }
+        return completions.poll();
+    }
+
+    /**
+     * Claims one of the futures not handed out yet before waiting for a completion, so that every waiter is sure to
+     * get one. A future claimed by a waiting {@code poll} or {@code take} counts as taken for the others until the
+     * claim is given back.
+     */
+    private boolean reserve() {
+        int left;
+        do {
+            left = untaken.get();
+            if (left == 0) {
+                return false;
+            }
+        } while (!untaken.compareAndSet(left, left - 1));
+        return true;
+    }
+
+    /**
+     * Publishes the results to {@code subscriber} in completion order as it requests them. A failed task ends the
+     * stream with {@code onError}, a cancelled one with a {@link CancellationException}; cancelling the subscription
+     * cancels the tasks that have not completed. Results are delivered on the thread that calls {@code request} when
+     * they are already there, otherwise on the worker that completes the task, so a slow subscriber holds up that
+     * worker like an inline continuation does. A batch has at most one subscriber, a second one gets
+     * {@code onError} with an {@link IllegalStateException}.
+     */
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException();
+        }
+        Publication<T> current = new Publication<>(this, subscriber);
+        if (!publication.compareAndSet(null, current)) {
+            subscriber.onSubscribe(CLOSED);
+            subscriber.onError(new IllegalStateException("The batch already has a subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(current);
+        current.drain();
+    }
+
+    /**
+     * Receives the results of a batch, shaped after {@code java.util.concurrent.Flow.Subscriber}, which needs Java 9
+     * while this library still runs on Java 8. Signals are never concurrent.
+     */
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    /**
+     * Demand of a {@link Subscriber}, shaped after {@code java.util.concurrent.Flow.Subscription}.
+     */
+    public interface Subscription {
+        /**
+         * Asks for up to {@code n} more results, a non-positive {@code n} ends the stream with an
+         * {@link IllegalArgumentException}.
+         */
+        void request(long n);
+
+        void cancel();
+    }
+
+    private static final Subscription CLOSED = new Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    /**
+     * The subscription of the one subscriber. Whoever raises {@code wip} from zero emits, on behalf of every thread
+     * that bumped it in the meantime, which keeps the signals serial without a lock.
+     */
+    private static final class Publication<T> implements Subscription {
+        private final CompletionBatch<T> batch;
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private int emitted;
+        private volatile boolean done;
+        private volatile Throwable badRequest;
+
+        Publication(CompletionBatch<T> batch, Subscriber<? super T> subscriber) {
+            this.batch = batch;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0L) {
+                badRequest = new IllegalArgumentException("Non-positive request: " + n);
+            } else {
+                long current;
+                do {
+                    current = demand.get();
+                } while (!demand.compareAndSet(current, current + n < 0L ? Long.MAX_VALUE : current + n));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!done) {
+                done = true;
+                batch.cancel(false);
+            }
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (!done) {
+                Throwable error = badRequest;
+                if (error != null) {
+                    terminate(error);
+                    return;
+                }
+                if (emitted == batch.size()) {
+                    done = true;
+                    subscriber.onComplete();
+                    return;
+                }
+                if (demand.get() == 0L) {
+                    return;
+                }
+                TaskFuture<T> task = batch.completions.poll();
+                if (task == null) {
+                    return;
+                }
+                emitted++;
+                T value;
+                try {
+                    value = task.get();
+                } catch (ExecutionException e) {
+                    terminate(e.getCause());
+                    return;
+                } catch (CancellationException e) {
+                    terminate(e);
+                    return;
+                } catch (InterruptedException e) {
+                    // Not reached, the task is done.
+                    Thread.currentThread().interrupt();
+                    terminate(e);
+                    return;
+                }
+                if (demand.get() != Long.MAX_VALUE) {
+                    demand.decrementAndGet();
+                }
+                subscriber.onNext(value);
+            }
+        }
+
+        private void terminate(Throwable error) {
+            done = true;
+            batch.cancel(false);
+            subscriber.onError(error);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.ushakov;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit on the number of tasks a {@link FixedExecutorService} built with
+ * {@link FixedExecutorService.Builder#adaptiveConcurrency(int, int)} runs at once, get it with
+ * {@link FixedExecutorService#getConcurrencyLimiter()}. A worker takes a task only while the running tasks are below
+ * the limit, the others wait in the queue.
+ *
+ * The limit follows TCP Vegas. The execution time without load is the lowest window average seen so far, and
+ * {@code concurrency * (1 - noLoad / executionTime)} estimates how many of the running tasks are waiting in the
+ * backend they call instead of being served. At the end of a window of at least {@value #MIN_SAMPLES} tasks the limit
+ * grows by one step while fewer than 3 steps of tasks wait there and tasks were left waiting in the pool's queue, and
+ * shrinks by one step while more than 6 steps wait, a step being {@code log10(limit)} and at least 1. It settles just
+ * above the concurrency where the backend starts to queue. Every {@value #PROBE_INTERVAL} windows the limit drops to
+ * the minimum for one window to measure the no-load time again, as the backend may have got slower for good.
+ *
+ * The getters report the inputs of the last update.
+ */
+public final class ConcurrencyLimiter {
+    static final int MIN_SAMPLES = 10;
+    static final int PROBE_INTERVAL = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+    private volatile int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // Samples of the current window. A sample recorded while the window is being closed may be split between two
+    // windows, which the averages do not notice.
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder executionNanos = new LongAdder();
+    private final LongAdder concurrency = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+    private final LongAdder throttledCount = new LongAdder();
+    private final ReentrantLock update = new ReentrantLock();
+    private volatile long windowEnd;
+    // While probing, tasks that started before the limit dropped are left out of the window.
+    private volatile boolean probing;
+    private volatile long probeStart;
+    // Guarded by update.
+    private int resumeLimit;
+    private int windowsToProbe = PROBE_INTERVAL;
+    private volatile long lastExecutionNanos;
+    private volatile long noLoadNanos;
+    private volatile double lastConcurrency;
+    private volatile double estimatedQueue;
+
+    ConcurrencyLimiter(int minLimit, int initialLimit, int maxLimit, long windowNanos, long now) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = windowNanos;
+        this.limit = initialLimit;
+        this.windowEnd = now + windowNanos;
+    }
+
+    /**
+     * Claims a slot below the limit for a task about to be taken.
+     */
+    boolean tryAcquire() {
+        int count;
+        do {
+            count = inFlight.get();
+            if (count >= limit) {
+                return false;
+            }
+        } while (!inFlight.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    boolean hasPermit() {
+        return inFlight.get() < limit;
+    }
+
+    /**
+     * Records a task that ran from {@code start} to {@code end}, {@code throttled} if other tasks were waiting in the
+     * queue when it finished, and closes the window once it is over.
+     *
+     * @return by how much the limit was raised, so that as many more workers can be woken up
+     */
+    int record(long start, long end, boolean throttled) {
+        if (!probing || start - probeStart >= 0L) {
+            executionNanos.add(end - start);
+            concurrency.add(inFlight.get());
+            if (throttled) {
+                this.throttled.increment();
+            }
+            samples.increment();
+        }
+        if (end - windowEnd < 0L || !update.tryLock()) {
+            return 0;
+        }
+        try {
+            return end - windowEnd >= 0L ? endWindow(end) : 0;
+        } finally {
+            update.unlock();
+        }
+    }
+
+    private int endWindow(long now) {
+        if (samples.sum() < MIN_SAMPLES) {
+            return 0;
+        }
+        long count = samples.sumThenReset();
+        double execution = (double) executionNanos.sumThenReset() / count;
+        double concurrency = (double) this.concurrency.sumThenReset() / count;
+        long throttled = this.throttled.sumThenReset();
+        throttledCount.add(throttled);
+        windowEnd = now + windowNanos;
+        lastExecutionNanos = (long) execution;
+        lastConcurrency = concurrency;
+        int limit = this.limit;
+        if (probing) {
+            probing = false;
+            noLoadNanos = Math.max(1L, (long) execution);
+            return setLimit(resumeLimit, limit);
+        }
+        long noLoad = noLoadNanos;
+        if (noLoad == 0L || execution < noLoad) {
+            noLoadNanos = noLoad = Math.max(1L, (long) execution);
+        }
+        double queue = Math.max(0.0, concurrency * (1.0 - noLoad / execution));
+        estimatedQueue = queue;
+        int step = Math.max(1, (int) Math.log10(limit));
+        int next = limit;
+        if (queue > 6 * step) {
+            next = Math.max(minLimit, limit - step);
+        } else if (queue < 3 * step && throttled > 0L) {
+            next = Math.min(maxLimit, limit + step);
+        }
+        if (--windowsToProbe == 0) {
+            windowsToProbe = PROBE_INTERVAL;
+            if (next > minLimit) {
+                resumeLimit = next;
+                next = minLimit;
+                probeStart = now;
+                probing = true;
+            }
+        }
+        return setLimit(next, limit);
+    }
+
+    private int setLimit(int next, int previous) {
+        limit = next;
+        return Math.max(0, next - previous);
+    }
+
+    /**
+     * Most tasks allowed to run at once right now.
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    /**
+     * The capacity of the pool.
+     */
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * Number of tasks running right now.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Average execution time of the tasks of the last window.
+     */
+    public long getExecutionTimeNanos() {
+        return lastExecutionNanos;
+    }
+
+    /**
+     * Execution time the limit takes as that of a task that does not queue in the backend, 0 until the first window
+     * has ended.
+     */
+    public long getNoLoadExecutionTimeNanos() {
+        return noLoadNanos;
+    }
+
+    /**
+     * Average number of tasks running at once in the last window, as seen by the tasks finishing.
+     */
+    public double getConcurrency() {
+        return lastConcurrency;
+    }
+
+    /**
+     * Estimated number of running tasks that were waiting in the backend rather than being served in the last window
+     * that was not a probe.
+     */
+    public double getEstimatedQueue() {
+        return estimatedQueue;
+    }
+
+    /**
+     * Number of tasks that finished with other tasks waiting in the queue, which tells the limit that it holds work
+     * back. Counted when a window ends.
+     */
+    public long getThrottledCount() {
+        return throttledCount.sum();
+    }
+
+    /**
+     * Whether the limit is down at the minimum to measure the no-load execution time.
+     */
+    public boolean isProbing() {
+        return probing;
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter{limit=" + limit
+                + ", inFlight=" + inFlight.get()
+                + ", executionTimeNanos=" + lastExecutionNanos
+                + ", noLoadExecutionTimeNanos=" + noLoadNanos
+                + ", concurrency=" + lastConcurrency
+                + ", estimatedQueue=" + estimatedQueue + "}";
+    }
+}
@@ -0,0 +1,46 @@
+package com.ushakov;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Point in time on the {@link System#nanoTime()} clock that timed operations wait for.
+ *
+ * The clock is monotonic, so wall-clock adjustments do not shorten or stretch a wait. Only differences between two
+ * readings are ever compared, which keeps the arithmetic correct across the wrap-around of {@code nanoTime} and lets a
+ * timeout as large as {@link Long#MAX_VALUE} nanoseconds mean "practically forever".
+ */
+final class Deadline {
+    private final long start;
+    private final long timeoutNanos;
+
+    private Deadline(long start, long timeoutNanos) {
+        this.start = start;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    static Deadline afterNanos(long nanos) {
+        return new Deadline(System.nanoTime(), Math.max(0L, nanos));
+    }
+
+    /**
+     * Time left until the deadline, 0 once it has passed.
+     */
+    long remainingNanos() {
+        return Math.max(0L, timeoutNanos - (System.nanoTime() - start));
+    }
+
+    /**
+     * Parks the current thread until the deadline at the latest, it may also return early on unpark, interrupt or
+     * spuriously.
+     *
+     * @return false if the deadline had already passed and the thread did not park
+     */
+    boolean park(Object blocker) {
+        long remaining = remainingNanos();
+        if (remaining == 0L) {
+            return false;
+        }
+        LockSupport.parkNanos(blocker, remaining);
+        return true;
+    }
+}
@@ -0,0 +1,154 @@
+package com.ushakov;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Shared task queue that hands out the task with the earliest deadline first (EDF).
+ *
+ * Tasks are offered as {@link DeadlineTask}, plain tasks are due the default slack after they were queued and never
+ * shed, so they still get their turn while tasks with deadlines keep arriving. The entries sit in a skip list ordered
+ * by due time and then by arrival, producers and workers do not share a lock. They come out still wrapped: a worker
+ * that gets to an entry after its deadline drops the task instead of running it, so that an overloaded pool spends
+ * its time on the tasks that can still make it. A dropped future fails with a {@link TimeoutException}.
+ */
+final class DeadlineQueue extends AbstractQueue<Runnable> {
+    private static final Comparator<DeadlineTask> EARLIEST_FIRST = (a, b) -> {
+        // Due times are System.nanoTime() readings, only their difference is meaningful.
+        long difference = a.due - b.due;
+        if (difference != 0L) {
+            return difference < 0L ? -1 : 1;
+        }
+        return Long.compare(a.sequence, b.sequence);
+    };
+
+    private final ConcurrentSkipListSet<DeadlineTask> entries = new ConcurrentSkipListSet<>(EARLIEST_FIRST);
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+    private final int capacity;
+    private final long defaultSlackNanos;
+    final LongAdder shedCount = new LongAdder();
+
+    /**
+     * @param capacity capacity of the queue or {@link FixedExecutorService#UNBOUNDED}
+     */
+    DeadlineQueue(int capacity, long defaultSlackNanos) {
+        this.capacity = capacity;
+        this.defaultSlackNanos = defaultSlackNanos;
+    }
+
+    /**
+     * Tags a task with the {@link System#nanoTime()} of its deadline.
+     */
+    DeadlineTask wrap(Runnable task, long deadline) {
+        return new DeadlineTask(task, this, true, deadline);
+    }
+
+    List<Runnable> wrapAll(List<? extends Runnable> tasks, long deadline) {
+        List<Runnable> entries = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            entries.add(wrap(task, deadline));
+        }
+        return entries;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        int s;
+        do {
+            s = size.get();
+            if (capacity != FixedExecutorService.UNBOUNDED && s >= capacity) {
+                return false;
+            }
+        } while (!size.compareAndSet(s, s + 1));
+        long now = System.nanoTime();
+        DeadlineTask entry = task instanceof DeadlineTask
+                ? (DeadlineTask) task
+                : new DeadlineTask(task, this, false, now + defaultSlackNanos);
+        entry.enqueuedAt = now;
+        entry.sequence = sequence.getAndIncrement();
+        entries.add(entry);
+        return true;
+    }
+
+    @Override
+    public Runnable poll() {
+        DeadlineTask entry = entries.pollFirst();
+        if (entry != null) {
+            size.decrementAndGet();
+        }
+        return entry;
+    }
+
+    /**
+     * Drops a task whose deadline has passed before a worker got to it.
+     */
+    void shed(Runnable task) {
+        if (!(task instanceof TaskFuture)
+                || ((TaskFuture<?>) task).fail(new TimeoutException("Deadline passed before the task started"))) {
+            shedCount.increment();
+        }
+    }
+
+    /**
+     * The entry that {@link #poll()} would take, still wrapped like {@code poll} hands it out.
+     */
+    @Override
+    public Runnable peek() {
+        Iterator<DeadlineTask> iterator = entries.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Runnable> filter) {
+        boolean removed = false;
+        for (DeadlineTask entry : entries) {
+            if (filter.test(entry.task) && entries.remove(entry)) {
+                size.decrementAndGet();
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Weakly consistent iterator in deadline order. Removal through the iterator is not supported.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        Iterator<DeadlineTask> iterator = entries.iterator();
+        return new Iterator<Runnable>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                return iterator.next().task;
+            }
+        };
+    }
+}
@@ -0,0 +1,30 @@
+package com.ushakov;
+
+/**
+ * Task in a {@link DeadlineQueue}, which a worker drops instead of running once its deadline has passed.
+ */
+final class DeadlineTask extends TaskWrapper {
+    private final DeadlineQueue queue;
+    // False for a task submitted without a deadline, which is ordered by its due time but never shed.
+    final boolean hasDeadline;
+    // System.nanoTime() of the deadline, or by when a task without one should have run.
+    long due;
+    // Arrival order among tasks that are due at the same time.
+    long sequence;
+
+    DeadlineTask(Runnable task, DeadlineQueue queue, boolean hasDeadline, long due) {
+        super(task);
+        this.queue = queue;
+        this.hasDeadline = hasDeadline;
+        this.due = due;
+    }
+
+    @Override
+    public void run() {
+        if (hasDeadline && System.nanoTime() - due >= 0L) {
+            queue.shed(task);
+        } else {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.ushakov;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Instrumentation of a {@link FixedExecutorService} built with {@code metricsEnabled(true)}.
+ *
+ * Workers record into their own {@link WorkerStats}, nothing is aggregated on the hot path: {@link #snapshot()} sums
+ * the per-worker counters and histograms on demand. Latency histograms are sampled, see
+ * {@link FixedExecutorService.Builder#latencySamplingInterval(int)}.
+ */
+public final class ExecutorMetrics implements ExecutorMetricsMXBean {
+    private final FixedExecutorService executorService;
+    final int sampleMask;
+    // Task threads in thread-per-task mode and the counters of workers that have exited.
+    final WorkerStats sharedStats = new WorkerStats("shared", false);
+    private volatile ObjectName objectName;
+
+    ExecutorMetrics(FixedExecutorService executorService, int samplingInterval) {
+        this.executorService = executorService;
+        int interval = 1;
+        while (interval < samplingInterval) {
+            interval <<= 1;
+        }
+        this.sampleMask = interval - 1;
+    }
+
+    /**
+     * Whether the task being enqueued should carry its enqueue time.
+     */
+    boolean sampleEnqueue() {
+        return sampleMask == 0 || (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+    }
+
+    void retire(WorkerStats stats) {
+        sharedStats.absorb(stats);
+    }
+
+    public MetricsSnapshot snapshot() {
+        List<MetricsSnapshot.WorkerMetrics> workers = new ArrayList<>();
+        List<HistogramRecorder> queueWait = new ArrayList<>();
+        List<HistogramRecorder> execution = new ArrayList<>();
+        long tasksRun = sharedStats.tasksRun;
+        long busyNanos = sharedStats.busyNanos;
+        long idleNanos = sharedStats.idleNanos;
+        long steals = sharedStats.steals;
+        queueWait.add(sharedStats.queueWait);
+        execution.add(sharedStats.execution);
+        for (Worker worker : executorService.workerList) {
+            WorkerStats stats = worker.stats;
+            if (stats == null) {
+                continue;
+            }
+            MetricsSnapshot.WorkerMetrics metrics = new MetricsSnapshot.WorkerMetrics(stats);
+            workers.add(metrics);
+            tasksRun += metrics.getTasksRun();
+            busyNanos += metrics.getBusyNanos();
+            idleNanos += metrics.getIdleNanos();
+            steals += metrics.getSteals();
+            queueWait.add(stats.queueWait);
+            execution.add(stats.execution);
+        }
+        return new MetricsSnapshot(workers, executorService.getQueueDepth(), executorService.getRejectedTaskCount(),
+                tasksRun, busyNanos, idleNanos, steals, LatencyHistogram.of(queueWait), LatencyHistogram.of(execution));
+    }
+
+    /**
+     * Registers this object with the platform MBean server as {@code com.ushakov:type=FixedExecutorService,name=...}.
+     */
+    public synchronized void registerMBean(String name) {
+        if (objectName != null) {
+            throw new IllegalStateException("Already registered as " + objectName);
+        }
+        try {
+            ObjectName objectName = new ObjectName("com.ushakov:type=FixedExecutorService,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register metrics MBean " + name, e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.unregisterMBean(objectName);
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot unregister metrics MBean " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    @Override
+    public int getWorkerCount() {
+        return executorService.workerList.size();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return executorService.getQueueDepth();
+    }
+
+    @Override
+    public long getRejectedTaskCount() {
+        return executorService.getRejectedTaskCount();
+    }
+
+    @Override
+    public long getTasksRun() {
+        return snapshot().getTasksRun();
+    }
+
+    @Override
+    public long getBusyNanos() {
+        return snapshot().getBusyNanos();
+    }
+
+    @Override
+    public long getIdleNanos() {
+        return snapshot().getIdleNanos();
+    }
+
+    @Override
+    public long getSteals() {
+        return snapshot().getSteals();
+    }
+
+    @Override
+    public double getUtilization() {
+        return snapshot().getUtilization();
+    }
+
+    @Override
+    public long getQueueWaitP50Nanos() {
+        return snapshot().getQueueWaitTime().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getQueueWaitP99Nanos() {
+        return snapshot().getQueueWaitTime().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getQueueWaitP999Nanos() {
+        return snapshot().getQueueWaitTime().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getExecutionP50Nanos() {
+        return snapshot().getExecutionTime().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getExecutionP99Nanos() {
+        return snapshot().getExecutionTime().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getExecutionP999Nanos() {
+        return snapshot().getExecutionTime().getValueAtPercentile(99.9);
+    }
+}
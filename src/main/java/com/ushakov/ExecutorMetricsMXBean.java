@@ -0,0 +1,34 @@
+package com.ushakov;
+
+/**
+ * JMX view of {@link ExecutorMetrics}, every attribute is computed from a fresh snapshot.
+ */
+public interface ExecutorMetricsMXBean {
+    int getWorkerCount();
+
+    int getQueueDepth();
+
+    long getRejectedTaskCount();
+
+    long getTasksRun();
+
+    long getBusyNanos();
+
+    long getIdleNanos();
+
+    long getSteals();
+
+    double getUtilization();
+
+    long getQueueWaitP50Nanos();
+
+    long getQueueWaitP99Nanos();
+
+    long getQueueWaitP999Nanos();
+
+    long getExecutionP50Nanos();
+
+    long getExecutionP99Nanos();
+
+    long getExecutionP999Nanos();
+}
@@ -1,293 +1,2455 @@
 package com.ushakov;
 
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
-public class FixedExecutorService implements ExecutorService {
-    boolean isShutdownInProgress;
+public class FixedExecutorService implements ScheduledExecutorService {
+    public static final int UNBOUNDED = 0;
+
+    private static final AtomicInteger POOL_SEQUENCE = new AtomicInteger();
+    private static final AtomicLongFieldUpdater<FixedExecutorService> BACKLOG_SINCE =
+            AtomicLongFieldUpdater.newUpdater(FixedExecutorService.class, "backlogSince");
+    // A joining worker that found nothing to help with looks again at least every 100 microseconds.
+    private static final IdleStrategy JOIN_BACKOFF = IdleStrategy.backoff(50, 10, 1_000L, 100_000L);
+
+    // Run state in the high bits of ctl, only ever moving forward, and the number of started workers, or running task
+    // threads in thread-per-task mode, in the low bits. Keeping both in one word lets the last worker out decide on
+    // termination without racing a worker that is being started.
+    static final int COUNT_BITS = Integer.SIZE - 3;
+    static final int COUNT_MASK = (1 << COUNT_BITS) - 1;
+    static final int RUNNING = 0;
+    static final int SHUTDOWN = 1 << COUNT_BITS;
+    static final int STOP = 2 << COUNT_BITS;
+    static final int TERMINATED = 3 << COUNT_BITS;
+
+    final AtomicInteger ctl = new AtomicInteger(RUNNING);
+    final CountDownLatch termination = new CountDownLatch(1);
+    // Tasks queued after the pool stopped or terminated, taken out for their submitters to claim, see settle().
+    // Also the lock that shutdownNow() drains the queues under.
+    final List<Runnable> stranded = new ArrayList<>();
     int capacity;
-    Deque<Runnable> taskList = new ConcurrentLinkedDeque<>();
-    List<Thread> threadList = new ArrayList<>();
+    final SchedulingMode schedulingMode;
+    final int queueCapacity;
+    final RejectionPolicy rejectionPolicy;
+    final IdleStrategy idleStrategy;
+    Queue<Runnable> taskList;
+    final RingBufferQueue<Runnable> ringBuffer;
+    final PriorityLaneQueue lanes;
+    final TenantQueue tenants;
+    final DeadlineQueue deadlines;
+    List<Thread> threadList = new CopyOnWriteArrayList<>();
+    final List<Worker> workerList = new CopyOnWriteArrayList<>();
+    final Deque<Worker> idleWorkers = new ConcurrentLinkedDeque<>();
+    final LongAdder rejectedTaskCount = new LongAdder();
+    final ThreadFactory taskThreadFactory;
+    final Semaphore concurrencyLimit;
+    final Set<Thread> taskThreads = ConcurrentHashMap.newKeySet();
+    final ExecutorMetrics metrics;
+    // Wrappers carrying the enqueue time of sampled plain tasks, null unless they are recycled.
+    final TaskRecycler<TimestampedTask> timestampedTasks;
+    final Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
+    final LongAdder replacedWorkerCount = new LongAdder();
+    final HashedTimingWheel timer;
+    // Elastic sizing, coreCapacity == capacity for a fixed pool.
+    final int coreCapacity;
+    final long keepAliveNanos;
+    final int scaleUpQueueDepth;
+    final long scaleUpQueueWaitNanos;
+    // System.nanoTime() since when tasks have been queued with no parked worker to take them, 0 while there is none.
+    volatile long backlogSince;
+    final AtomicBoolean backlogCheckScheduled = new AtomicBoolean();
+    final ThreadFactory workerThreadFactory;
+    final WorkerPlacement placement;
+    final AtomicInteger workerIndexes = new AtomicInteger();
+    // Serial lanes that keys are hashed onto, created on first use.
+    final AtomicReferenceArray<SerialLane> serialLanes;
+    // Write-ahead log of durable tasks, null unless enabled.
+    final TaskJournal journal;
+    // Tasks a worker takes off the shared queue at once, 1 takes them one by one.
+    final int drainBatchSize;
+    // Batches of coalesced items still open for more, by key.
+    final ConcurrentMap<Object, CoalescedBatch<?>> coalescing = new ConcurrentHashMap<>();
+    // Null unless the pool adapts the number of tasks running at once.
+    final ConcurrencyLimiter limiter;
 
     FixedExecutorService(int capacity) {
-        this.capacity = capacity;
+        this(builder().capacity(capacity));
+    }
+
+    FixedExecutorService(Builder builder) {
+        this.capacity = builder.capacity;
+        this.schedulingMode = builder.schedulingMode;
+        this.queueCapacity = builder.queueCapacity;
+        this.rejectionPolicy = builder.rejectionPolicy;
+        this.idleStrategy = builder.idleStrategy;
+        if (builder.priorityLanes) {
+            this.ringBuffer = null;
+            this.lanes = new PriorityLaneQueue(builder.laneWeights, builder.agingNanos, queueCapacity,
+                    builder.metricsEnabled, builder.recycleTaskWrappers);
+            this.tenants = null;
+            this.deadlines = null;
+            this.taskList = lanes;
+        } else if (!builder.tenantWeights.isEmpty()) {
+            this.ringBuffer = null;
+            this.lanes = null;
+            this.tenants = new TenantQueue(builder.tenantWeights, builder.tenantConcurrency, queueCapacity,
+                    builder.metricsEnabled, builder.recycleTaskWrappers);
+            this.deadlines = null;
+            this.taskList = tenants;
+        } else if (builder.deadlineScheduling) {
+            this.ringBuffer = null;
+            this.lanes = null;
+            this.tenants = null;
+            this.deadlines = new DeadlineQueue(queueCapacity, builder.defaultSlackNanos);
+            this.taskList = deadlines;
+        } else {
+            this.ringBuffer = queueCapacity == UNBOUNDED ? null : new RingBufferQueue<>(queueCapacity);
+            this.lanes = null;
+            this.tenants = null;
+            this.deadlines = null;
+            this.taskList = ringBuffer == null ? new ConcurrentLinkedDeque<>() : ringBuffer;
+        }
+        this.taskThreadFactory = builder.taskThreadFactory;
+        this.metrics = builder.metricsEnabled ? new ExecutorMetrics(this, builder.latencySamplingInterval) : null;
+        this.timestampedTasks = builder.metricsEnabled && builder.recycleTaskWrappers
+                ? new TaskRecycler<>(queueCapacity == UNBOUNDED ? 1024 : queueCapacity) : null;
+        this.uncaughtExceptionHandler = builder.uncaughtExceptionHandler;
+        this.timer = new HashedTimingWheel(this, builder.timerTickNanos, builder.timerWheelSize);
+        this.coreCapacity = builder.coreCapacity == 0 ? capacity : builder.coreCapacity;
+        this.keepAliveNanos = builder.keepAliveNanos;
+        this.scaleUpQueueDepth = builder.scaleUpQueueDepth;
+        this.scaleUpQueueWaitNanos = builder.scaleUpQueueWaitNanos;
+        this.workerThreadFactory = builder.workerThreadFactory == null
+                ? defaultWorkerThreadFactory() : builder.workerThreadFactory;
+        this.placement = builder.placement;
+        this.serialLanes = new AtomicReferenceArray<>(powerOfTwo(
+                builder.serialLaneCount == 0 ? 4 * Math.min(capacity, 1024) : builder.serialLaneCount));
+        this.journal = builder.journalDirectory == null ? null : openJournal(builder);
+        this.drainBatchSize = builder.drainBatchSize;
+        this.limiter = builder.adaptiveConcurrency
+                ? new ConcurrencyLimiter(builder.minConcurrency, builder.initialConcurrency, capacity,
+                        builder.concurrencyWindowNanos, System.nanoTime())
+                : null;
+        if (taskThreadFactory != null) {
+            // Thread-per-task mode: no workers, capacity only limits how many task threads run at once.
+            this.concurrencyLimit = new Semaphore(capacity);
+            return;
+        }
+        this.concurrencyLimit = null;
+        if (isElastic()) {
+            // Workers are started by the first tasks.
+            return;
+        }
+        ctl.set(capacity);
         for (int i = 0; i < capacity; i++) {
-            Thread thread = new Thread(taskExecutor);
+            Thread thread = newWorkerThread();
             thread.start();
             threadList.add(thread);
         }
     }
 
-    final Runnable taskExecutor = () -> {
-        while (true) {
-            Runnable task;
-            while ((task = taskList.poll()) == null) {
-                if (Thread.interrupted() || isShutdownInProgress) {
-                    return;
-                }
-                synchronized (taskList) {
-                    try {
-                        taskList.wait();
-                    } catch (InterruptedException e) {
-                        return;
-                    }
-                }
-            }
-            task.run();
+    private static TaskJournal openJournal(Builder builder) {
+        try {
+            return new TaskJournal(builder.journalDirectory, builder.journalSegmentSize, builder.journalSync,
+                    builder.journalSyncIntervalNanos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-    };
+    }
 
-    public void shutdown() {
-        isShutdownInProgress = true;
+    /**
+     * Queues the tasks the journal still held when it was opened, in the order they were first submitted.
+     */
+    private void replayJournal() {
+        if (journal != null) {
+            for (JournaledTask task : journal.recovered()) {
+                execute(task);
+            }
+        }
     }
 
-    public List<Runnable> shutdownNow() {
-        List<Runnable> result = new ArrayList<>();
+    private static int powerOfTwo(int count) {
+        return count <= 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+    }
 
-        isShutdownInProgress = true;
+    private static ThreadFactory defaultWorkerThreadFactory() {
+        String prefix = "fixed-executor-" + POOL_SEQUENCE.incrementAndGet() + "-worker-";
+        AtomicInteger threadSequence = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + threadSequence.incrementAndGet());
+    }
 
-        for (Runnable runnable : taskList) {
-            result.add(runnable);
+    private Thread newWorkerThread() {
+        Thread thread = workerThreadFactory.newThread(taskExecutor);
+        if (thread == null) {
+            throw new IllegalStateException("Worker thread factory returned null");
         }
+        return thread;
+    }
 
-        for (Thread thread : threadList) {
+    private boolean isElastic() {
+        return coreCapacity < capacity;
+    }
+
+    private static int workerCountOf(int c) {
+        return c & COUNT_MASK;
+    }
+
+    private boolean isRunning() {
+        return ctl.get() < SHUTDOWN;
+    }
+
+    /**
+     * Starts one more worker unless {@code ctl} no longer holds {@code c}. A pool that is shut down only starts a
+     * worker to drain tasks that are still queued, a stopped pool none at all.
+     */
+    private boolean addWorker(int c) {
+        if (c >= STOP || c >= SHUTDOWN && !hasWork() || !ctl.compareAndSet(c, c + 1)) {
+            return false;
+        }
+        Thread thread;
+        try {
+            thread = newWorkerThread();
+        } catch (Throwable e) {
+            leave();
+            throw e;
+        }
+        threadList.add(thread);
+        try {
+            thread.start();
+        } catch (Throwable e) {
+            threadList.remove(thread);
+            leave();
+            throw e;
+        }
+        if (ctl.get() >= STOP) {
+            // shutdownNow() may have interrupted the workers before the new one was listed.
             thread.interrupt();
         }
+        return true;
+    }
 
-        synchronized (taskList) {
-            taskList.clear();
-            taskList.notifyAll();
-        }
+    private void leave() {
+        ctl.decrementAndGet();
+        tryTerminate();
+    }
 
-        return result;
+    /**
+     * Called when queued tasks found no parked worker to wake up. Starts the missing core workers right away and one
+     * more worker up to the maximum once the backlog is deeper or older than the scale-up threshold.
+     */
+    private void grow(int tasks) {
+        int c;
+        while (tasks > 0 && workerCountOf(c = ctl.get()) < coreCapacity) {
+            if (addWorker(c)) {
+                tasks--;
+            } else if (!isRunning()) {
+                return;
+            }
+        }
+        c = ctl.get();
+        int size = workerCountOf(c);
+        if (size >= capacity || tasks == 0) {
+            return;
+        }
+        long now = System.nanoTime() | 1L;
+        long since = backlogSince;
+        if (since == 0L) {
+            BACKLOG_SINCE.compareAndSet(this, 0L, now);
+            since = now;
+        }
+        if ((now - since >= scaleUpQueueWaitNanos || hasQueued(scaleUpQueueDepth)) && addWorker(c)) {
+            // The next worker has to wait for a backlog of its own.
+            backlogSince = now;
+            size++;
+        }
+        if (size < capacity) {
+            scheduleBacklogCheck();
+        }
     }
 
-    public boolean isShutdown() {
-        return isShutdownInProgress;
+    /**
+     * Makes the timer look at the backlog again after the scale-up wait, as there may be no further task submitted to
+     * notice that it keeps aging while every worker is busy.
+     */
+    private void scheduleBacklogCheck() {
+        if (!backlogCheckScheduled.get() && backlogCheckScheduled.compareAndSet(false, true)) {
+            ScheduledTask<Void> check = ScheduledTask.onTimer(this::checkBacklog,
+                    System.nanoTime() + scaleUpQueueWaitNanos, timer);
+            if (!timer.schedule(check)) {
+                backlogCheckScheduled.set(false);
+            }
+        }
     }
 
-    public boolean isTerminated() {
-        boolean result = false;
+    private void checkBacklog() {
+        backlogCheckScheduled.set(false);
+        if (backlogSince != 0L && isRunning() && hasWork()) {
+            grow(1);
+        }
+    }
 
-        if (isShutdownInProgress) {
-            int terminatedCount = 0;
-            for (Thread thread : threadList) {
-                if (thread.getState().equals(Thread.State.TERMINATED)) {
-                    terminatedCount++;
-                }
+    /**
+     * Whether the shared queue holds at least {@code count} tasks, without counting a linked queue to the end.
+     */
+    private boolean hasQueued(int count) {
+        if (queueCapacity != UNBOUNDED) {
+            return taskList.size() >= count;
+        }
+        for (Runnable ignored : taskList) {
+            if (--count <= 0) {
+                return true;
             }
-            result = (terminatedCount == threadList.size());
         }
-
-        return result;
+        return false;
     }
 
-    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
-        if (!isTerminated()) {
-            synchronized (taskList) {
-                taskList.wait(unit.toMillis(timeout));
+    /**
+     * Lets an elastic worker that has been idle for the keep-alive time exit, as long as the pool stays at its core
+     * size. A worker that a producer has just signalled or that sees new work it may take stays.
+     */
+    private boolean retire(Worker worker) {
+        boolean registered = worker.parked.get();
+        if (registered) {
+            if (!worker.parked.compareAndSet(true, false)) {
+                return false;
             }
+            idleWorkers.remove(worker);
+        }
+        if (hasWork() && (hasPermit() || worker.hasLocalTasks())) {
+            return false;
         }
-        return isTerminated();
+        int c;
+        do {
+            c = ctl.get();
+            if (workerCountOf(c) <= coreCapacity) {
+                return false;
+            }
+        } while (!ctl.compareAndSet(c, c - 1));
+        return true;
     }
 
-    public <T> Future<T> submit(Callable<T> task) {
-        Object monitor = new Object();
-        CallableToRunnableAdapter<T> adapter = new CallableToRunnableAdapter(task, monitor);
-        synchronized (taskList) {
-            taskList.add(adapter);
-            taskList.notify();
+    /**
+     * Starts a new worker in place of one that died, so that {@code capacity} workers stay in service. The dead worker
+     * keeps its place if the thread factory or the start throws, the caller then leaves the pool instead.
+     */
+    private void replaceWorker(Thread deadThread) {
+        Thread thread = newWorkerThread();
+        threadList.add(thread);
+        try {
+            thread.start();
+        } catch (Throwable e) {
+            threadList.remove(thread);
+            throw e;
         }
-        synchronized (monitor) {
-            while (!adapter.isDone()) {
+        threadList.remove(deadThread);
+        replacedWorkerCount.increment();
+        if (ctl.get() >= STOP) {
+            // shutdownNow() may have interrupted the workers before the replacement was listed.
+            thread.interrupt();
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    final Runnable taskExecutor = () -> runWorker(new Worker(this));
+
+    void runWorker(Worker worker) {
+        worker.bind(workerIndexes.getAndIncrement(), placement);
+        workerList.add(worker);
+        WorkerStats stats = worker.stats;
+        // Busy and idle time are accounted per streak, the clock is read when the worker goes idle or wakes up.
+        long streakStart = stats == null ? 0L : System.nanoTime();
+        boolean idle = false;
+        boolean completedAbruptly = true;
+        boolean retired = false;
+        try {
+            try {
+                placement.bind(worker.index);
+            } catch (Throwable e) {
+                handleTaskFailure(e);
+            }
+            while (true) {
+                if (ctl.get() >= STOP) {
+                    // Whatever is still queued belongs to shutdownNow().
+                    completedAbruptly = false;
+                    return;
+                }
+                Runnable task;
+                int idleCount = 0;
+                long idleSince = 0L;
+                while ((task = nextPermittedTask(worker)) == null) {
+                    if (stats != null && !idle) {
+                        long now = System.nanoTime();
+                        stats.goIdle(now - streakStart, now);
+                        streakStart = now;
+                        idle = true;
+                    }
+                    // Reading the interrupt first makes the flag set by shutdownNow() visible. Any other interrupt was
+                    // leaked by a task and must not take the worker down.
+                    Thread.interrupted();
+                    int c = ctl.get();
+                    if (c >= SHUTDOWN) {
+                        if (c >= STOP || !hasWork() || !hasPermit() && !worker.hasLocalTasks()) {
+                            // Over the concurrency limit the workers holding the permits drain the queue.
+                            completedAbruptly = false;
+                            return;
+                        }
+                        // Drain the tasks that are left, a task in the deque of a busy worker may take a few attempts.
+                        continue;
+                    }
+                    long parkNanos = idleStrategy.idle(++idleCount);
+                    if (isElastic()) {
+                        long now = System.nanoTime();
+                        if (idleCount == 1) {
+                            idleSince = now;
+                            if (backlogSince != 0L) {
+                                backlogSince = 0L;
+                            }
+                        } else if (now - idleSince >= keepAliveNanos && retire(worker)) {
+                            retired = true;
+                            completedAbruptly = false;
+                            return;
+                        }
+                        if (parkNanos == IdleStrategy.PARK) {
+                            // Wake up in time to retire.
+                            parkNanos = Math.max(1L, keepAliveNanos - (now - idleSince));
+                        }
+                    }
+                    if (parkNanos != 0L) {
+                        awaitWork(worker, parkNanos);
+                    }
+                }
+                if (worker.parked.get()) {
+                    // Still registered after a timed park, leave the idle stack so that producers signal someone else.
+                    cancelIdle(worker);
+                }
+                if (stats != null && idle) {
+                    long now = System.nanoTime();
+                    stats.wakeUp(now - streakStart);
+                    streakStart = now;
+                    idle = false;
+                }
                 try {
-                    monitor.wait();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    if (worker.batch == null) {
+                        runTask(worker, task);
+                    } else {
+                        runBatch(worker, task);
+                    }
+                } finally {
+                    if (limiter != null) {
+                        limiter.release();
+                    }
+                }
+            }
+        } finally {
+            cancelIdle(worker);
+            workerList.remove(worker);
+            worker.unbind();
+            boolean replaced = false;
+            try {
+                if (completedAbruptly && isRunning()) {
+                    // Only a throwing uncaught exception handler gets here, the worker loop itself does not fail.
+                    replaceWorker(Thread.currentThread());
+                    replaced = true;
+                } else if (retired) {
+                    threadList.remove(Thread.currentThread());
+                }
+            } finally {
+                if (stats != null) {
+                    long streak = System.nanoTime() - streakStart;
+                    if (idle) {
+                        stats.wakeUp(streak);
+                    } else {
+                        stats.recordBusy(streak);
+                    }
+                    metrics.retire(stats);
+                }
+                if (!replaced && !retired) {
+                    // Last, so that awaitTermination() returns with the statistics of every worker recorded. Also
+                    // reached when no replacement could be started.
+                    leave();
                 }
             }
         }
-        return adapter;
     }
 
-    public <T> Future<T> submit(Runnable task, T result) {
-        DummyFuture<T> returnig_value = new DummyFuture<>(result);
-
-        submit(task);
+    /**
+     * Hands an exception thrown by a task to the configured handler, or to the handler of the current thread. A task
+     * submitted through {@code submit} or {@code invokeAll} never gets here, its failure is kept by its future.
+     */
+    void handleTaskFailure(Throwable e) {
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = uncaughtExceptionHandler;
+        if (handler == null) {
+            handler = thread.getUncaughtExceptionHandler();
+        }
+        handler.uncaughtException(thread, e);
+    }
 
-        return returnig_value;
+    private void runTask(Worker worker, Runnable task) {
+        long start = limiter == null ? 0L : System.nanoTime();
+        try {
+            if (worker.stats == null) {
+                task.run();
+            } else {
+                runMeasured(task, worker.stats);
+            }
+        } catch (Throwable e) {
+            handleTaskFailure(e);
+        }
+        if (limiter != null) {
+            adaptLimit(start);
+        }
     }
 
-    public Future<?> submit(Runnable task) {
-        Object monitor = new Object();
-        MonitoredRunnableDecorator decorator = new MonitoredRunnableDecorator(task, monitor);
-        synchronized (taskList) {
-            taskList.add(decorator);
-            taskList.notify();
+    /**
+     * Feeds the execution time of a task that started at {@code start} to the concurrency limiter and wakes up a
+     * worker for every slot the limit gained.
+     */
+    private void adaptLimit(long start) {
+        int raised = limiter.record(start, System.nanoTime(), !taskList.isEmpty());
+        if (raised > 0) {
+            signalWork(raised);
         }
-        synchronized (monitor) {
-            while (!decorator.isDone()) {
-                try {
-                    monitor.wait();
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+    }
+
+    /**
+     * Runs a task and the rest of the batch it was drained with back to back, without looking at the pool state in
+     * between. A throwing uncaught exception handler ends the worker only once the batch is done, so that the tasks
+     * left in it do not go down with the worker.
+     */
+    private void runBatch(Worker worker, Runnable task) {
+        Throwable failure = null;
+        do {
+            try {
+                runTask(worker, task);
+            } catch (Throwable handlerFailure) {
+                if (failure == null) {
+                    failure = handlerFailure;
                 }
             }
+        } while ((task = worker.nextInBatch()) != null);
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new UndeclaredThrowableException(failure);
         }
-        Future<?> result = new DummyFuture(null);
-        return result;
     }
 
-    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
-        Object monitor = new Object();
-        List<CallableToRunnableAdapter<T>> adapterList = new ArrayList<>();
+    /**
+     * Runs a task on a worker with metrics enabled. Only tasks stamped at enqueue time and a sample of the others
+     * pay for reading the clock.
+     */
+    private void runMeasured(Runnable task, WorkerStats stats) {
+        long enqueuedAt = enqueuedAt(task);
+        task = takeOut(task);
+        if (!stats.countTask(metrics.sampleMask) && enqueuedAt == 0L) {
+            task.run();
+            return;
+        }
+        long start = System.nanoTime();
+        if (enqueuedAt != 0L) {
+            stats.recordQueueWait(start - enqueuedAt);
+        }
+        task.run();
+        stats.recordExecution(System.nanoTime() - start);
+    }
 
-        for (Callable<T> task : tasks) {
-            CallableToRunnableAdapter<T> adapter = new CallableToRunnableAdapter<>(task, monitor);
-            adapterList.add(adapter);
+    /**
+     * Takes the next task if the concurrency limit lets the worker run one more, with the permit held until the task is
+     * done.
+     */
+    private Runnable nextPermittedTask(Worker worker) {
+        if (limiter == null) {
+            return nextTask(worker);
+        }
+        if (!limiter.tryAcquire()) {
+            return null;
         }
+        Runnable task = nextTask(worker);
+        if (task == null) {
+            limiter.release();
+        }
+        return task;
+    }
+
+    private boolean hasPermit() {
+        return limiter == null || limiter.hasPermit();
+    }
 
-        synchronized (taskList) {
-            taskList.addAll(adapterList);
-            taskList.notify();
+    private Runnable nextTask(Worker worker) {
+        Runnable task = worker.nextInBatch();
+        if (task != null) {
+            // Left over by a batch that a helping join took out.
+            return task;
         }
+        if (schedulingMode == SchedulingMode.WORK_STEALING) {
+            task = worker.pollLocal();
+            if (task == null && (task = pollShared(worker)) == null) {
+                task = steal(worker);
+            }
+            return task;
+        }
+        return pollShared(worker);
+    }
 
-        while (true) {
-            synchronized (monitor) {
-                boolean isDone = true;
-                for (CallableToRunnableAdapter<T> adapter : adapterList) {
-                    if (!adapter.isDone()) {
-                        isDone = false;
-                        break;
+    /**
+     * Takes the next task off the shared queue or, when the pool drains batches, up to a batch of them into the
+     * worker's own buffer. A bounded queue hands out a run of tasks with a single CAS.
+     */
+    private Runnable pollShared(Worker worker) {
+        Runnable[] batch = worker.batch;
+        if (batch == null) {
+            return taskList.poll();
+        }
+        int count;
+        if (ringBuffer != null) {
+            count = ringBuffer.pollBatch(batch);
+        } else {
+            count = 0;
+            Runnable task;
+            while (count < batch.length && (task = taskList.poll()) != null) {
+                batch[count++] = task;
+            }
+        }
+        return count == 0 ? null : worker.startBatch(count);
+    }
+
+    /**
+     * Takes a task from the deque of another worker, one of the same placement group first.
+     */
+    private Runnable steal(Worker thief) {
+        Object[] victims = workerList.toArray();
+        int count = victims.length;
+        if (count > 1) {
+            int start = ThreadLocalRandom.current().nextInt(count);
+            boolean grouped = placement.groupCount() > 1;
+            for (int pass = grouped ? 0 : 1; pass < 2; pass++) {
+                for (int i = 0; i < count; i++) {
+                    Worker victim = (Worker) victims[(start + i) % count];
+                    if (victim == thief || grouped && (victim.group == thief.group) != (pass == 0)) {
+                        continue;
+                    }
+                    Runnable task = victim.steal();
+                    if (task != null) {
+                        thief.recordSteal();
+                        return task;
                     }
                 }
-                if (!isDone) {
-                    monitor.wait();
-                } else {
-                    break;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasWork() {
+        if (!taskList.isEmpty()) {
+            return true;
+        }
+        if (schedulingMode == SchedulingMode.WORK_STEALING) {
+            for (Worker worker : workerList) {
+                if (worker.hasLocalTasks()) {
+                    return true;
                 }
             }
         }
+        return false;
+    }
+
+    /**
+     * Parks the worker until a producer hands it a signal or, for a positive {@code parkNanos}, the time runs out. The
+     * worker publishes itself on the idle stack before the final queue check and producers look at the idle stack
+     * after enqueueing, so one of the two always sees the other, and the same holds for {@code shutdown()}. A worker
+     * woken by a timeout stays registered until it finds a task. Returns early when the worker is interrupted. Over
+     * the concurrency limit the worker parks despite queued tasks, a raised limit signals it the same way.
+     */
+    private void awaitWork(Worker worker, long parkNanos) {
+        if (worker.parked.compareAndSet(false, true)) {
+            idleWorkers.push(worker);
+        }
+        if (hasWork() && hasPermit() || ctl.get() >= SHUTDOWN) {
+            cancelIdle(worker);
+            return;
+        }
+        if (parkNanos > 0L) {
+            LockSupport.parkNanos(this, parkNanos);
+        } else {
+            LockSupport.park(this);
+        }
+    }
+
+    private void cancelIdle(Worker worker) {
+        if (worker.parked.compareAndSet(true, false)) {
+            idleWorkers.remove(worker);
+        }
+    }
+
+    /**
+     * Wakes up one parked worker, if there is any.
+     */
+    void signalWork() {
+        signalWork(1);
+    }
+
+    /**
+     * Wakes up to {@code count} parked workers.
+     */
+    void signalWork(int count) {
+        if (taskThreadFactory != null) {
+            dispatch();
+            return;
+        }
+        if (!hasPermit() && isRunning()) {
+            // Every permit is held by a worker that looks at the queue again once its task is done.
+            return;
+        }
+        Worker worker;
+        while (count > 0 && (worker = idleWorkers.poll()) != null) {
+            if (worker.parked.compareAndSet(true, false)) {
+                LockSupport.unpark(worker.thread);
+                count--;
+            }
+        }
+        if (count > 0 && isElastic() && isRunning()) {
+            grow(count);
+        }
+    }
 
-        List<Future<T>> futureList = new ArrayList<>();
+    /**
+     * Thread-per-task mode: starts a thread for each queued task as long as the concurrency limit allows. A finishing
+     * task thread releases its permit before it looks at the queue again and a producer enqueues before it tries to
+     * take a permit, so a queued task is never left behind with a free permit.
+     */
+    private void dispatch() {
+        int c;
+        while (!taskList.isEmpty() && (c = ctl.get()) < STOP && concurrencyLimit.tryAcquire()) {
+            if (limiter != null && !limiter.tryAcquire()) {
+                // A task thread releases its slot in the adaptive limit before it dispatches again.
+                concurrencyLimit.release();
+                return;
+            }
+            if (!ctl.compareAndSet(c, c + 1)) {
+                releasePermits();
+                continue;
+            }
+            Runnable task = taskList.poll();
+            if (task == null) {
+                releasePermits();
+                leave();
+                continue;
+            }
+            try {
+                taskThreadFactory.newThread(() -> runTaskThread(task)).start();
+            } catch (Throwable e) {
+                releasePermits();
+                taskList.add(task);
+                leave();
+                throw e;
+            }
+        }
+    }
 
-        futureList.addAll(adapterList);
+    private void releasePermits() {
+        if (limiter != null) {
+            limiter.release();
+        }
+        concurrencyLimit.release();
+    }
 
-        return futureList;
+    private void runTaskThread(Runnable task) {
+        Thread thread = Thread.currentThread();
+        taskThreads.add(thread);
+        long started = limiter == null ? 0L : System.nanoTime();
+        try {
+            if (metrics == null) {
+                task.run();
+            } else {
+                long start = System.nanoTime();
+                long enqueuedAt = enqueuedAt(task);
+                Runnable unwrapped = takeOut(task);
+                try {
+                    unwrapped.run();
+                } finally {
+                    metrics.sharedStats.recordTaskConcurrent(enqueuedAt == 0L ? -1L : start - enqueuedAt,
+                            System.nanoTime() - start);
+                }
+            }
+        } catch (Throwable e) {
+            handleTaskFailure(e);
+        } finally {
+            taskThreads.remove(thread);
+            releasePermits();
+            ctl.decrementAndGet();
+            if (limiter != null) {
+                // Dispatches for the slots the limit gained as well.
+                adaptLimit(started);
+            }
+            dispatch();
+            tryTerminate();
+        }
     }
 
-    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
-        long timeToWait = unit.toMillis(timeout);
-        LocalDateTime startTime = LocalDateTime.now();
+    /**
+     * Stops accepting tasks. Queued tasks still run, including those in the worker deques and the serial lanes, and
+     * the workers exit once the queues are empty.
+     */
+    public void shutdown() {
+        advanceRunState(SHUTDOWN);
+        // Delayed and periodic tasks that are not due yet will never run.
+        for (ScheduledTask<?> task : timer.stop()) {
+            task.cancel(false);
+        }
+        // Parked workers would not notice the new state before the next task, wake them up to drain the queue and exit.
+        signalWork(Integer.MAX_VALUE);
+        tryTerminate();
+    }
 
-        Object monitor = new Object();
-        List<CallableToRunnableAdapter<T>> adapterList = new ArrayList<>();
+    /**
+     * Stops accepting tasks, takes every queued task out and interrupts the running ones. The returned tasks are
+     * exactly those removed here: a task is either in the list, or it was taken by a worker before and may still run.
+     */
+    public List<Runnable> shutdownNow() {
+        List<Runnable> result = new ArrayList<>();
+
+        synchronized (stranded) {
+            // A task queued from here on belongs to a submitter that sees the pool stopped and takes it back.
+            advanceRunState(STOP);
+            Runnable queued;
+            while ((queued = pollQueued()) != null) {
+                result.add(queued);
+            }
+            for (Worker worker : workerList) {
+                worker.drainTo(result);
+            }
+            for (int i = 0; i < serialLanes.length(); i++) {
+                SerialLane lane = serialLanes.get(i);
+                if (lane != null) {
+                    lane.drainTo(result);
+                }
+            }
+        }
 
-        for (Callable<T> task : tasks) {
-            CallableToRunnableAdapter<T> adapter = new CallableToRunnableAdapter<>(task, monitor);
-            adapterList.add(adapter);
+        for (ScheduledTask<?> task : timer.stop()) {
+            if (!task.runsOnTimer) {
+                result.add(task);
+            }
+        }
+
+        // Queued lanes are reported as the keyed tasks they hold, in key order.
+        result.removeIf(task -> task instanceof SerialLane);
+        result.replaceAll(FixedExecutorService::unwrap);
+
+        for (Thread thread : threadList) {
+            thread.interrupt();
         }
 
-        synchronized (taskList) {
-            taskList.addAll(adapterList);
-            taskList.notify();
+        for (Thread thread : taskThreads) {
+            thread.interrupt();
         }
 
+        tryTerminate();
+        return result;
+    }
+
+    private void advanceRunState(int target) {
+        int c;
+        do {
+            c = ctl.get();
+            if (c >= target) {
+                return;
+            }
+        } while (!ctl.compareAndSet(c, target | workerCountOf(c)));
+    }
+
+    /**
+     * Moves a pool that is shut down to TERMINATED once its last worker or task thread is gone and, unless it was
+     * stopped, nothing is left in the queues. A task queued while the last worker was on its way out gets a new one.
+     * Called by every thread that leaves the pool and by the shutdown methods themselves.
+     */
+    private void tryTerminate() {
         while (true) {
-            synchronized (monitor) {
-                boolean isDone = true;
-                for (CallableToRunnableAdapter<T> adapter : adapterList) {
-                    if (!adapter.isDone()) {
-                        isDone = false;
-                        break;
-                    }
+            int c = ctl.get();
+            if (c < SHUTDOWN || c >= TERMINATED || workerCountOf(c) != 0) {
+                return;
+            }
+            if (c < STOP && hasWork()) {
+                if (taskThreadFactory != null) {
+                    // Task threads leave through tryTerminate() again, whether they found a task or not.
+                    dispatch();
+                    return;
                 }
-                if (!isDone) {
-                    if (Duration.between(startTime, LocalDateTime.now()).toMillis() > timeToWait) {
-                        break;
+                if (addWorker(c)) {
+                    return;
+                }
+                continue;
+            }
+            if (ctl.compareAndSet(c, TERMINATED)) {
+                try {
+                    if (journal != null) {
+                        // Tasks still queued after shutdownNow() stay in the journal for the next pool.
+                        journal.close();
                     }
-                    long newTimeout = timeToWait - Duration.between(startTime, LocalDateTime.now()).toMillis();
-                    monitor.wait(newTimeout, 0);
-                } else {
-                    break;
+                } catch (RuntimeException e) {
+                    handleTaskFailure(e);
+                } finally {
+                    termination.countDown();
                 }
+                return;
             }
         }
+    }
 
-        List<Future<T>> futureList = new ArrayList<>();
+    private void checkRunning() {
+        if (!isRunning()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+    }
 
-        futureList.addAll(adapterList);
+    /**
+     * Decides on a task queued by a submitter that saw the pool shut down right after queueing it, which costs the
+     * submitters nothing but a second read of the run state on the fast path. A pool that is only shut down still runs
+     * the task, with a new worker if the last one has just left. A stopped or terminated pool will not run it: the
+     * tasks still queued are taken out and the submitter that finds its own task among them gets it back, while a task
+     * that is gone was taken by a worker or returned by {@code shutdownNow()}. Tasks are told apart by identity, the
+     * same task submitted twice is one as good as the other.
+     *
+     * @param task the task as submitted, outside of any wrapper the executor put around it
+     * @return true if the task is accepted
+     */
+    private boolean settle(Runnable task) {
+        tryTerminate();
+        if (ctl.get() < STOP) {
+            return true;
+        }
+        synchronized (stranded) {
+            collectStranded();
+            return !claimStranded(task);
+        }
+    }
 
-        return futureList;
+    /**
+     * {@link #settle(Runnable)} for a run of tasks published together, those taken back are cancelled.
+     */
+    private void settleAll(List<Runnable> tasks) {
+        tryTerminate();
+        if (ctl.get() < STOP) {
+            return;
+        }
+        boolean rejected = false;
+        synchronized (stranded) {
+            collectStranded();
+            for (Runnable task : tasks) {
+                if (claimStranded(task)) {
+                    discard(task);
+                    rejected = true;
+                }
+            }
+        }
+        if (rejected) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
     }
 
-    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
-        Object monitor = new Object();
-        List<CallableToRunnableAdapter<T>> adapterList = new ArrayList<>();
+    private void withdraw(Worker worker, Runnable task) {
+        synchronized (stranded) {
+            if (worker.localQueue.removeLastOccurrence(task)) {
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+        }
+    }
 
-        for (Callable<T> task : tasks) {
-            CallableToRunnableAdapter<T> adapter = new CallableToRunnableAdapter<>(task, monitor);
-            adapterList.add(adapter);
+    private void withdrawAll(Worker worker, List<? extends Runnable> tasks) {
+        boolean rejected = false;
+        synchronized (stranded) {
+            for (Runnable task : tasks) {
+                if (worker.localQueue.removeLastOccurrence(task)) {
+                    discard(task);
+                    rejected = true;
+                }
+            }
         }
+        if (rejected) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+    }
 
-        synchronized (taskList) {
-            taskList.addAll(adapterList);
-            taskList.notify();
+    private void collectStranded() {
+        Runnable queued;
+        while ((queued = pollQueued()) != null) {
+            // The tasks of a queued lane are claimed from the lane itself.
+            if (!(queued instanceof SerialLane)) {
+                stranded.add(unwrap(queued));
+            }
         }
+    }
 
-        while (true) {
-            synchronized (monitor) {
-                for (CallableToRunnableAdapter<T> adapter : adapterList) {
-                    if (adapter.isDone()) {
-                        return adapter.get();
-                    }
-                }
-                monitor.wait();
+    private boolean claimStranded(Runnable task) {
+        for (int i = 0; i < stranded.size(); i++) {
+            if (stranded.get(i) == task) {
+                stranded.remove(i);
+                return true;
             }
         }
+        return false;
     }
 
-    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
-        long timeToWait = unit.toMillis(timeout);
-        LocalDateTime startTime = LocalDateTime.now();
-        Object monitor = new Object();
-        List<CallableToRunnableAdapter<T>> adapterList = new ArrayList<>();
+    public boolean isShutdown() {
+        return ctl.get() >= SHUTDOWN;
+    }
+
+    public boolean isTerminated() {
+        return ctl.get() >= TERMINATED;
+    }
+
+    /**
+     * Waits until the last worker or task thread has left after a shutdown, which releases the termination latch.
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return termination.await(timeout, unit);
+    }
+
+    /**
+     * Submits a task and returns its future, which is also a {@link CompletionStage}: plain
+     * continuations run on the worker that completes the task, {@code *Async} continuations go back to this pool.
+     */
+    public <T> TaskFuture<T> submit(Callable<T> task) {
+        TaskFuture<T> future = newTaskFuture(task);
+        execute(future);
+        return future;
+    }
 
-        for (Callable<T> task : tasks) {
-            CallableToRunnableAdapter<T> adapter = new CallableToRunnableAdapter<>(task, monitor);
-            adapterList.add(adapter);
+    /**
+     * Submits a task to the lane of {@code priority}, see {@link #execute(Runnable, Priority)}.
+     */
+    public <T> TaskFuture<T> submit(Callable<T> task, Priority priority) {
+        TaskFuture<T> future = newTaskFuture(task);
+        execute(future, priority);
+        return future;
+    }
+
+    /**
+     * Submits a task on behalf of {@code tenant}, see {@link #execute(Runnable, Tenant)}.
+     */
+    public <T> TaskFuture<T> submit(Callable<T> task, Tenant tenant) {
+        TaskFuture<T> future = newTaskFuture(task);
+        execute(future, tenant);
+        return future;
+    }
+
+    public <T> TaskFuture<T> submit(Runnable task, T result) {
+        TaskFuture<T> future = newTaskFuture(Executors.callable(task, result));
+        execute(future);
+        return future;
+    }
+
+    public TaskFuture<?> submit(Runnable task) {
+        TaskFuture<Object> future = newTaskFuture(Executors.callable(task, null));
+        execute(future);
+        return future;
+    }
+
+    /**
+     * Submits a task that forks and joins subtasks on this pool, see {@link RecursiveTask}.
+     *
+     * @return the task itself
+     */
+    public <T> RecursiveTask<T> submit(RecursiveTask<T> task) {
+        if (task == null) {
+            throw new NullPointerException();
         }
+        task.bind(this);
+        execute(task);
+        return task;
+    }
 
-        synchronized (taskList) {
-            taskList.addAll(adapterList);
-            taskList.notify();
+    /**
+     * Runs a task that forks and joins subtasks on this pool and returns its result. Called from a worker, the task
+     * is computed right there.
+     *
+     * @throws CancellationException if the task was cancelled
+     * @throws CompletionException wrapping a checked exception of the task, an unchecked one is rethrown as is
+     */
+    public <T> T invoke(RecursiveTask<T> task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        task.bind(this);
+        if (Worker.current(this) != null) {
+            return task.invoke();
         }
+        execute(task);
+        RecursiveTask.awaitUninterruptibly(task);
+        return task.join();
+    }
 
-        while (true) {
-            synchronized (monitor) {
-                for (CallableToRunnableAdapter<T> adapter : adapterList) {
-                    if (adapter.isDone()) {
-                        return adapter.get();
-                    }
-                }
-                long newTimeout = timeToWait - Duration.between(startTime, LocalDateTime.now()).toMillis();
-                if (newTimeout <= 0) {
-                    return null;
+    /**
+     * Waits for a task that was forked or submitted to this pool. A task that has not started yet is run right here.
+     * On a worker of this pool the wait is spent running queued and stolen tasks, which is what keeps nested joins
+     * from tying up every worker; only when there is none the worker backs off, waking up on completion or after a
+     * while to look for new work, which the worker running the task may just have forked. A stopped pool cancels the
+     * task instead, it may have been drained by {@code shutdownNow()} and would never complete.
+     */
+    void awaitJoin(TaskFuture<?> task) {
+        Worker worker = Worker.current(this);
+        if (worker == null) {
+            task.run();
+            RecursiveTask.awaitUninterruptibly(task);
+            return;
+        }
+        // Usually the task forked last, which frees its slot in the deque.
+        worker.unpush(task);
+        task.run();
+        boolean interrupted = false;
+        int idleCount = 0;
+        while (!task.isDone()) {
+            if (ctl.get() >= STOP) {
+                task.cancel(false);
+                break;
+            }
+            Runnable next = nextTask(worker);
+            if (next != null) {
+                idleCount = 0;
+                runTask(worker, next);
+                continue;
+            }
+            long parkNanos = JOIN_BACKOFF.idle(++idleCount);
+            if (parkNanos != 0L) {
+                try {
+                    task.awaitDone(parkNanos);
+                } catch (InterruptedException e) {
+                    // shutdownNow() is noticed above, any other interrupt is for the caller.
+                    interrupted = true;
                 }
-                monitor.wait(newTimeout, 0);
             }
         }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    public void execute(Runnable command) {
-        synchronized (taskList) {
-            taskList.add(command);
-            taskList.notify();
+    private <T> TaskFuture<T> newTaskFuture(Callable<T> task) {
+        TaskFuture<T> future = new TaskFuture<>(task);
+        future.asyncExecutor = this;
+        return future;
+    }
+
+    /**
+     * Submits all tasks with a single queue operation and wakes up as many parked workers as there are tasks, up to
+     * the pool size.
+     */
+    public <T> TaskBatch<T> submitBatch(Collection<? extends Callable<T>> tasks) {
+        return submitBatch(tasks, Priority.NORMAL);
+    }
+
+    /**
+     * Submits all tasks to the lane of {@code priority}, see {@link #submitBatch(Collection)}.
+     */
+    public <T> TaskBatch<T> submitBatch(Collection<? extends Callable<T>> tasks, Priority priority) {
+        if (priority == null) {
+            throw new NullPointerException();
+        }
+        return enqueueBatch(newBatch(tasks), priority);
+    }
+
+    /**
+     * Submits all tasks like {@link #submitBatch(Collection)} and returns a batch that hands out the results in
+     * completion order, so that the first results can be used before the slowest task is done.
+     */
+    public <T> CompletionBatch<T> submitStreaming(Collection<? extends Callable<T>> tasks) {
+        checkTasks(tasks);
+        return enqueueBatch(new CompletionBatch<>(tasks, this), Priority.NORMAL);
+    }
+
+    private <T, B extends TaskBatch<T>> B enqueueBatch(B batch, Priority priority) {
+        if (batch.size() == 0) {
+            return batch;
+        }
+        Worker worker;
+        if (lanes == null && tenants == null && deadlines == null && schedulingMode == SchedulingMode.WORK_STEALING
+                && (worker = Worker.current(this)) != null) {
+            checkRunning();
+            stampAll(batch.tasks());
+            worker.localQueue.addAll(batch.tasks());
+            if (ctl.get() >= STOP) {
+                // This worker leaves without draining its deque once the pool is stopped.
+                withdrawAll(worker, batch.tasks());
+            }
+            signalWork(Math.min(batch.size(), capacity));
+        } else {
+            enqueueAll(prioritize(batch.tasks(), priority));
+        }
+        return batch;
+    }
+
+    /**
+     * Submits all tasks on behalf of {@code tenant} with a single queue operation, see
+     * {@link #execute(Runnable, Tenant)}.
+     */
+    public <T> TaskBatch<T> submitBatch(Collection<? extends Callable<T>> tasks, Tenant tenant) {
+        checkTenant(tenant);
+        TaskBatch<T> batch = newBatch(tasks);
+        if (batch.size() != 0) {
+            enqueueAll(tenants.wrapAll(batch.tasks(), tenant));
+        }
+        return batch;
+    }
+
+    private <T> TaskBatch<T> newBatch(Collection<? extends Callable<T>> tasks) {
+        checkTasks(tasks);
+        return new TaskBatch<>(tasks, this);
+    }
+
+    private static void checkTasks(Collection<? extends Callable<?>> tasks) {
+        for (Callable<?> task : tasks) {
+            if (task == null) {
+                throw new NullPointerException();
+            }
+        }
+    }
+
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) throws InterruptedException {
+        return awaitAll(submitBatch(tasks));
+    }
+
+    /**
+     * Runs all tasks on behalf of {@code tenant} and waits for them, see {@link #execute(Runnable, Tenant)}.
+     */
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, Tenant tenant)
+            throws InterruptedException {
+        return awaitAll(submitBatch(tasks, tenant));
+    }
+
+    private static <T> List<Future<T>> awaitAll(TaskBatch<T> batch) throws InterruptedException {
+        try {
+            batch.await();
+        } catch (InterruptedException e) {
+            batch.cancel(true);
+            throw e;
+        }
+        return new ArrayList<>(batch.getFutures());
+    }
+
+    /**
+     * Runs all tasks and waits for them until the timeout at the latest. The tasks that have not completed by then are
+     * cancelled and taken out of the queue, where the queue allows it, see {@link #purge()}. With deadline scheduling
+     * the timeout is also the deadline of the tasks, so they are shed rather than started after the caller gave up.
+     */
+    public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException {
+        TaskBatch<T> batch;
+        if (deadlines == null) {
+            batch = submitBatch(tasks);
+        } else {
+            batch = newBatch(tasks);
+            if (batch.size() != 0) {
+                enqueueAll(deadlines.wrapAll(batch.tasks(), triggerTime(timeout, unit)));
+            }
+        }
+        boolean completed;
+        try {
+            completed = batch.await(timeout, unit);
+        } catch (InterruptedException e) {
+            batch.cancel(true);
+            throw e;
+        }
+        if (!completed) {
+            // Withdraws the tasks left behind, nobody waits for them any more.
+            batch.cancel(true);
+            purge();
+        }
+        return new ArrayList<>(batch.getFutures());
+    }
+
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        try {
+            return invokeAny(tasks, false, 0L);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        return invokeAny(tasks, true, unit.toNanos(timeout));
+    }
+
+    private <T> T invokeAny(Collection<? extends Callable<T>> tasks, boolean timed, long nanos) throws InterruptedException, ExecutionException, TimeoutException {
+        TaskRace<T> race = new TaskRace<>(tasks);
+        try {
+            enqueueAll(race.tasks());
+        } catch (RuntimeException e) {
+            race.cancelRemaining();
+            throw e;
+        }
+        try {
+            return race.await(timed, nanos);
+        } finally {
+            if (race.hasQueuedLosers()) {
+                purge();
+            }
+        }
+    }
+
+    /**
+     * Removes cancelled futures from the shared queue right away instead of letting workers skip them. Does nothing for
+     * a bounded queue other than the deadline queue, a ring buffer slot is only given back when a worker takes the task.
+     */
+    public void purge() {
+        if (queueCapacity == UNBOUNDED || deadlines != null) {
+            taskList.removeIf(task -> task instanceof Future && ((Future<?>) task).isCancelled());
+        }
+    }
+
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        if (command == null || unit == null) {
+            throw new NullPointerException();
+        }
+        return schedule(new ScheduledTask<Void>(command, triggerTime(delay, unit), 0L, timer));
+    }
+
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        if (callable == null || unit == null) {
+            throw new NullPointerException();
+        }
+        return schedule(new ScheduledTask<>(callable, triggerTime(delay, unit), timer));
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (command == null || unit == null) {
+            throw new NullPointerException();
+        }
+        if (period <= 0L) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        return schedule(new ScheduledTask<Void>(command, triggerTime(initialDelay, unit), unit.toNanos(period), timer));
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (command == null || unit == null) {
+            throw new NullPointerException();
+        }
+        if (delay <= 0L) {
+            throw new IllegalArgumentException("delay must be positive: " + delay);
+        }
+        return schedule(new ScheduledTask<Void>(command, triggerTime(initialDelay, unit), -unit.toNanos(delay), timer));
+    }
+
+    private <V> ScheduledTask<V> schedule(ScheduledTask<V> task) {
+        task.asyncExecutor = this;
+        if (!isRunning() || !timer.schedule(task)) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        return task;
+    }
+
+    /**
+     * Due time of a task scheduled {@code delay} from now, capped so that due times stay comparable by subtraction.
+     */
+    private static long triggerTime(long delay, TimeUnit unit) {
+        long nanos = unit.toNanos(Math.max(delay, 0L));
+        return System.nanoTime() + Math.min(nanos, Long.MAX_VALUE >> 1);
+    }
+
+    /**
+     * Hands a due task from the timer thread to the workers. A task the queue rejects is cancelled.
+     */
+    void fire(ScheduledTask<?> task) {
+        if (task.runsOnTimer) {
+            task.run();
+            return;
+        }
+        try {
+            execute(task);
+        } catch (RejectedExecutionException e) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Executes a task from the lane of {@code priority}. The priority is ignored unless the executor was built with
+     * priority lanes. In work-stealing mode tasks submitted from a worker thread without a priority still go to the
+     * worker's own deque and bypass the lanes.
+     */
+    public void execute(Runnable command, Priority priority) {
+        if (command == null || priority == null) {
+            throw new NullPointerException();
+        }
+        if (lanes == null) {
+            execute(command);
+            return;
+        }
+        if (metrics != null && metrics.sampleEnqueue()) {
+            command = stamp(command, System.nanoTime());
+        }
+        enqueue(lanes.wrap(command, priority));
+    }
+
+    /**
+     * Executes a task that is only worth running within {@code timeout} from now. Workers take tasks earliest deadline
+     * first and drop a task whose deadline passed before they got to it, see {@link Builder#deadlineScheduling}. A task
+     * that has started runs to the end, the deadline does not interrupt it.
+     *
+     * @throws IllegalStateException unless the executor was built with deadline scheduling
+     */
+    public void executeWithDeadline(Runnable command, long timeout, TimeUnit unit) {
+        if (command == null || unit == null) {
+            throw new NullPointerException();
+        }
+        enqueue(deadlineQueue().wrap(command, triggerTime(timeout, unit)));
+    }
+
+    /**
+     * Submits a task with a deadline, see {@link #executeWithDeadline(Runnable, long, TimeUnit)}. The future of a task
+     * that is dropped fails with a {@link TimeoutException}.
+     *
+     * @throws IllegalStateException unless the executor was built with deadline scheduling
+     */
+    public <T> TaskFuture<T> submitWithDeadline(Callable<T> task, long timeout, TimeUnit unit) {
+        deadlineQueue();
+        TaskFuture<T> future = newTaskFuture(task);
+        executeWithDeadline(future, timeout, unit);
+        return future;
+    }
+
+    private DeadlineQueue deadlineQueue() {
+        if (deadlines == null) {
+            throw new IllegalStateException("Deadline scheduling is not enabled, see Builder.deadlineScheduling");
+        }
+        return deadlines;
+    }
+
+    /**
+     * Number of tasks dropped because their deadline had passed before a worker got to them.
+     */
+    public long getShedTaskCount() {
+        return deadlines == null ? 0L : deadlines.shedCount.sum();
+    }
+
+    /**
+     * Executes a task on behalf of {@code tenant}. Its sub-queue is served in proportion to its weight and it runs at
+     * most as many tasks at once as its concurrency limit, see {@link Builder#tenant(String, int, int)}.
+     *
+     * @throws IllegalArgumentException if the tenant belongs to another executor
+     * @throws IllegalStateException unless the executor was built with tenants
+     */
+    public void execute(Runnable command, Tenant tenant) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        checkTenant(tenant);
+        enqueue(tenants.wrap(command, tenant));
+    }
+
+    /**
+     * The tenant registered under {@code name}, or the one of untagged tasks for {@link Tenant#DEFAULT}.
+     *
+     * @throws IllegalArgumentException if there is no such tenant
+     * @throws IllegalStateException unless the executor was built with tenants
+     */
+    public Tenant getTenant(String name) {
+        if (name == null) {
+            throw new NullPointerException();
+        }
+        Tenant tenant = tenantQueue().tenant(name);
+        if (tenant == null) {
+            throw new IllegalArgumentException("Unknown tenant: " + name);
+        }
+        return tenant;
+    }
+
+    private void checkTenant(Tenant tenant) {
+        if (tenant == null) {
+            throw new NullPointerException();
+        }
+        if (!tenantQueue().owns(tenant)) {
+            throw new IllegalArgumentException(tenant + " belongs to another executor");
+        }
+    }
+
+    private TenantQueue tenantQueue() {
+        if (tenants == null) {
+            throw new IllegalStateException("Tenants are not enabled, see Builder.tenant");
+        }
+        return tenants;
+    }
+
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (tenants != null || deadlines != null) {
+            // The default tenant or no deadline, the queue entry carries the enqueue time.
+            enqueue(command);
+            return;
+        }
+        if (metrics != null && metrics.sampleEnqueue()) {
+            command = stamp(command, System.nanoTime());
+        }
+        Worker worker;
+        if (schedulingMode == SchedulingMode.WORK_STEALING && (worker = Worker.current(this)) != null) {
+            checkRunning();
+            worker.push(command);
+            if (ctl.get() >= STOP) {
+                withdraw(worker, command);
+            }
+            signalWork();
+        } else {
+            enqueue(command);
+        }
+    }
+
+    /**
+     * Executes a task that survives a crash of the process or {@link #shutdownNow()}: it is appended to the journal
+     * before it is queued and runs again when a pool is built on the same journal directory, unless it has run or was
+     * discarded by the rejection policy by then. Delivery is at least once, a task that was running at the crash runs
+     * again. Synced to disk as configured by {@link Builder#journal(Path, JournalSync)}.
+     *
+     * @throws IllegalArgumentException if the task is not {@link Serializable} or does not fit into a journal segment
+     * @throws IllegalStateException unless the executor was built with a journal
+     */
+    public void executeDurable(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (journal == null) {
+            throw new IllegalStateException("The journal is not enabled, see Builder.journal");
+        }
+        if (!(task instanceof Serializable)) {
+            throw new IllegalArgumentException("Task is not serializable: " + task);
+        }
+        checkRunning();
+        JournaledTask entry = journal.append(task);
+        try {
+            execute(entry);
+        } catch (RuntimeException e) {
+            // Never accepted, it must not come back on the next start.
+            entry.acknowledge();
+            throw e;
+        }
+    }
+
+    /**
+     * Executes a task after every task submitted earlier with an equal key, tasks of other keys run in parallel.
+     *
+     * Keys are hashed onto a fixed number of serial lanes, see {@link Builder#serialLanes(int)}, so two keys that
+     * share a lane also run one after the other. A task that throws does not stop the lane, its exception goes to the
+     * uncaught exception handler. When a bounded queue is full the submitting thread runs the lane itself instead of
+     * applying the rejection policy, which could otherwise drop the lane along with the tasks of other keys.
+     */
+    public void execute(Object key, Runnable task) {
+        if (key == null || task == null) {
+            throw new NullPointerException();
+        }
+        SerialLane lane = serialLane(key);
+        checkRunning();
+        boolean runLane = lane.offer(task);
+        if (ctl.get() >= SHUTDOWN) {
+            tryTerminate();
+            if (ctl.get() >= STOP) {
+                synchronized (stranded) {
+                    if (lane.withdraw(task)) {
+                        throw new RejectedExecutionException("Executor is shut down");
+                    }
+                }
+            }
+        }
+        if (runLane) {
+            // The bounded pool queue is full: the submitter drains the lane itself, which also slows it down.
+            lane.run();
+        }
+    }
+
+    /**
+     * Submits a task to run after every task submitted earlier with an equal key, see
+     * {@link #execute(Object, Runnable)}.
+     */
+    public <T> TaskFuture<T> submit(Object key, Callable<T> task) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        TaskFuture<T> future = newTaskFuture(task);
+        execute(key, future);
+        return future;
+    }
+
+    /**
+     * Hands {@code item} to {@code sink} in a single call together with the items submitted with an equal key while
+     * it waits, in submission order. A batch takes more items until it starts to run, so the further the pool falls
+     * behind, the larger the batches get. The batches of a key run one after the other on its serial lane, see
+     * {@link #execute(Object, Runnable)}, which also says what happens when the pool queue is full or the sink
+     * throws. A batch goes to the sink passed with its first item, so a key should stand for one sink.
+     */
+    public <T> void coalesce(Object key, T item, Consumer<? super List<T>> sink) {
+        if (key == null || item == null || sink == null) {
+            throw new NullPointerException();
+        }
+        checkRunning();
+        while (true) {
+            @SuppressWarnings("unchecked")
+            CoalescedBatch<T> open = (CoalescedBatch<T>) coalescing.get(key);
+            if (open != null) {
+                if (open.add(item)) {
+                    return;
+                }
+                // Started already, its sink call must not see the item.
+                coalescing.remove(key, open);
+                continue;
+            }
+            CoalescedBatch<T> batch = new CoalescedBatch<>(key, item, sink, coalescing);
+            execute(key, batch);
+            // Opened for more items only once it is queued, so that a rejected batch takes no item with it. A batch
+            // that started in between has removed itself already or is removed here.
+            if (coalescing.putIfAbsent(key, batch) == null && batch.isStarted()) {
+                coalescing.remove(key, batch);
+            }
+            return;
+        }
+    }
+
+    private SerialLane serialLane(Object key) {
+        int hash = key.hashCode();
+        int index = (hash ^ (hash >>> 16)) & (serialLanes.length() - 1);
+        SerialLane lane = serialLanes.get(index);
+        if (lane == null) {
+            lane = new SerialLane(this);
+            if (!serialLanes.compareAndSet(index, null, lane)) {
+                lane = serialLanes.get(index);
+            }
+        }
+        return lane;
+    }
+
+    /**
+     * Queues a serial lane that has work, on the deque of the current worker in work-stealing mode.
+     *
+     * @return false if the bounded queue is full
+     */
+    boolean offerLane(SerialLane lane) {
+        Worker worker;
+        if (tenants == null && deadlines == null && schedulingMode == SchedulingMode.WORK_STEALING
+                && (worker = Worker.current(this)) != null) {
+            worker.push(lane);
+            signalWork();
+            return true;
+        }
+        return queue(lane);
+    }
+
+    /**
+     * Number of tasks waiting in the shared queue and, in work-stealing mode, in the worker deques.
+     */
+    public int getQueueDepth() {
+        int depth = taskList.size();
+        if (schedulingMode == SchedulingMode.WORK_STEALING) {
+            for (Worker worker : workerList) {
+                depth += worker.localQueue.size();
+            }
+        }
+        return depth;
+    }
+
+    /**
+     * Number of tasks waiting in the lane of {@code priority}.
+     *
+     * @throws IllegalStateException unless the executor was built with priority lanes
+     */
+    public int getQueueDepth(Priority priority) {
+        return priorityLanes().size(priority);
+    }
+
+    /**
+     * Time the tasks taken from the lane of {@code priority} so far have spent in it, for tuning the lane weights.
+     *
+     * @throws IllegalStateException unless the executor was built with priority lanes and metrics
+     */
+    public LatencyHistogram getQueueWaitTime(Priority priority) {
+        getMetrics();
+        return priorityLanes().waitTime(priority);
+    }
+
+    private PriorityLaneQueue priorityLanes() {
+        if (lanes == null) {
+            throw new IllegalStateException("Priority lanes are not enabled, see Builder.priorityLanes");
+        }
+        return lanes;
+    }
+
+    /**
+     * Capacity of the shared queue, of each lane with priority lanes, of each tenant's sub-queue with tenants, or
+     * {@link #UNBOUNDED}.
+     */
+    public int getQueueCapacity() {
+        return ringBuffer == null ? queueCapacity : ringBuffer.capacity();
+    }
+
+    /**
+     * Number of workers currently started, between the core and the maximum capacity for an elastic pool.
+     */
+    public int getPoolSize() {
+        return workerCountOf(ctl.get());
+    }
+
+    /**
+     * Number of times a task did not fit into the bounded queue and was handed to the rejection policy.
+     */
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount.sum();
+    }
+
+    /**
+     * Number of workers started to replace a worker thread that died.
+     */
+    public long getReplacedWorkerCount() {
+        return replacedWorkerCount.sum();
+    }
+
+    private void enqueue(Runnable task) {
+        checkRunning();
+        // Taken before a worker can recycle the wrappers.
+        Runnable submitted = unwrap(task);
+        if (!queue(task)) {
+            rejectedTaskCount.increment();
+            rejectionPolicy.rejected(task, this);
+        } else if (ctl.get() >= SHUTDOWN && !settle(submitted)) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+    }
+
+    /**
+     * Publishes the tasks with one queue operation when the queue is unbounded, or with one slot claim per run of free
+     * slots in the ring buffer, and then wakes up as many workers as there are tasks.
+     */
+    private void enqueueAll(List<? extends Runnable> tasks) {
+        stampAll(tasks);
+        if (ringBuffer == null && queueCapacity != UNBOUNDED) {
+            // Bounded priority lanes or tenant sub-queues.
+            for (Runnable task : tasks) {
+                enqueue(task);
+            }
+        } else {
+            List<Runnable> submitted = new ArrayList<>(tasks.size());
+            for (Runnable task : tasks) {
+                submitted.add(unwrap(task));
+            }
+            int published = 0;
+            while (published < tasks.size()) {
+                if (!isRunning()) {
+                    // Shut down halfway through, the tasks that did not make it are nobody's to run.
+                    for (Runnable task : tasks.subList(published, tasks.size())) {
+                        discard(task);
+                    }
+                    throw new RejectedExecutionException("Executor is shut down");
+                }
+                int count;
+                if (ringBuffer == null) {
+                    taskList.addAll(tasks);
+                    count = tasks.size();
+                } else {
+                    count = ringBuffer.offerBatch(tasks, published);
+                }
+                if (ctl.get() >= SHUTDOWN) {
+                    settleAll(submitted.subList(published, published + count));
+                }
+                if (count > 0) {
+                    published += count;
+                } else {
+                    // Let the workers drain what is already published before the policy possibly blocks.
+                    signalWork(Math.min(published, capacity));
+                    rejectedTaskCount.increment();
+                    rejectionPolicy.rejected(tasks.get(published++), this);
+                }
+            }
+        }
+        signalWork(Math.min(tasks.size(), capacity));
+    }
+
+    /**
+     * Queues a task again for a rejection policy.
+     *
+     * @return false if the bounded queue is still full or the executor was shut down in the meantime
+     */
+    boolean offerTask(Runnable task) {
+        if (!isRunning()) {
+            return false;
+        }
+        Runnable submitted = unwrap(task);
+        if (!queue(task)) {
+            return false;
+        }
+        if (ctl.get() >= SHUTDOWN && !settle(submitted)) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        return true;
+    }
+
+    private boolean queue(Runnable task) {
+        if (!taskList.offer(task)) {
+            return false;
+        }
+        signalWork();
+        return true;
+    }
+
+    /**
+     * Takes the oldest queued task for a rejection policy, of the same tenant as {@code incoming} with tenants. A
+     * serial lane is never dropped, it holds the tasks of other keys: the lanes in front of the oldest task are queued
+     * again at the end, or run right here if the queue has filled up in the meantime.
+     *
+     * @return the oldest task, null if the queue was empty or {@code incoming} itself if only lanes were queued
+     */
+    Runnable pollTask(Runnable incoming) {
+        List<Runnable> lanes = null;
+        Runnable oldest;
+        while ((oldest = tenants == null ? taskList.poll() : tenants.pollQueued(incoming)) != null
+                && unwrapQueued(oldest) instanceof SerialLane) {
+            if (lanes == null) {
+                lanes = new ArrayList<>();
+            }
+            lanes.add(oldest);
+        }
+        if (lanes == null) {
+            return oldest;
+        }
+        for (Runnable lane : lanes) {
+            if (!isRunning() || !queue(lane)) {
+                unwrapQueued(lane).run();
+            }
+        }
+        return oldest == null ? incoming : oldest;
+    }
+
+    /**
+     * Takes a queued task out for draining, which with tenants also reaches those of a tenant at its concurrency limit.
+     */
+    private Runnable pollQueued() {
+        return tenants == null ? taskList.poll() : tenants.pollQueued(null);
+    }
+
+    /**
+     * Instrumentation of this executor.
+     *
+     * @throws IllegalStateException unless the executor was built with {@code metricsEnabled(true)}
+     */
+    public ExecutorMetrics getMetrics() {
+        if (metrics == null) {
+            throw new IllegalStateException("Metrics are not enabled, see Builder.metricsEnabled");
+        }
+        return metrics;
+    }
+
+    /**
+     * The adaptive limit on the number of tasks running at once, with the inputs of its last update.
+     *
+     * @throws IllegalStateException unless the executor was built with {@code adaptiveConcurrency}
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        if (limiter == null) {
+            throw new IllegalStateException("Adaptive concurrency is not enabled, see Builder.adaptiveConcurrency");
+        }
+        return limiter;
+    }
+
+    /**
+     * Records the enqueue time on an executor future or wraps a plain task to carry it.
+     */
+    private Runnable stamp(Runnable task, long now) {
+        if (task instanceof TaskFuture) {
+            ((TaskFuture<?>) task).enqueuedAt = now;
+            return task;
+        }
+        TimestampedTask wrapper = timestampedTasks == null ? null : timestampedTasks.poll();
+        if (wrapper == null) {
+            return new TimestampedTask(task, now);
+        }
+        wrapper.enqueuedAt = now;
+        wrapper.reuse(task);
+        return wrapper;
+    }
+
+    /**
+     * Takes a plain task out of its timestamp wrapper, which goes back to the pool before the task runs.
+     */
+    private Runnable takeOut(Runnable task) {
+        if (timestampedTasks != null && task instanceof TimestampedTask) {
+            TimestampedTask wrapper = (TimestampedTask) task;
+            task = wrapper.task;
+            timestampedTasks.recycle(wrapper);
+        }
+        return task;
+    }
+
+    private void stampAll(List<? extends Runnable> tasks) {
+        if (metrics != null && tenants == null && deadlines == null) {
+            long now = System.nanoTime();
+            for (Runnable task : tasks) {
+                ((TaskFuture<?>) unwrap(task)).enqueuedAt = now;
+            }
+        }
+    }
+
+    /**
+     * Tags the tasks for their lane, unless there are no lanes or the priority is the default one.
+     */
+    private List<? extends Runnable> prioritize(List<? extends Runnable> tasks, Priority priority) {
+        if (lanes == null || priority == Priority.NORMAL) {
+            return tasks;
+        }
+        List<Runnable> prioritized = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            prioritized.add(lanes.wrap(task, priority));
+        }
+        return prioritized;
+    }
+
+    private static long enqueuedAt(Runnable task) {
+        if (task instanceof TaskFuture) {
+            return ((TaskFuture<?>) task).enqueuedAt;
+        }
+        if (task instanceof TimestampedTask || task instanceof TenantTask || task instanceof DeadlineTask) {
+            return ((TaskWrapper) task).enqueuedAt;
+        }
+        return 0L;
+    }
+
+    /**
+     * The task the caller submitted. Only for a task the caller has not queued yet or has taken out of the queue
+     * itself, no worker can recycle its wrappers then.
+     */
+    private static Runnable unwrap(Runnable task) {
+        task = unwrapQueued(task);
+        return task instanceof JournaledTask ? ((JournaledTask) task).task : task;
+    }
+
+    /**
+     * The task as it was queued, still inside its journal entry if it has one.
+     */
+    private static Runnable unwrapQueued(Runnable task) {
+        if (task instanceof PrioritizedTask || task instanceof TenantTask || task instanceof DeadlineTask) {
+            task = ((TaskWrapper) task).task;
+        }
+        return task instanceof TimestampedTask ? ((TimestampedTask) task).task : task;
+    }
+
+    static void discard(Runnable task) {
+        task = unwrapQueued(task);
+        if (task instanceof JournaledTask) {
+            JournaledTask entry = (JournaledTask) task;
+            entry.acknowledge();
+            task = entry.task;
+        }
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    public static final class Builder {
+        private int capacity = Runtime.getRuntime().availableProcessors();
+        private SchedulingMode schedulingMode = SchedulingMode.SHARED_QUEUE;
+        private int queueCapacity = UNBOUNDED;
+        private RejectionPolicy rejectionPolicy = RejectionPolicy.ABORT;
+        private IdleStrategy idleStrategy = IdleStrategy.BLOCKING;
+        private ThreadFactory taskThreadFactory;
+        private boolean metricsEnabled;
+        private int latencySamplingInterval = 8;
+        private Thread.UncaughtExceptionHandler uncaughtExceptionHandler;
+        private long timerTickNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private int timerWheelSize = 512;
+        private boolean priorityLanes;
+        private int[] laneWeights;
+        private long agingNanos = TimeUnit.SECONDS.toNanos(1);
+        private int coreCapacity;
+        private long keepAliveNanos = TimeUnit.SECONDS.toNanos(60);
+        private int scaleUpQueueDepth = 32;
+        private long scaleUpQueueWaitNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private ThreadFactory workerThreadFactory;
+        private WorkerPlacement placement = WorkerPlacement.NONE;
+        private int serialLaneCount;
+        private boolean recycleTaskWrappers;
+        private final Map<String, Integer> tenantWeights = new LinkedHashMap<>();
+        private final Map<String, Integer> tenantConcurrency = new HashMap<>();
+        private Path journalDirectory;
+        private JournalSync journalSync = JournalSync.ALWAYS;
+        private int journalSegmentSize = 64 << 20;
+        private long journalSyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(10);
+        private int drainBatchSize = 1;
+        private boolean deadlineScheduling;
+        private long defaultSlackNanos;
+        private boolean adaptiveConcurrency;
+        private int minConcurrency;
+        private int initialConcurrency;
+        private long concurrencyWindowNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+        private Builder() {
+        }
+
+        public Builder capacity(int capacity) {
+            if (capacity <= 0) {
+                throw new IllegalArgumentException("capacity must be positive: " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        public Builder schedulingMode(SchedulingMode schedulingMode) {
+            if (schedulingMode == null) {
+                throw new NullPointerException();
+            }
+            this.schedulingMode = schedulingMode;
+            return this;
+        }
+
+        /**
+         * Replaces the unbounded shared queue with a preallocated ring buffer of (at least) the given size,
+         * {@link #UNBOUNDED} restores the default.
+         */
+        public Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 0) {
+                throw new IllegalArgumentException("queueCapacity must not be negative: " + queueCapacity);
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * What to do with a task when the bounded queue is full, {@link RejectionPolicy#ABORT} by default.
+         */
+        public Builder rejectionPolicy(RejectionPolicy rejectionPolicy) {
+            if (rejectionPolicy == null) {
+                throw new NullPointerException();
+            }
+            this.rejectionPolicy = rejectionPolicy;
+            return this;
+        }
+
+        /**
+         * How workers wait for new tasks, {@link IdleStrategy#BLOCKING} by default.
+         */
+        public Builder idleStrategy(IdleStrategy idleStrategy) {
+            if (idleStrategy == null) {
+                throw new NullPointerException();
+            }
+            this.idleStrategy = idleStrategy;
+            return this;
+        }
+
+        /**
+         * Runs every task on a fresh thread from {@code threadFactory} instead of on pooled workers. Capacity turns
+         * into the number of tasks allowed to run at once, tasks over the limit wait in the queue. Scheduling mode and
+         * idle strategy do not apply.
+         */
+        public Builder threadPerTask(ThreadFactory threadFactory) {
+            if (threadFactory == null) {
+                throw new NullPointerException();
+            }
+            this.taskThreadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Runs every task on its own virtual thread, see {@link #threadPerTask(ThreadFactory)}. Meant for tasks that
+         * mostly block on I/O: capacity can then be set far above the number of cores.
+         *
+         * @throws UnsupportedOperationException if the runtime is older than Java 21
+         */
+        public Builder virtualThreads() {
+            return threadPerTask(VirtualThreads.factory());
+        }
+
+        /**
+         * Turns on per-worker counters and latency histograms, see {@link FixedExecutorService#getMetrics()}.
+         */
+        public Builder metricsEnabled(boolean metricsEnabled) {
+            this.metricsEnabled = metricsEnabled;
+            return this;
+        }
+
+        /**
+         * Records queue wait and execution time for one task out of {@code interval}, rounded up to a power of two,
+         * 8 by default. Reading the clock is the main cost of metrics for tiny tasks, 1 measures every task.
+         * Tasks submitted through {@code submitBatch}, {@code invokeAll} and {@code invokeAny} are always measured.
+         */
+        public Builder latencySamplingInterval(int interval) {
+            if (interval <= 0 || interval > 1 << 30) {
+                throw new IllegalArgumentException("interval must be in [1, 2^30]: " + interval);
+            }
+            this.latencySamplingInterval = interval;
+            return this;
+        }
+
+        /**
+         * Receives exceptions thrown by tasks passed to {@code execute}, the worker keeps running afterwards. By default
+         * they go to the uncaught exception handler of the worker thread.
+         */
+        public Builder uncaughtExceptionHandler(Thread.UncaughtExceptionHandler handler) {
+            if (handler == null) {
+                throw new NullPointerException();
+            }
+            this.uncaughtExceptionHandler = handler;
+            return this;
+        }
+
+        /**
+         * Resolution of the timer that runs delayed and periodic tasks, 1 ms by default. A task fires at most about
+         * one tick after it is due, a shorter tick means more wake-ups of the timer thread while tasks are pending.
+         */
+        public Builder timerTick(long duration, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            long nanos = unit.toNanos(duration);
+            if (nanos <= 0L) {
+                throw new IllegalArgumentException("tick must be positive: " + duration + " " + unit);
+            }
+            this.timerTickNanos = nanos;
+            return this;
+        }
+
+        /**
+         * Number of slots of the timer wheel, rounded up to a power of two, 512 by default. Tasks due further away than
+         * one turn of the wheel cost an extra check per turn.
+         */
+        public Builder timerWheelSize(int wheelSize) {
+            if (wheelSize <= 0 || wheelSize > 1 << 30) {
+                throw new IllegalArgumentException("wheelSize must be in [1, 2^30]: " + wheelSize);
+            }
+            this.timerWheelSize = wheelSize;
+            return this;
+        }
+
+        /**
+         * Splits the shared queue into one lane per {@link Priority}, served by weighted round robin: out of
+         * {@code high + normal + low} tasks taken while all lanes are busy, {@code high} come from the HIGH lane and so
+         * on. Tasks submitted without a priority are NORMAL. With a queue capacity, every lane holds that many tasks.
+         */
+        public Builder priorityLanes(int highWeight, int normalWeight, int lowWeight) {
+            int[] weights = {highWeight, normalWeight, lowWeight};
+            for (int weight : weights) {
+                if (weight <= 0 || weight > 1_000) {
+                    throw new IllegalArgumentException("weight must be in [1, 1000]: " + weight);
+                }
+            }
+            this.priorityLanes = true;
+            this.laneWeights = weights;
+            return this;
+        }
+
+        /**
+         * Splits the shared queue into one lane per {@link Priority}, a lower lane is only served when all higher lanes
+         * are empty or its oldest task has waited longer than the aging limit.
+         */
+        public Builder strictPriorityLanes() {
+            this.priorityLanes = true;
+            this.laneWeights = null;
+            return this;
+        }
+
+        /**
+         * With priority lanes, a task that has waited longer than this is taken before any other, 1 second by default.
+         */
+        public Builder priorityAging(long maxWait, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            long nanos = unit.toNanos(maxWait);
+            if (nanos <= 0L) {
+                throw new IllegalArgumentException("maxWait must be positive: " + maxWait + " " + unit);
+            }
+            this.agingNanos = nanos;
+            return this;
+        }
+
+        /**
+         * Sizes the pool between {@code coreCapacity} and {@code maxCapacity} workers instead of starting
+         * {@code capacity} workers up front. Workers are started by the tasks that find none free, up to the core size
+         * right away and beyond that once the queue crosses the scale-up threshold. Workers above the core size exit
+         * after the keep-alive time without work. In thread-per-task mode only the maximum applies, as the concurrency
+         * limit.
+         */
+        public Builder elastic(int coreCapacity, int maxCapacity) {
+            if (coreCapacity <= 0 || maxCapacity < coreCapacity) {
+                throw new IllegalArgumentException(
+                        "capacities must satisfy 0 < core <= max: " + coreCapacity + ", " + maxCapacity);
+            }
+            this.coreCapacity = coreCapacity;
+            this.capacity = maxCapacity;
+            return this;
+        }
+
+        /**
+         * How long a worker above the core size of an elastic pool waits for work before it exits, 60 seconds by
+         * default.
+         */
+        public Builder keepAlive(long keepAlive, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            long nanos = unit.toNanos(keepAlive);
+            if (nanos <= 0L) {
+                throw new IllegalArgumentException("keepAlive must be positive: " + keepAlive + " " + unit);
+            }
+            this.keepAliveNanos = nanos;
+            return this;
+        }
+
+        /**
+         * When an elastic pool above its core size adds a worker: once {@code queueDepth} tasks are queued or tasks
+         * have been queued with no free worker for {@code queueWait}, 32 tasks and 10 milliseconds by default. At most
+         * one worker is added per task submitted, or per {@code queueWait} while the backlog lasts.
+         */
+        public Builder scaleUpThreshold(int queueDepth, long queueWait, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            long nanos = unit.toNanos(queueWait);
+            if (queueDepth <= 0 || nanos <= 0L) {
+                throw new IllegalArgumentException(
+                        "queueDepth and queueWait must be positive: " + queueDepth + ", " + queueWait + " " + unit);
+            }
+            this.scaleUpQueueDepth = queueDepth;
+            this.scaleUpQueueWaitNanos = nanos;
+            return this;
+        }
+
+        /**
+         * Creates the worker threads of the pool, for naming, priorities or thread groups. By default they are
+         * platform threads named {@code fixed-executor-<pool>-worker-<n>}. Not used in thread-per-task mode.
+         */
+        public Builder workerThreadFactory(ThreadFactory threadFactory) {
+            if (threadFactory == null) {
+                throw new NullPointerException();
+            }
+            this.workerThreadFactory = threadFactory;
+            return this;
+        }
+
+        /**
+         * Where the workers run, {@link WorkerPlacement#NONE} by default, see {@link LinuxAffinity} for pinning them to
+         * CPUs and sockets. Not used in thread-per-task mode.
+         */
+        public Builder workerPlacement(WorkerPlacement placement) {
+            if (placement == null) {
+                throw new NullPointerException();
+            }
+            this.placement = placement;
+            return this;
+        }
+
+        /**
+         * Number of serial lanes that the keys of {@link FixedExecutorService#execute(Object, Runnable)} are hashed
+         * onto, rounded up to a power of two, 4 times the capacity and at most 4096 by default. More lanes make it less
+         * likely that two busy keys wait for each other.
+         */
+        public Builder serialLanes(int count) {
+            if (count <= 0 || count > 1 << 30) {
+                throw new IllegalArgumentException("count must be in [1, 2^30]: " + count);
+            }
+            this.serialLaneCount = count;
+            return this;
+        }
+
+        /**
+         * Recycles the envelopes the executor puts around plain tasks, the enqueue timestamp of sampled tasks with
+         * metrics and the lane tag with priority lanes, instead of allocating one per task. Together with a bounded
+         * queue in shared-queue mode this makes {@code execute} allocation-free in the steady state. Off by default: a
+         * recycled wrapper costs two CAS operations, which is more than a TLAB allocation when the collector keeps up.
+         */
+        public Builder recycleTaskWrappers(boolean recycleTaskWrappers) {
+            this.recycleTaskWrappers = recycleTaskWrappers;
+            return this;
+        }
+
+        /**
+         * Registers a tenant with no concurrency limit, see {@link #tenant(String, int, int)}.
+         */
+        public Builder tenant(String name, int weight) {
+            return tenant(name, weight, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Registers a tenant that tasks can be submitted on behalf of, each with a sub-queue of its own. Workers are
+         * shared in proportion to the weights, counted in execution time: with weights 3 and 1 and both tenants
+         * backlogged, the first gets three quarters of the workers' time. A tenant never runs more than
+         * {@code maxConcurrency} tasks at once, which keeps workers free for the others even when it is alone with a
+         * backlog. Untagged tasks belong to the {@value Tenant#DEFAULT} tenant with weight 1 unless it is registered
+         * here. With a queue capacity, every sub-queue holds that many tasks. Not combinable with priority lanes, and
+         * in work-stealing mode all tasks go through the sub-queues.
+         */
+        public Builder tenant(String name, int weight, int maxConcurrency) {
+            if (name == null) {
+                throw new NullPointerException();
+            }
+            if (weight <= 0 || weight > 1_000) {
+                throw new IllegalArgumentException("weight must be in [1, 1000]: " + weight);
+            }
+            if (maxConcurrency <= 0) {
+                throw new IllegalArgumentException("maxConcurrency must be positive: " + maxConcurrency);
+            }
+            tenantWeights.put(name, weight);
+            if (maxConcurrency == Integer.MAX_VALUE) {
+                tenantConcurrency.remove(name);
+            } else {
+                tenantConcurrency.put(name, maxConcurrency);
+            }
+            return this;
+        }
+
+        /**
+         * Keeps a write-ahead log of the tasks submitted through {@link FixedExecutorService#executeDurable(Runnable)}
+         * in {@code directory}, which one executor at a time can have open. Building a pool on a directory that holds
+         * tasks that never ran queues them again, through the rejection policy if a bounded queue is too small for
+         * them. {@code sync} says when appended tasks are forced to disk.
+         */
+        public Builder journal(Path directory, JournalSync sync) {
+            if (directory == null || sync == null) {
+                throw new NullPointerException();
+            }
+            this.journalDirectory = directory;
+            this.journalSync = sync;
+            return this;
+        }
+
+        /**
+         * Size of the journal's segment files, 64 MiB by default. A task has to fit into one segment, and a segment is
+         * only deleted once all tasks in it have run.
+         */
+        public Builder journalSegmentSize(int bytes) {
+            if (bytes < 4096) {
+                throw new IllegalArgumentException("segment size must be at least 4096 bytes: " + bytes);
+            }
+            this.journalSegmentSize = bytes;
+            return this;
+        }
+
+        /**
+         * How often the journal is synced with {@link JournalSync#INTERVAL}, 10 milliseconds by default.
+         */
+        public Builder journalSyncInterval(long interval, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            long nanos = unit.toNanos(interval);
+            if (nanos <= 0L) {
+                throw new IllegalArgumentException("interval must be positive: " + interval + " " + unit);
+            }
+            this.journalSyncIntervalNanos = nanos;
+            return this;
+        }
+
+        /**
+         * Lets a worker take up to {@code size} tasks off the shared queue at once and run them back to back, 1 by
+         * default. Meant for tiny tasks, where taking a task costs about as much as running it: a bounded queue hands
+         * out the whole batch with a single CAS, and the worker only looks at the pool state between batches. The
+         * tasks of a batch are out of reach of the other workers, which may stay idle meanwhile, and
+         * {@code shutdownNow()} does not return them, the worker runs them before it stops. In work-stealing mode only
+         * the shared queue is drained in batches. Not combinable with tenants, whose limits count every task taken,
+         * and without effect in thread-per-task mode.
+         */
+        public Builder drainBatchSize(int size) {
+            if (size <= 0 || size > 1024) {
+                throw new IllegalArgumentException("size must be in [1, 1024]: " + size);
+            }
+            this.drainBatchSize = size;
+            return this;
+        }
+
+        /**
+         * Orders the shared queue by deadline, see {@link FixedExecutorService#executeWithDeadline}: workers take the
+         * task with the earliest deadline first and drop the tasks whose deadline has passed, which under overload
+         * keeps them on the tasks that can still make it instead of the ones whose callers have given up. A task
+         * without a deadline is ordered as if it was due {@code defaultSlack} after it was queued, so that it is not
+         * starved, and is never dropped. Every task goes through the shared queue, also in work-stealing mode. Not
+         * combinable with priority lanes or tenants.
+         */
+        public Builder deadlineScheduling(long defaultSlack, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            if (defaultSlack < 0L) {
+                throw new IllegalArgumentException("defaultSlack must not be negative: " + defaultSlack);
+            }
+            this.deadlineScheduling = true;
+            this.defaultSlackNanos = Math.min(unit.toNanos(defaultSlack), Long.MAX_VALUE >> 1);
+            return this;
+        }
+
+        /**
+         * Puts an adaptive limit on the number of tasks running at once, see {@link ConcurrencyLimiter}, for tasks
+         * that call a backend such as a database whose capacity is unknown or changes. The limit starts at
+         * {@code initialLimit}, is raised while tasks queue up and their execution time stays flat and lowered once it
+         * grows with the number of running tasks, never beyond the capacity nor below {@code minLimit}. Tasks over the
+         * limit wait in the queue. The backend should serve {@code minLimit} tasks without queueing them, now and
+         * then the limit drops to it to measure their execution time without load.
+         */
+        public Builder adaptiveConcurrency(int minLimit, int initialLimit) {
+            if (minLimit <= 0 || initialLimit < minLimit) {
+                throw new IllegalArgumentException(
+                        "limits must satisfy 0 < min <= initial: " + minLimit + ", " + initialLimit);
+            }
+            this.adaptiveConcurrency = true;
+            this.minConcurrency = minLimit;
+            this.initialConcurrency = initialLimit;
+            return this;
+        }
+
+        /**
+         * How often the adaptive concurrency limit is updated, 100 milliseconds by default. A window lasts until at
+         * least 10 tasks have finished in it.
+         */
+        public Builder concurrencyWindow(long window, TimeUnit unit) {
+            if (unit == null) {
+                throw new NullPointerException();
+            }
+            long nanos = unit.toNanos(window);
+            if (nanos <= 0L) {
+                throw new IllegalArgumentException("window must be positive: " + window + " " + unit);
+            }
+            this.concurrencyWindowNanos = nanos;
+            return this;
+        }
+
+        public FixedExecutorService build() {
+            if (coreCapacity > capacity) {
+                throw new IllegalArgumentException("core capacity " + coreCapacity + " exceeds capacity " + capacity);
+            }
+            if (priorityLanes && !tenantWeights.isEmpty()) {
+                throw new IllegalArgumentException("tenants and priority lanes are mutually exclusive");
+            }
+            if (deadlineScheduling && (priorityLanes || !tenantWeights.isEmpty())) {
+                throw new IllegalArgumentException("deadline scheduling excludes priority lanes and tenants");
+            }
+            if (drainBatchSize > 1 && !tenantWeights.isEmpty()) {
+                throw new IllegalArgumentException("tenants and drain batches are mutually exclusive");
+            }
+            if (adaptiveConcurrency && initialConcurrency > capacity) {
+                throw new IllegalArgumentException(
+                        "initial concurrency limit " + initialConcurrency + " exceeds capacity " + capacity);
+            }
+            FixedExecutorService executorService = new FixedExecutorService(this);
+            executorService.replayJournal();
+            return executorService;
         }
     }
 }
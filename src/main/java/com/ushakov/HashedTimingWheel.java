@@ -0,0 +1,326 @@
+package com.ushakov;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel (Varghese and Lauck) that keeps the delayed tasks of an executor until they are due.
+ *
+ * The wheel is an array of buckets, one per tick, and a task lands in the bucket of the tick it is due in, modulo
+ * the wheel size, with the number of full rounds still to go. One timer thread advances the wheel tick by tick and hands
+ * the tasks of the current bucket that have no rounds left to the executor. Scheduling and cancelling only push the
+ * task on an intrusive lock-free stack that the timer thread takes as a whole on the next tick, so both are O(1), do not
+ * allocate and never touch the buckets, which belong to the timer thread alone.
+ *
+ * A task never fires before it is due and usually fires within one tick after. The timer thread is started by the first
+ * scheduled task and parks without ticking while the wheel is empty.
+ */
+final class HashedTimingWheel {
+    private static final int NEW = 0;
+    private static final int STARTED = 1;
+    private static final int STOPPED = 2;
+    // Bounds the work of one tick when tasks are scheduled faster than the timer thread can sort them.
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<HashedTimingWheel, ScheduledTask> PENDING =
+            AtomicReferenceFieldUpdater.newUpdater(HashedTimingWheel.class, ScheduledTask.class, "pending");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<HashedTimingWheel, ScheduledTask> CANCELLED =
+            AtomicReferenceFieldUpdater.newUpdater(HashedTimingWheel.class, ScheduledTask.class, "cancelled");
+    // Replaces the pending stack once the wheel is stopped, so that no task can be pushed after the last drain.
+    private static final ScheduledTask<?> CLOSED = new ScheduledTask<>(() -> null, 0L, null);
+
+    private final FixedExecutorService executorService;
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket[] buckets;
+    // Tops of the stacks of newly scheduled and of cancelled tasks, linked through the tasks themselves.
+    private volatile ScheduledTask<?> pending;
+    private volatile ScheduledTask<?> cancelled;
+    // Tasks taken from the pending stack, not yet sorted into buckets.
+    private ScheduledTask<?> transferring;
+    private final AtomicInteger state = new AtomicInteger(NEW);
+    private volatile boolean sleeping;
+    private volatile Thread thread;
+    private long startTime;
+    private volatile List<ScheduledTask<?>> unfired;
+
+    // Owned by the timer thread.
+    private long tick;
+    private int size;
+
+    HashedTimingWheel(FixedExecutorService executorService, long tickNanos, int wheelSize) {
+        this.executorService = executorService;
+        this.tickNanos = tickNanos;
+        int length = 1;
+        while (length < wheelSize) {
+            length <<= 1;
+        }
+        this.mask = length - 1;
+        this.buckets = new Bucket[length];
+        for (int i = 0; i < length; i++) {
+            buckets[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Adds a task to the wheel, starting the timer thread if needed.
+     *
+     * @return false if the wheel was stopped, the task is not scheduled then
+     */
+    boolean schedule(ScheduledTask<?> task) {
+        while (true) {
+            ScheduledTask<?> top = pending;
+            if (top == CLOSED) {
+                return false;
+            }
+            task.nextPending = top;
+            if (PENDING.compareAndSet(this, top, task)) {
+                break;
+            }
+        }
+        if (state.get() == NEW && state.compareAndSet(NEW, STARTED)) {
+            start();
+        }
+        if (sleeping) {
+            sleeping = false;
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    void cancelled(ScheduledTask<?> task) {
+        if (state.get() != STARTED) {
+            // Not started: the task is still on the pending stack and skipped when taken. Stopped: nobody cares.
+            return;
+        }
+        ScheduledTask<?> top;
+        do {
+            top = cancelled;
+            task.nextCancelled = top;
+        } while (!CANCELLED.compareAndSet(this, top, task));
+    }
+
+    /**
+     * Stops the timer thread and returns the tasks that did not fire and were not cancelled.
+     */
+    List<ScheduledTask<?>> stop() {
+        List<ScheduledTask<?>> tasks = new ArrayList<>();
+        ScheduledTask<?> top = PENDING.getAndSet(this, CLOSED);
+        if (top == CLOSED) {
+            return tasks;
+        }
+        collect(top, tasks);
+        int previous = state.getAndSet(STOPPED);
+        Thread timer = thread;
+        if (previous == NEW || timer == null || timer == Thread.currentThread()) {
+            return tasks;
+        }
+        LockSupport.unpark(timer);
+        boolean interrupted = false;
+        // The schedule() call that started the wheel may not have started the thread yet, so wait for the thread to
+        // hand over its tasks rather than just for it to die.
+        while (unfired == null && timer.getState() != Thread.State.TERMINATED) {
+            if (timer.getState() == Thread.State.NEW) {
+                Thread.yield();
+                continue;
+            }
+            try {
+                timer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (unfired != null) {
+            tasks.addAll(unfired);
+        }
+        return tasks;
+    }
+
+    private void start() {
+        startTime = System.nanoTime();
+        Thread timer = new Thread(this::run, "fixed-executor-timer");
+        timer.setDaemon(true);
+        thread = timer;
+        timer.start();
+    }
+
+    private void run() {
+        while (awaitNextTick()) {
+            processCancelled();
+            transferPending();
+            expire(buckets[(int) tick & mask]);
+            tick++;
+        }
+        List<ScheduledTask<?>> tasks = new ArrayList<>();
+        for (Bucket bucket : buckets) {
+            bucket.drainTo(tasks);
+        }
+        collect(transferring, tasks);
+        transferring = null;
+        unfired = tasks;
+    }
+
+    private static void collect(ScheduledTask<?> task, List<ScheduledTask<?>> tasks) {
+        while (task != null) {
+            ScheduledTask<?> next = task.nextPending;
+            task.nextPending = null;
+            if (!task.isCancelled()) {
+                tasks.add(task);
+            }
+            task = next;
+        }
+    }
+
+    /**
+     * Sleeps until the end of the current tick. An empty wheel sleeps until a task is scheduled and skips the ticks
+     * that passed in the meantime.
+     *
+     * @return false once the wheel is stopped
+     */
+    private boolean awaitNextTick() {
+        while (true) {
+            if (state.get() == STOPPED) {
+                return false;
+            }
+            if (size == 0 && transferring == null && pending == null) {
+                sleeping = true;
+                if (pending == null && state.get() != STOPPED) {
+                    LockSupport.park(this);
+                }
+                sleeping = false;
+                if (size == 0) {
+                    tick = Math.max(tick, (System.nanoTime() - startTime) / tickNanos);
+                }
+                continue;
+            }
+            long sleepNanos = startTime + (tick + 1) * tickNanos - System.nanoTime();
+            if (sleepNanos <= 0L) {
+                return true;
+            }
+            LockSupport.parkNanos(this, sleepNanos);
+        }
+    }
+
+    private void processCancelled() {
+        ScheduledTask<?> task = CANCELLED.getAndSet(this, null);
+        while (task != null) {
+            ScheduledTask<?> next = task.nextCancelled;
+            task.nextCancelled = null;
+            Bucket bucket = task.bucket;
+            if (bucket != null) {
+                bucket.remove(task);
+                size--;
+            }
+            task = next;
+        }
+    }
+
+    private void transferPending() {
+        if (transferring == null) {
+            transferring = takePending();
+        }
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK && transferring != null; i++) {
+            ScheduledTask<?> task = transferring;
+            transferring = task.nextPending;
+            task.nextPending = null;
+            if (task.isCancelled()) {
+                continue;
+            }
+            // The tick at the end of which the task is due, a task that is already late goes to the current one.
+            long due = Math.max(tick, Math.floorDiv(task.getTime() - startTime + tickNanos - 1, tickNanos) - 1);
+            task.remainingRounds = (due - tick) / buckets.length;
+            buckets[(int) due & mask].add(task);
+            size++;
+        }
+    }
+
+    /**
+     * Takes the whole pending stack and reverses it, so that tasks due in the same tick fire in scheduling order.
+     */
+    private ScheduledTask<?> takePending() {
+        ScheduledTask<?> top;
+        do {
+            top = pending;
+            if (top == null || top == CLOSED) {
+                return null;
+            }
+        } while (!PENDING.compareAndSet(this, top, null));
+        ScheduledTask<?> reversed = null;
+        while (top != null) {
+            ScheduledTask<?> next = top.nextPending;
+            top.nextPending = reversed;
+            reversed = top;
+            top = next;
+        }
+        return reversed;
+    }
+
+    private void expire(Bucket bucket) {
+        ScheduledTask<?> task = bucket.head;
+        while (task != null) {
+            ScheduledTask<?> next = task.next;
+            if (task.remainingRounds <= 0L) {
+                bucket.remove(task);
+                size--;
+                executorService.fire(task);
+            } else {
+                task.remainingRounds--;
+            }
+            task = next;
+        }
+    }
+
+    /**
+     * Doubly linked list of the tasks due in one slot of the wheel.
+     */
+    static final class Bucket {
+        private ScheduledTask<?> head;
+        private ScheduledTask<?> tail;
+
+        void add(ScheduledTask<?> task) {
+            task.bucket = this;
+            task.previous = tail;
+            task.next = null;
+            if (tail == null) {
+                head = task;
+            } else {
+                tail.next = task;
+            }
+            tail = task;
+        }
+
+        void remove(ScheduledTask<?> task) {
+            if (task.previous == null) {
+                head = task.next;
+            } else {
+                task.previous.next = task.next;
+            }
+            if (task.next == null) {
+                tail = task.previous;
+            } else {
+                task.next.previous = task.previous;
+            }
+            task.bucket = null;
+            task.previous = null;
+            task.next = null;
+        }
+
+        void drainTo(List<ScheduledTask<?>> tasks) {
+            for (ScheduledTask<?> task = head; task != null; task = task.next) {
+                task.bucket = null;
+                if (!task.isCancelled()) {
+                    tasks.add(task);
+                }
+            }
+            head = null;
+            tail = null;
+        }
+    }
+}
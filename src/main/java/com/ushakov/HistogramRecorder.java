@@ -0,0 +1,63 @@
+package com.ushakov;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear histogram of nanosecond values in the style of HdrHistogram: every power of two is split into
+ * {@value #SUB_BUCKETS} equal sub-buckets, which keeps the relative error of a recorded value under about 3% over the
+ * whole {@code long} range with fewer than 2000 counters.
+ *
+ * A recorder is meant to have a single writer, {@link #record} then never contends. {@link #recordConcurrent} is the
+ * slower variant for recorders shared between threads.
+ */
+final class HistogramRecorder {
+    static final int SUB_BUCKET_BITS = 5;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int BUCKET_COUNT = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Largest value that falls into the bucket at {@code index}.
+     */
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + (index - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    void record(long value) {
+        int index = indexOf(value);
+        counts.lazySet(index, counts.get(index) + 1);
+    }
+
+    void recordConcurrent(long value) {
+        counts.incrementAndGet(indexOf(value));
+    }
+
+    void addTo(long[] target) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            target[i] += counts.get(i);
+        }
+    }
+
+    void addAll(long[] source) {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            if (source[i] != 0) {
+                counts.addAndGet(i, source[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.ushakov;
+
+/**
+ * Tells a worker what to do when it finds no task to run.
+ *
+ * Only workers that actually park are registered as idle, so producers pay for a wake-up only when it is needed and
+ * a spinning worker picks up new work on its next poll.
+ */
+public interface IdleStrategy {
+    /**
+     * Return value of {@link #idle(int)} that parks the worker until a producer signals new work.
+     */
+    long PARK = -1L;
+
+    /**
+     * Polls again straight away, burning a core while idle.
+     */
+    IdleStrategy BUSY_SPIN = idleCount -> 0L;
+
+    /**
+     * Spins with {@code Thread.onSpinWait()}, which lets the CPU relax the pipeline and the sibling hyper-thread run.
+     */
+    IdleStrategy SPIN_WAIT = idleCount -> {
+        SpinWait.onSpinWait();
+        return 0L;
+    };
+
+    /**
+     * Gives up the time slice between polls.
+     */
+    IdleStrategy YIELD = idleCount -> {
+        Thread.yield();
+        return 0L;
+    };
+
+    /**
+     * Parks until signalled, the default.
+     */
+    IdleStrategy BLOCKING = idleCount -> PARK;
+
+    /**
+     * Spins, then yields, then parks for 1 microsecond doubling up to 1 millisecond.
+     */
+    IdleStrategy BACKOFF = backoff(100, 10, 1_000L, 1_000_000L);
+
+    /**
+     * Called each time the worker comes back empty-handed.
+     *
+     * @param idleCount number of consecutive empty polls, starting at 1
+     * @return 0 to poll again immediately, a positive number of nanoseconds to park for, or {@link #PARK}
+     */
+    long idle(int idleCount);
+
+    /**
+     * Spins {@code spins} times with {@code Thread.onSpinWait()}, yields {@code yields} times and then parks for
+     * {@code minParkNanos}, doubling the park time on every further miss up to {@code maxParkNanos}. A producer still
+     * wakes a parked worker early.
+     */
+    static IdleStrategy backoff(int spins, int yields, long minParkNanos, long maxParkNanos) {
+        if (spins < 0 || yields < 0 || minParkNanos <= 0 || maxParkNanos < minParkNanos) {
+            throw new IllegalArgumentException();
+        }
+        return idleCount -> {
+            if (idleCount <= spins) {
+                SpinWait.onSpinWait();
+                return 0L;
+            }
+            if (idleCount <= spins + yields) {
+                Thread.yield();
+                return 0L;
+            }
+            int doublings = Math.min(idleCount - spins - yields - 1, Long.numberOfLeadingZeros(minParkNanos) - 1);
+            return Math.min(minParkNanos << doublings, maxParkNanos);
+        };
+    }
+}
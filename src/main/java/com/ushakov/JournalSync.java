@@ -0,0 +1,24 @@
+package com.ushakov;
+
+/**
+ * When the task journal of a {@link FixedExecutorService} forces appended tasks to disk, see
+ * {@link FixedExecutorService.Builder#journal(java.nio.file.Path, JournalSync)}. The journal is memory-mapped, so
+ * an appended task survives a crash of the process under every policy, the policies differ in what survives a crash
+ * of the machine.
+ */
+public enum JournalSync {
+    /**
+     * {@code executeDurable} returns once the task is on disk. Submitters that append at the same time share one
+     * sync, the first one to get to it syncs for all that appended before it.
+     */
+    ALWAYS,
+    /**
+     * A background thread syncs at the journal sync interval, a crash of the machine loses at most the tasks
+     * appended during the last interval.
+     */
+    INTERVAL,
+    /**
+     * Leaves writing back to the operating system.
+     */
+    NEVER
+}
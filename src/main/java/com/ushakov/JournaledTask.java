@@ -0,0 +1,39 @@
+package com.ushakov;
+
+/**
+ * A task appended to the {@link TaskJournal}, which records its completion once it has run, whether it threw or not,
+ * or once it was discarded.
+ */
+final class JournaledTask implements Runnable {
+    final Runnable task;
+    final long id;
+    final TaskJournal.Segment segment;
+    private final TaskJournal journal;
+    private boolean acknowledged;
+
+    JournaledTask(Runnable task, long id, TaskJournal.Segment segment, TaskJournal journal) {
+        this.task = task;
+        this.id = id;
+        this.segment = segment;
+        this.journal = journal;
+    }
+
+    @Override
+    public void run() {
+        try {
+            task.run();
+        } finally {
+            acknowledge();
+        }
+    }
+
+    /**
+     * Records that the task is finished with, so that it is not replayed.
+     */
+    void acknowledge() {
+        if (!acknowledged) {
+            acknowledged = true;
+            journal.acknowledge(this);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.ushakov;
+
+/**
+ * Immutable distribution of nanosecond latencies aggregated from the recorders of all workers.
+ */
+public final class LatencyHistogram {
+    private final long[] counts;
+    private final long totalCount;
+
+    LatencyHistogram(long[] counts) {
+        this.counts = counts;
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        this.totalCount = total;
+    }
+
+    static LatencyHistogram of(Iterable<HistogramRecorder> recorders) {
+        long[] counts = new long[HistogramRecorder.BUCKET_COUNT];
+        for (HistogramRecorder recorder : recorders) {
+            recorder.addTo(counts);
+        }
+        return new LatencyHistogram(counts);
+    }
+
+    public long getCount() {
+        return totalCount;
+    }
+
+    /**
+     * Upper bound of the bucket holding the largest recorded value, 0 if nothing was recorded.
+     */
+    public long getMax() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] != 0) {
+                return HistogramRecorder.highestValueAt(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Value below which the given percentage (0 to 100) of the recorded values fall, 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in [0, 100]: " + percentile);
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return HistogramRecorder.highestValueAt(i);
+            }
+        }
+        return getMax();
+    }
+
+    public double getMean() {
+        if (totalCount == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                sum += (double) counts[i] * HistogramRecorder.highestValueAt(i);
+            }
+        }
+        return sum / totalCount;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram{count=" + totalCount
+                + ", p50=" + getValueAtPercentile(50)
+                + ", p99=" + getValueAtPercentile(99)
+                + ", p999=" + getValueAtPercentile(99.9)
+                + ", max=" + getMax() + "}";
+    }
+}
@@ -0,0 +1,235 @@
+package com.ushakov;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Pins workers to CPUs on Linux and groups them by socket.
+ *
+ * The topology comes from sysfs, and a worker thread is pinned with {@code taskset}, which calls
+ * {@code sched_setaffinity} on the thread id found through {@code /proc/thread-self}. Going through util-linux keeps
+ * the project free of native bindings and compiling for Java 8, at the price of one short-lived process per worker
+ * start.
+ */
+public final class LinuxAffinity implements WorkerPlacement {
+    private static final Path SYSFS = Paths.get("/sys");
+    private static final Path THREAD_SELF = Paths.get("/proc/thread-self");
+
+    // Worker i is pinned to the CPUs of slot i modulo the number of slots and belongs to the group of that slot.
+    private final int[][] slotCpus;
+    private final int[] slotGroups;
+    private final int groupCount;
+
+    private LinuxAffinity(int[][] slotCpus, int[] slotGroups, int groupCount) {
+        this.slotCpus = slotCpus;
+        this.slotGroups = slotGroups;
+        this.groupCount = groupCount;
+    }
+
+    /**
+     * Pins every worker to all CPUs of one socket, spreading the workers over the sockets in turn. The scheduler still
+     * balances the workers between the cores of a socket, but never moves one across sockets.
+     *
+     * @throws UnsupportedOperationException if not running on Linux 3.17 or newer
+     */
+    public static LinuxAffinity perSocket() {
+        requireLinux();
+        return perSocket(SYSFS);
+    }
+
+    /**
+     * Pins every worker to one CPU of {@code cpuList} and groups the workers by the socket of their CPU. The CPUs are
+     * laid out socket by socket, in ascending order within each socket whatever their order in the list, and worker
+     * {@code i} gets the {@code i}-th of them, taken modulo their number. With CPUs 0 and 2 on one socket and 1 and 3
+     * on the other, {@code "0-3"} pins workers 0 to 3 to CPUs 0, 2, 1 and 3. The list uses the taskset and cgroup
+     * notation, for example {@code "0-3,8,10-11"}.
+     *
+     * @throws UnsupportedOperationException if not running on Linux 3.17 or newer
+     */
+    public static LinuxAffinity cpus(String cpuList) {
+        requireLinux();
+        return cpus(SYSFS, parseCpuList(cpuList));
+    }
+
+    static LinuxAffinity perSocket(Path sysfs) {
+        int[] online = parseCpuList(read(sysfs.resolve("devices/system/cpu/online")));
+        Map<Integer, List<Integer>> sockets = sockets(sysfs, online);
+        int[][] slotCpus = new int[sockets.size()][];
+        int[] slotGroups = new int[sockets.size()];
+        int slot = 0;
+        for (List<Integer> cpus : sockets.values()) {
+            slotCpus[slot] = toArray(cpus);
+            slotGroups[slot] = slot;
+            slot++;
+        }
+        return new LinuxAffinity(slotCpus, slotGroups, sockets.size());
+    }
+
+    static LinuxAffinity cpus(Path sysfs, int[] cpus) {
+        Map<Integer, List<Integer>> sockets = sockets(sysfs, cpus);
+        int[][] slotCpus = new int[cpus.length][];
+        int[] slotGroups = new int[cpus.length];
+        int group = 0;
+        int slot = 0;
+        for (List<Integer> socketCpus : sockets.values()) {
+            for (int cpu : socketCpus) {
+                slotCpus[slot] = new int[]{cpu};
+                slotGroups[slot] = group;
+                slot++;
+            }
+            group++;
+        }
+        return new LinuxAffinity(slotCpus, slotGroups, sockets.size());
+    }
+
+    @Override
+    public int groupCount() {
+        return groupCount;
+    }
+
+    @Override
+    public int group(int workerIndex) {
+        return slotGroups[workerIndex % slotGroups.length];
+    }
+
+    /**
+     * CPUs the worker with the given index is pinned to.
+     */
+    int[] cpus(int workerIndex) {
+        return slotCpus[workerIndex % slotCpus.length].clone();
+    }
+
+    @Override
+    public void bind(int workerIndex) {
+        String threadId;
+        try {
+            threadId = Files.readSymbolicLink(THREAD_SELF).getFileName().toString();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        run("taskset", "-p", "-c", formatCpuList(slotCpus[workerIndex % slotCpus.length]), threadId);
+    }
+
+    private static void run(String... command) {
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            String output = readFully(process.getInputStream());
+            int exitCode = process.waitFor();
+            if (exitCode != 0) {
+                throw new IllegalStateException(String.join(" ", command) + " exited with " + exitCode + ": "
+                        + output.trim());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while pinning the worker", e);
+        }
+    }
+
+    /**
+     * The CPUs of {@code cpus} by socket, both in ascending order. A CPU without topology information counts as socket
+     * 0. Offline CPUs are not filtered out here, {@link #perSocket(Path)} passes only the online ones.
+     */
+    private static Map<Integer, List<Integer>> sockets(Path sysfs, int[] cpus) {
+        Map<Integer, List<Integer>> sockets = new TreeMap<>();
+        for (int cpu : cpus) {
+            int socket;
+            try {
+                socket = Integer.parseInt(read(sysfs.resolve("devices/system/cpu/cpu" + cpu
+                        + "/topology/physical_package_id")).trim());
+            } catch (UncheckedIOException e) {
+                if (!(e.getCause() instanceof NoSuchFileException)) {
+                    throw e;
+                }
+                socket = 0;
+            }
+            sockets.computeIfAbsent(socket, key -> new ArrayList<>()).add(cpu);
+        }
+        return sockets;
+    }
+
+    /**
+     * Parses a CPU list such as {@code "0-3,8,10-11"} into its sorted distinct CPU numbers.
+     */
+    static int[] parseCpuList(String cpuList) {
+        if (cpuList == null) {
+            throw new NullPointerException();
+        }
+        TreeSet<Integer> cpus = new TreeSet<>();
+        for (String range : cpuList.trim().split(",")) {
+            String[] bounds = range.trim().split("-", -1);
+            try {
+                int from = Integer.parseInt(bounds[0].trim());
+                int to = bounds.length == 2 ? Integer.parseInt(bounds[1].trim()) : from;
+                if (bounds.length > 2 || from < 0 || to < from) {
+                    throw new IllegalArgumentException("invalid CPU range '" + range + "' in '" + cpuList + "'");
+                }
+                for (int cpu = from; cpu <= to; cpu++) {
+                    cpus.add(cpu);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid CPU range '" + range + "' in '" + cpuList + "'", e);
+            }
+        }
+        return toArray(cpus);
+    }
+
+    static String formatCpuList(int[] cpus) {
+        StringBuilder list = new StringBuilder();
+        for (int cpu : cpus) {
+            if (list.length() > 0) {
+                list.append(',');
+            }
+            list.append(cpu);
+        }
+        return list.toString();
+    }
+
+    private static int[] toArray(Iterable<Integer> values) {
+        List<Integer> list = new ArrayList<>();
+        values.forEach(list::add);
+        int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static String read(Path file) {
+        try {
+            return new String(Files.readAllBytes(file), StandardCharsets.US_ASCII);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void requireLinux() {
+        if (!Files.exists(THREAD_SELF)) {
+            throw new UnsupportedOperationException("CPU affinity requires Linux 3.17 or newer, running on "
+                    + System.getProperty("os.name") + " " + System.getProperty("os.version"));
+        }
+    }
+}
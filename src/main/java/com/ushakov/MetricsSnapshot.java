@@ -0,0 +1,140 @@
+package com.ushakov;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Point-in-time view of the counters of a {@link FixedExecutorService}. Totals include workers that have already
+ * exited and, in thread-per-task mode, the task threads.
+ */
+public final class MetricsSnapshot {
+    private final List<WorkerMetrics> workers;
+    private final int queueDepth;
+    private final long rejectedTaskCount;
+    private final long tasksRun;
+    private final long busyNanos;
+    private final long idleNanos;
+    private final long steals;
+    private final LatencyHistogram queueWaitTime;
+    private final LatencyHistogram executionTime;
+
+    MetricsSnapshot(List<WorkerMetrics> workers, int queueDepth, long rejectedTaskCount, long tasksRun,
+                    long busyNanos, long idleNanos, long steals,
+                    LatencyHistogram queueWaitTime, LatencyHistogram executionTime) {
+        this.workers = Collections.unmodifiableList(workers);
+        this.queueDepth = queueDepth;
+        this.rejectedTaskCount = rejectedTaskCount;
+        this.tasksRun = tasksRun;
+        this.busyNanos = busyNanos;
+        this.idleNanos = idleNanos;
+        this.steals = steals;
+        this.queueWaitTime = queueWaitTime;
+        this.executionTime = executionTime;
+    }
+
+    /**
+     * Counters of the workers alive when the snapshot was taken.
+     */
+    public List<WorkerMetrics> getWorkers() {
+        return workers;
+    }
+
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    public long getRejectedTaskCount() {
+        return rejectedTaskCount;
+    }
+
+    public long getTasksRun() {
+        return tasksRun;
+    }
+
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public long getIdleNanos() {
+        return idleNanos;
+    }
+
+    public long getSteals() {
+        return steals;
+    }
+
+    /**
+     * Share of worker time spent running tasks, between 0 and 1.
+     */
+    public double getUtilization() {
+        return utilization(busyNanos, idleNanos);
+    }
+
+    /**
+     * Time from enqueueing a task until a worker starts it.
+     */
+    public LatencyHistogram getQueueWaitTime() {
+        return queueWaitTime;
+    }
+
+    public LatencyHistogram getExecutionTime() {
+        return executionTime;
+    }
+
+    static double utilization(long busyNanos, long idleNanos) {
+        long total = busyNanos + idleNanos;
+        return total == 0 ? 0 : (double) busyNanos / total;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{workers=" + workers.size()
+                + ", queueDepth=" + queueDepth
+                + ", rejectedTaskCount=" + rejectedTaskCount
+                + ", tasksRun=" + tasksRun
+                + ", utilization=" + getUtilization()
+                + ", steals=" + steals
+                + ", queueWaitTime=" + queueWaitTime
+                + ", executionTime=" + executionTime + "}";
+    }
+
+    public static final class WorkerMetrics {
+        private final String name;
+        private final long tasksRun;
+        private final long busyNanos;
+        private final long idleNanos;
+        private final long steals;
+
+        WorkerMetrics(WorkerStats stats) {
+            this.name = stats.name;
+            this.tasksRun = stats.tasksRun;
+            this.busyNanos = stats.busyNanos;
+            this.idleNanos = stats.idleNanos(System.nanoTime());
+            this.steals = stats.steals;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getTasksRun() {
+            return tasksRun;
+        }
+
+        public long getBusyNanos() {
+            return busyNanos;
+        }
+
+        public long getIdleNanos() {
+            return idleNanos;
+        }
+
+        public long getSteals() {
+            return steals;
+        }
+
+        public double getUtilization() {
+            return utilization(busyNanos, idleNanos);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ushakov;
+
+/**
+ * Task on its way into a {@link PriorityLaneQueue}, tagged with its lane and the time it was enqueued.
+ */
+final class PrioritizedTask extends TaskWrapper {
+    Priority priority;
+
+    PrioritizedTask(Runnable task, Priority priority) {
+        super(task);
+        this.priority = priority;
+    }
+}
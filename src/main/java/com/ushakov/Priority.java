@@ -0,0 +1,17 @@
+package com.ushakov;
+
+/**
+ * Priority class of a task, see {@link FixedExecutorService.Builder#priorityLanes(int, int, int)}. Tasks submitted
+ * without a priority are {@link #NORMAL}.
+ */
+public enum Priority {
+    /**
+     * Latency-critical work, such as user requests.
+     */
+    HIGH,
+    NORMAL,
+    /**
+     * Bulk and background work.
+     */
+    LOW
+}
@@ -0,0 +1,279 @@
+package com.ushakov;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Predicate;
+
+/**
+ * Shared task queue split into one FIFO lane per {@link Priority}.
+ *
+ * With weights, workers take from the lanes in a smooth weighted round robin: with weights 8, 4 and 1, out of 13 takes
+ * 8 go to HIGH, 4 to NORMAL and 1 to LOW, interleaved, and an empty lane gives its turn to the next one in priority
+ * order. Without weights, a lower lane is only served once all higher lanes are empty. In both cases a lane whose oldest
+ * task has waited longer than the aging limit is served first, so low-priority work still makes progress under a
+ * steady stream of urgent tasks.
+ *
+ * Tasks are offered as {@link PrioritizedTask}, plain tasks go to the NORMAL lane, and come out unwrapped. The round
+ * robin cursor is updated without synchronization, concurrent workers may occasionally take the same turn, which only
+ * blurs the ratio a little.
+ */
+final class PriorityLaneQueue extends AbstractQueue<Runnable> {
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final List<Queue<PrioritizedTask>> lanes;
+    private final int laneCapacity;
+    // Lane to try first at each turn of a weighted round, null for strict priority.
+    private final int[] rounds;
+    private final long agingNanos;
+    // Queue wait per lane, null unless metrics are enabled.
+    private final HistogramRecorder[] waitTimes;
+    // Entries handed back once their task is taken out, null unless wrappers are recycled.
+    private final TaskRecycler<PrioritizedTask> entries;
+    private int cursor;
+
+    /**
+     * @param weights weight of each lane in {@link Priority} order, null for strict priority
+     * @param laneCapacity capacity of each lane or {@link FixedExecutorService#UNBOUNDED}
+     */
+    PriorityLaneQueue(int[] weights, long agingNanos, int laneCapacity, boolean recordWaitTimes,
+                      boolean recycleEntries) {
+        this.laneCapacity = laneCapacity;
+        this.agingNanos = agingNanos;
+        this.rounds = weights == null ? null : smoothRoundRobin(weights);
+        List<Queue<PrioritizedTask>> queues = new ArrayList<>(PRIORITIES.length);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(laneCapacity == FixedExecutorService.UNBOUNDED
+                    ? new ConcurrentLinkedQueue<>()
+                    : new RingBufferQueue<>(laneCapacity));
+        }
+        this.lanes = Collections.unmodifiableList(queues);
+        if (recordWaitTimes) {
+            this.waitTimes = new HistogramRecorder[PRIORITIES.length];
+            for (int i = 0; i < PRIORITIES.length; i++) {
+                waitTimes[i] = new HistogramRecorder();
+            }
+        } else {
+            this.waitTimes = null;
+        }
+        this.entries = recycleEntries
+                ? new TaskRecycler<>(laneCapacity == FixedExecutorService.UNBOUNDED ? 1024 : laneCapacity)
+                : null;
+    }
+
+    /**
+     * Spreads the turns of every lane evenly over a round as long as the sum of the weights, the way nginx balances
+     * upstreams: each turn goes to the lane with the most accumulated credit, which then pays the whole round.
+     */
+    private static int[] smoothRoundRobin(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int[] rounds = new int[total];
+        int[] credit = new int[weights.length];
+        for (int turn = 0; turn < total; turn++) {
+            int best = 0;
+            for (int i = 0; i < weights.length; i++) {
+                credit[i] += weights[i];
+                if (credit[i] > credit[best]) {
+                    best = i;
+                }
+            }
+            credit[best] -= total;
+            rounds[turn] = best;
+        }
+        return rounds;
+    }
+
+    int laneCapacity() {
+        return laneCapacity;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        PrioritizedTask entry = entry(task);
+        entry.enqueuedAt = System.nanoTime();
+        return lanes.get(entry.priority.ordinal()).offer(entry);
+    }
+
+    /**
+     * Adds tasks of the same priority to their lane with a single queue operation. Only for unbounded lanes.
+     */
+    @Override
+    public boolean addAll(Collection<? extends Runnable> tasks) {
+        if (tasks.isEmpty()) {
+            return false;
+        }
+        long now = System.nanoTime();
+        List<PrioritizedTask> entries = new ArrayList<>(tasks.size());
+        Priority priority = null;
+        boolean samePriority = true;
+        for (Runnable task : tasks) {
+            PrioritizedTask entry = entry(task);
+            entry.enqueuedAt = now;
+            entries.add(entry);
+            samePriority &= priority == null || priority == entry.priority;
+            priority = entry.priority;
+        }
+        if (samePriority) {
+            return lanes.get(priority.ordinal()).addAll(entries);
+        }
+        for (PrioritizedTask entry : entries) {
+            lanes.get(entry.priority.ordinal()).add(entry);
+        }
+        return true;
+    }
+
+    private PrioritizedTask entry(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        return task instanceof PrioritizedTask ? (PrioritizedTask) task : wrap(task, Priority.NORMAL);
+    }
+
+    /**
+     * Tags a task for the lane of {@code priority}, with a recycled entry if there is one.
+     */
+    PrioritizedTask wrap(Runnable task, Priority priority) {
+        PrioritizedTask entry = entries == null ? null : entries.poll();
+        if (entry == null) {
+            return new PrioritizedTask(task, priority);
+        }
+        entry.priority = priority;
+        entry.reuse(task);
+        return entry;
+    }
+
+    @Override
+    public Runnable poll() {
+        long now = System.nanoTime();
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            Queue<PrioritizedTask> lane = lanes.get(i);
+            PrioritizedTask head = lane.peek();
+            if (head != null && now - head.enqueuedAt >= agingNanos) {
+                PrioritizedTask entry = lane.poll();
+                if (entry != null) {
+                    return take(entry, now);
+                }
+            }
+        }
+        int first = 0;
+        if (rounds != null) {
+            first = rounds[(cursor & Integer.MAX_VALUE) % rounds.length];
+            cursor++;
+        }
+        PrioritizedTask entry = lanes.get(first).poll();
+        for (int i = 0; entry == null && i < PRIORITIES.length; i++) {
+            if (i != first) {
+                entry = lanes.get(i).poll();
+            }
+        }
+        return entry == null ? null : take(entry, now);
+    }
+
+    private Runnable take(PrioritizedTask entry, long now) {
+        if (waitTimes != null) {
+            waitTimes[entry.priority.ordinal()].recordConcurrent(now - entry.enqueuedAt);
+        }
+        Runnable task = entry.task;
+        if (entries != null) {
+            entries.recycle(entry);
+        }
+        return task;
+    }
+
+    @Override
+    public Runnable peek() {
+        for (Queue<PrioritizedTask> lane : lanes) {
+            PrioritizedTask head = lane.peek();
+            Runnable task;
+            if (head != null && (task = head.snapshot(head.generation)) != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Queue<PrioritizedTask> lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Queue<PrioritizedTask> lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int size(Priority priority) {
+        return lanes.get(priority.ordinal()).size();
+    }
+
+    /**
+     * Queue wait of the tasks taken from a lane so far, null unless metrics are enabled.
+     */
+    LatencyHistogram waitTime(Priority priority) {
+        return waitTimes == null ? null : LatencyHistogram.of(Collections.singletonList(waitTimes[priority.ordinal()]));
+    }
+
+    /**
+     * Only supported for unbounded lanes.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super Runnable> filter) {
+        boolean removed = false;
+        for (Queue<PrioritizedTask> lane : lanes) {
+            removed |= lane.removeIf(entry -> {
+                Runnable task = entry.snapshot(entry.generation);
+                return task != null && filter.test(task);
+            });
+        }
+        return removed;
+    }
+
+    /**
+     * Weakly consistent iterator over the lanes in priority order, reading a lane at a time, see
+     * {@link TaskWrapper#snapshotAll}. Removal through the iterator is not supported.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        return new Iterator<Runnable>() {
+            private int lane;
+            private Iterator<Runnable> current = TaskWrapper.snapshotAll(lanes.get(0)).iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (++lane == lanes.size()) {
+                        return false;
+                    }
+                    current = TaskWrapper.snapshotAll(lanes.get(lane)).iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public Runnable next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+}
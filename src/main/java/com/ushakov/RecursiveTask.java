@@ -0,0 +1,183 @@
+package com.ushakov;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Task that splits its work into subtasks, forks them onto the pool and joins their results, for divide-and-conquer
+ * jobs on a {@link FixedExecutorService}.
+ *
+ * A subtask forked from a worker goes to that worker's deque in work-stealing mode, where idle workers steal it, and
+ * to the shared queue otherwise. {@link #join()} never leaves a worker blocked while there is work: a subtask that
+ * nobody has started yet is run by the joining thread itself, and while it runs elsewhere the joining worker runs
+ * queued or stolen tasks until it is done. Nested joins therefore cannot exhaust the pool the way blocking in
+ * {@code get} does once every worker waits for a task queued behind it. In thread-per-task mode and on threads
+ * outside the pool a join runs the subtask itself if it has not started and blocks otherwise.
+ *
+ * <pre>{@code
+ * class Sum extends RecursiveTask<Long> {
+ *     protected Long compute() {
+ *         if (to - from <= THRESHOLD) {
+ *             return sumDirectly(from, to);
+ *         }
+ *         Sum left = new Sum(values, from, middle);
+ *         Sum right = new Sum(values, middle, to);
+ *         left.fork();
+ *         return right.invoke() + left.join();
+ *     }
+ * }
+ * long sum = executorService.invoke(new Sum(values, 0, values.length));
+ * }</pre>
+ */
+public abstract class RecursiveTask<T> extends TaskFuture<T> {
+    // Pool of a task computing on a thread that is not one of its workers, for the subtasks it forks.
+    private static final ThreadLocal<FixedExecutorService> CURRENT_POOL = new ThreadLocal<>();
+
+    // The pool the task was forked or submitted to, null for a task invoked outside of any.
+    FixedExecutorService pool;
+
+    protected RecursiveTask() {
+        this(new Compute<>());
+    }
+
+    private RecursiveTask(Compute<T> compute) {
+        super(compute);
+        compute.task = this;
+    }
+
+    /**
+     * Computes the result, forking and joining subtasks as needed.
+     */
+    protected abstract T compute();
+
+    /**
+     * Schedules the task on the pool that runs the current task, on the deque of the current worker in work-stealing
+     * mode.
+     *
+     * @return this task
+     * @throws IllegalStateException if the current thread is not running a task of a {@link FixedExecutorService}
+     */
+    public final RecursiveTask<T> fork() {
+        Worker worker = Worker.current();
+        FixedExecutorService executorService = worker != null ? worker.executorService : CURRENT_POOL.get();
+        if (executorService == null) {
+            throw new IllegalStateException("Not running on a FixedExecutorService, submit the task instead");
+        }
+        bind(executorService);
+        executorService.execute(this);
+        return this;
+    }
+
+    /**
+     * Returns the result once the task is done, helping the pool in the meantime, see the class comment. Not
+     * interruptible, an interrupt is kept for the caller.
+     *
+     * @throws CancellationException if the task was cancelled, which includes a join on a worker of a pool that was
+     *                               stopped by {@code shutdownNow()}
+     * @throws CompletionException wrapping a checked exception of the task, an unchecked one is rethrown as is
+     */
+    public final T join() {
+        if (!isDone()) {
+            if (pool != null) {
+                pool.awaitJoin(this);
+            } else {
+                run();
+                awaitUninterruptibly(this);
+            }
+        }
+        return result();
+    }
+
+    /**
+     * Computes the task on the current thread, with its subtasks forked onto the pool of the current task, and
+     * returns its result like {@link #join()}.
+     */
+    public final T invoke() {
+        if (pool == null) {
+            Worker worker = Worker.current();
+            FixedExecutorService executorService = worker != null ? worker.executorService : CURRENT_POOL.get();
+            if (executorService != null) {
+                bind(executorService);
+            }
+        }
+        run();
+        return join();
+    }
+
+    /**
+     * Forks {@code second}, computes {@code first} on the current thread and joins {@code second}.
+     */
+    public static void invokeAll(RecursiveTask<?> first, RecursiveTask<?> second) {
+        second.fork();
+        first.invoke();
+        second.join();
+    }
+
+    void bind(FixedExecutorService executorService) {
+        pool = executorService;
+        asyncExecutor = executorService;
+    }
+
+    /**
+     * Blocks without reacting to interrupts until the task is done, then restores the interrupt.
+     */
+    static void awaitUninterruptibly(TaskFuture<?> task) {
+        boolean interrupted = false;
+        while (!task.isDone()) {
+            try {
+                task.awaitDone(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private T result() {
+        try {
+            return get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new CompletionException(cause);
+        } catch (InterruptedException e) {
+            // Not reached, the task is done.
+            Thread.currentThread().interrupt();
+            throw new CancellationException();
+        }
+    }
+
+    private static final class Compute<T> implements Callable<T> {
+        RecursiveTask<T> task;
+
+        @Override
+        public T call() {
+            RecursiveTask<T> current = task;
+            FixedExecutorService executorService = current.pool;
+            if (executorService == null || Worker.current(executorService) != null) {
+                return current.compute();
+            }
+            // A task thread in thread-per-task mode or the caller of invoke(), forks go to the pool of this task.
+            FixedExecutorService outer = CURRENT_POOL.get();
+            CURRENT_POOL.set(executorService);
+            try {
+                return current.compute();
+            } finally {
+                if (outer == null) {
+                    CURRENT_POOL.remove();
+                } else {
+                    CURRENT_POOL.set(outer);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.ushakov;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides what happens to a task that does not fit into the bounded queue of a {@link FixedExecutorService}.
+ */
+public interface RejectionPolicy {
+    /**
+     * Throws {@link RejectedExecutionException} to the submitter.
+     */
+    RejectionPolicy ABORT = (task, executorService) -> {
+        throw new RejectedExecutionException("Task queue is full, capacity " + executorService.getQueueCapacity());
+    };
+
+    /**
+     * Runs the task on the submitting thread, which naturally slows the producer down.
+     */
+    RejectionPolicy CALLER_RUNS = (task, executorService) -> {
+        if (executorService.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        task.run();
+    };
+
+    /**
+     * Drops the incoming task. A dropped future is cancelled so that nobody waits on it forever.
+     */
+    RejectionPolicy DISCARD_NEWEST = (task, executorService) -> FixedExecutorService.discard(task);
+
+    /**
+     * Drops the oldest queued task, of the same tenant with tenants, again cancelling it if it is a future, and retries
+     * the incoming one. Serial lanes are passed over, and the incoming task is dropped if nothing else is queued.
+     */
+    RejectionPolicy DISCARD_OLDEST = (task, executorService) -> {
+        while (!executorService.isShutdown()) {
+            Runnable oldest = executorService.pollTask(task);
+            if (oldest == task) {
+                break;
+            }
+            if (oldest != null) {
+                FixedExecutorService.discard(oldest);
+            }
+            if (executorService.offerTask(task)) {
+                return;
+            }
+        }
+        FixedExecutorService.discard(task);
+    };
+
+    /**
+     * Blocks the submitter until a slot frees up, backing off from one microsecond up to one millisecond between
+     * attempts.
+     */
+    RejectionPolicy BLOCK = (task, executorService) -> {
+        long backoff = TimeUnit.MICROSECONDS.toNanos(1);
+        while (!executorService.offerTask(task)) {
+            if (executorService.isShutdown()) {
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+            if (Thread.interrupted()) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for a free slot");
+            }
+            LockSupport.parkNanos(executorService, backoff);
+            backoff = Math.min(backoff << 1, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    };
+
+    void rejected(Runnable task, FixedExecutorService executorService);
+}
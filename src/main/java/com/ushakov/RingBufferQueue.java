@@ -0,0 +1,242 @@
+package com.ushakov;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded multi-producer multi-consumer queue on a preallocated array (D. Vyukov's bounded MPMC queue).
+ *
+ * Every slot carries a sequence number that tells producers and consumers whether it is free for the current lap,
+ * so both sides claim a slot with a single CAS on their own counter and never allocate. The capacity is rounded up to
+ * the next power of two. {@link #offer} returns false when the queue is full.
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> {
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    public RingBufferQueue(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("capacity must be in [1, 2^30]: " + capacity);
+        }
+        int size = 1;
+        while (size < capacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        // With a single slot "published" and "free for the next lap" would carry the same sequence number, so a queue
+        // of capacity 1 gets two slots and checks the limit itself.
+        size = Math.max(size, 2);
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private boolean isFull(long position) {
+        return capacity <= mask && position - head.get() >= capacity;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long position = tail.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (isFull(position)) {
+                    return false;
+                }
+                if (tail.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(index, e);
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Publishes as many elements of {@code elements}, starting at {@code from}, as fit into one run of free slots,
+     * claiming the whole run with a single CAS.
+     *
+     * @return number of elements published, 0 if the queue is full
+     */
+    public int offerBatch(List<? extends E> elements, int from) {
+        int wanted = elements.size() - from;
+        if (wanted <= 0) {
+            return 0;
+        }
+        for (int i = from; i < elements.size(); i++) {
+            if (elements.get(i) == null) {
+                throw new NullPointerException();
+            }
+        }
+        long position = tail.get();
+        while (true) {
+            int count = 0;
+            int limit = isFull(position) ? 0 : wanted;
+            while (count < limit && count < capacity && sequences.get((int) (position + count) & mask) == position + count) {
+                count++;
+            }
+            if (count == 0) {
+                if (limit == 0 || sequences.get((int) position & mask) - position < 0) {
+                    return 0;
+                }
+            } else if (tail.compareAndSet(position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    int index = (int) (position + i) & mask;
+                    buffer.lazySet(index, elements.get(from + i));
+                    sequences.set(index, position + i + 1);
+                }
+                return count;
+            }
+            position = tail.get();
+        }
+    }
+
+    @Override
+    public E poll() {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E e = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + mask + 1);
+                    return e;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+
+    /**
+     * Takes up to {@code into.length} elements that were published in a row, claiming the whole run with a single CAS.
+     *
+     * @return number of elements stored at the start of {@code into}, 0 if the queue is empty
+     */
+    public int pollBatch(E[] into) {
+        long position = head.get();
+        while (true) {
+            int count = 0;
+            while (count < into.length && count <= mask
+                    && sequences.get((int) (position + count) & mask) == position + count + 1) {
+                count++;
+            }
+            if (count == 0) {
+                if (sequences.get((int) position & mask) - (position + 1) < 0) {
+                    return 0;
+                }
+            } else if (head.compareAndSet(position, position + count)) {
+                for (int i = 0; i < count; i++) {
+                    int index = (int) (position + i) & mask;
+                    into[i] = buffer.get(index);
+                    buffer.lazySet(index, null);
+                    sequences.set(index, position + i + mask + 1);
+                }
+                return count;
+            }
+            position = head.get();
+        }
+    }
+
+    @Override
+    public E peek() {
+        while (true) {
+            long position = head.get();
+            int index = (int) position & mask;
+            if (sequences.get(index) - (position + 1) < 0) {
+                return null;
+            }
+            E e = buffer.get(index);
+            if (e != null && head.get() == position) {
+                return e;
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        while (true) {
+            long before = head.get();
+            long currentTail = tail.get();
+            if (head.get() == before) {
+                long size = currentTail - before;
+                return (int) Math.max(0, Math.min(size, capacity()));
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+
+    /**
+     * Weakly consistent iterator over the elements present between the current head and tail. Removal through the
+     * iterator is not supported.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final long start = head.get();
+        final long end = tail.get();
+        return new Iterator<E>() {
+            private long position = start;
+            private E next = advance();
+
+            private E advance() {
+                while (position < end) {
+                    E e = buffer.get((int) position++ & mask);
+                    if (e != null) {
+                        return e;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                E e = next;
+                next = advance();
+                return e;
+            }
+        };
+    }
+}
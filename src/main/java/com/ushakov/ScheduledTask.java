@@ -0,0 +1,108 @@
+package com.ushakov;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delayed or periodic task kept on a {@link HashedTimingWheel} until it is due and then run by the executor like any
+ * other task.
+ */
+final class ScheduledTask<V> extends TaskFuture<V> implements RunnableScheduledFuture<V> {
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final HashedTimingWheel wheel;
+    // Breaks ties between tasks due at the same time, in scheduling order.
+    private final long sequence = SEQUENCE.getAndIncrement();
+    // 0 for a one-shot task, positive for a fixed rate, negative for a fixed delay.
+    private final long period;
+    // System.nanoTime() when the task is due.
+    private volatile long time;
+    // Housekeeping of the executor itself, run by the timer thread instead of a worker.
+    boolean runsOnTimer;
+
+    // Wheel bookkeeping, only touched by the timer thread.
+    long remainingRounds;
+    HashedTimingWheel.Bucket bucket;
+    ScheduledTask<?> previous;
+    ScheduledTask<?> next;
+    // Links of the lock-free stacks of the wheel, written before the task is pushed.
+    ScheduledTask<?> nextPending;
+    ScheduledTask<?> nextCancelled;
+
+    ScheduledTask(Callable<V> callable, long time, HashedTimingWheel wheel) {
+        super(callable);
+        this.time = time;
+        this.period = 0L;
+        this.wheel = wheel;
+    }
+
+    ScheduledTask(Runnable runnable, long time, long period, HashedTimingWheel wheel) {
+        super(Executors.callable(runnable, (V) null));
+        this.time = time;
+        this.period = period;
+        this.wheel = wheel;
+    }
+
+    /**
+     * One-shot task that the timer thread runs itself when it is due, so it must be short and must not block.
+     */
+    static ScheduledTask<Void> onTimer(Runnable action, long time, HashedTimingWheel wheel) {
+        ScheduledTask<Void> task = new ScheduledTask<>(action, time, 0L, wheel);
+        task.runsOnTimer = true;
+        return task;
+    }
+
+    long getTime() {
+        return time;
+    }
+
+    @Override
+    public boolean isPeriodic() {
+        return period != 0L;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other == this) {
+            return 0;
+        }
+        if (other instanceof ScheduledTask) {
+            ScheduledTask<?> task = (ScheduledTask<?>) other;
+            long difference = time - task.time;
+            if (difference != 0L) {
+                return difference < 0L ? -1 : 1;
+            }
+            return sequence < task.sequence ? -1 : 1;
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void run() {
+        if (!isPeriodic()) {
+            super.run();
+        } else if (runAndReset()) {
+            time = period > 0L ? time + period : System.nanoTime() - period;
+            if (!wheel.schedule(this)) {
+                // The executor was shut down in the meantime.
+                cancel(false);
+            }
+        }
+    }
+
+    @Override
+    protected void done() {
+        if (isCancelled()) {
+            wheel.cancelled(this);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ushakov;
+
+/**
+ * How a {@link FixedExecutorService} distributes tasks between its workers.
+ */
+public enum SchedulingMode {
+    /**
+     * Every task goes through the one shared queue.
+     */
+    SHARED_QUEUE,
+    /**
+     * Tasks submitted from a worker thread go to that worker's own deque, everything else goes to the shared inbound
+     * queue. A worker runs its own tasks newest first and, once both its deque and the inbound queue are empty, steals
+     * the oldest task of a peer.
+     */
+    WORK_STEALING
+}
@@ -0,0 +1,87 @@
+package com.ushakov;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs the tasks of the keys hashed onto it one at a time in submission order.
+ *
+ * The lane sits in the pool queue as a single task while it has work: the submitter that finds it idle schedules it
+ * with one CAS, everybody else only appends to its queue. A worker drains up to {@link #BATCH_SIZE} tasks and then puts
+ * the lane back at the end of the pool queue, so a busy key cannot hold a worker forever. In work-stealing mode the lane
+ * goes back to the deque of the worker that ran it and tends to stay on that worker with its data.
+ */
+final class SerialLane implements Runnable {
+    static final int BATCH_SIZE = 64;
+
+    private final FixedExecutorService executorService;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    // Set while the lane is queued or running, only its holder may run the tasks.
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    SerialLane(FixedExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Appends a task and schedules the lane if it is idle.
+     *
+     * @return true if the bounded pool queue is full, the caller then has to run the lane itself
+     */
+    boolean offer(Runnable task) {
+        tasks.offer(task);
+        return !scheduled.get() && scheduled.compareAndSet(false, true) && !executorService.offerLane(this);
+    }
+
+    @Override
+    public void run() {
+        Throwable failure = null;
+        do {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    break;
+                }
+                try {
+                    task.run();
+                } catch (Throwable e) {
+                    try {
+                        executorService.handleTaskFailure(e);
+                    } catch (Throwable handlerFailure) {
+                        // Rethrown once the lane is handed on, so that its remaining tasks are not stranded.
+                        if (failure == null) {
+                            failure = handlerFailure;
+                        }
+                    }
+                }
+            }
+            scheduled.set(false);
+        } while (!tasks.isEmpty() && scheduled.compareAndSet(false, true) && !executorService.offerLane(this));
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        if (failure != null) {
+            throw new UndeclaredThrowableException(failure);
+        }
+    }
+
+    /**
+     * Takes back a task that is still waiting in the lane.
+     */
+    boolean withdraw(Runnable task) {
+        return tasks.remove(task);
+    }
+
+    void drainTo(Collection<Runnable> result) {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            result.add(task);
+        }
+    }
+}
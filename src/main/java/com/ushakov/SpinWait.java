@@ -0,0 +1,34 @@
+package com.ushakov;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Calls {@code Thread.onSpinWait()} where the runtime has it (Java 9+) and does nothing on Java 8, which the project
+ * still targets.
+ */
+final class SpinWait {
+    private static final MethodHandle ON_SPIN_WAIT = lookup();
+
+    private SpinWait() {
+    }
+
+    private static MethodHandle lookup() {
+        try {
+            return MethodHandles.lookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static void onSpinWait() {
+        if (ON_SPIN_WAIT != null) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            } catch (Throwable e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
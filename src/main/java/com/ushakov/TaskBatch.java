@@ -0,0 +1,117 @@
+package com.ushakov;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle for a group of tasks submitted together through {@link FixedExecutorService#submitBatch(Collection)}.
+ *
+ * The tasks share one completion counter: each of them counts it down when it completes, fails or is cancelled and
+ * only the threads waiting on the batch as a whole are ever woken up.
+ */
+public class TaskBatch<T> {
+    private final List<BatchTask<T>> tasks;
+    private final CountDownLatch remaining;
+
+    /**
+     * @param asyncExecutor runs the *Async continuations of the tasks, the executor the batch is submitted to
+     */
+    TaskBatch(Collection<? extends Callable<T>> callables, Executor asyncExecutor) {
+        this.remaining = new CountDownLatch(callables.size());
+        this.tasks = new ArrayList<>(callables.size());
+        for (Callable<T> callable : callables) {
+            BatchTask<T> task = new BatchTask<>(callable, this);
+            task.asyncExecutor = asyncExecutor;
+            tasks.add(task);
+        }
+    }
+
+    List<? extends Runnable> tasks() {
+        return tasks;
+    }
+
+    /**
+     * Called by each task on the thread that completes, fails or cancels it.
+     */
+    void completed(TaskFuture<T> task) {
+        remaining.countDown();
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    /**
+     * Number of tasks that have not completed yet.
+     */
+    public int getRemaining() {
+        return (int) remaining.getCount();
+    }
+
+    public boolean isDone() {
+        return remaining.getCount() == 0;
+    }
+
+    /**
+     * Futures of the individual tasks, in submission order.
+     */
+    public List<Future<T>> getFutures() {
+        return Collections.unmodifiableList(tasks);
+    }
+
+    public void await() throws InterruptedException {
+        remaining.await();
+    }
+
+    /**
+     * @return true if every task completed within the timeout
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return remaining.await(timeout, unit);
+    }
+
+    /**
+     * Waits for the whole batch and returns the results in submission order.
+     *
+     * @throws ExecutionException for the first task, in submission order, that failed
+     */
+    public List<T> getResults() throws InterruptedException, ExecutionException {
+        await();
+        List<T> results = new ArrayList<>(tasks.size());
+        for (BatchTask<T> task : tasks) {
+            results.add(task.get());
+        }
+        return results;
+    }
+
+    /**
+     * Cancels every task of the batch that has not completed yet.
+     */
+    public void cancel(boolean mayInterruptIfRunning) {
+        for (BatchTask<T> task : tasks) {
+            task.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private static final class BatchTask<T> extends TaskFuture<T> {
+        private final TaskBatch<T> batch;
+
+        BatchTask(Callable<T> callable, TaskBatch<T> batch) {
+            super(callable);
+            this.batch = batch;
+        }
+
+        @Override
+        protected void done() {
+            batch.completed(this);
+        }
+    }
+}
@@ -0,0 +1,599 @@
+package com.ushakov;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Lock-free future that is also the unit of work put on the executor queue.
+ *
+ * The lifecycle is NEW -> RUNNING -> COMPLETED / FAILED / CANCELLED, every transition is a single CAS on
+ * {@code state}. Threads blocked in {@code get} are kept on a Treiber stack of wait nodes and parked with
+ * {@link LockSupport}, so neither the submitter nor the worker ever takes a monitor.
+ *
+ * The future is also a {@link CompletionStage}, so results can be composed without blocking a thread in {@code get}.
+ * The stage is created on first use and completed right after the waiters are released. Continuations attached with
+ * the plain methods ({@code thenApply}, {@code thenAccept}, ...) are cheap and run inline on the thread that completes
+ * the task, normally the worker, before it takes its next task. The {@code *Async} variants without an executor go
+ * back onto the pool that ran the task, so slow continuations do not hold up the worker and do not end up on the
+ * common pool. Cancelling the stage returned by {@link #toCompletableFuture()} cancels the task.
+ */
+public class TaskFuture<T> implements RunnableFuture<T>, CompletionStage<T> {
+    static final int NEW = 0;
+    static final int RUNNING = 1;
+    static final int COMPLETED = 2;
+    static final int FAILED = 3;
+    static final int INTERRUPTING = 4;
+    static final int CANCELLED = 5;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<TaskFuture> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(TaskFuture.class, "state");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TaskFuture, WaitNode> WAITERS =
+            AtomicReferenceFieldUpdater.newUpdater(TaskFuture.class, WaitNode.class, "waiters");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TaskFuture, Stage> STAGE =
+            AtomicReferenceFieldUpdater.newUpdater(TaskFuture.class, Stage.class, "stage");
+
+    private volatile int state;
+    private volatile WaitNode waiters;
+    private volatile Stage<T> stage;
+    private volatile Thread runner;
+    private Callable<T> callable;
+    private boolean runnerInterrupted;
+    // System.nanoTime() when the executor enqueued the task, 0 unless metrics are enabled.
+    long enqueuedAt;
+    // Runs the *Async continuations, set by the executor that the task is submitted to, the common pool otherwise.
+    Executor asyncExecutor;
+    // Written before the state CAS that publishes it, read only after observing a terminal state.
+    private Object outcome;
+
+    public TaskFuture(Callable<T> callable) {
+        if (callable == null) {
+            throw new NullPointerException();
+        }
+        this.callable = callable;
+    }
+
+    public TaskFuture(Runnable runnable, T result) {
+        this(Executors.callable(runnable, result));
+    }
+
+    @Override
+    public void run() {
+        Callable<T> task = callable;
+        if (task == null || !STATE.compareAndSet(this, NEW, RUNNING)) {
+            return;
+        }
+        runner = Thread.currentThread();
+        try {
+            T value;
+            try {
+                value = task.call();
+            } catch (Throwable e) {
+                complete(FAILED, e);
+                return;
+            }
+            complete(COMPLETED, value);
+        } finally {
+            afterRun();
+        }
+    }
+
+    /**
+     * Runs the task without setting a result and makes it runnable again, for tasks that are run repeatedly.
+     *
+     * @return true if the task ran and may run again, false if it failed, was cancelled or is already done
+     */
+    protected boolean runAndReset() {
+        Callable<T> task = callable;
+        if (task == null || !STATE.compareAndSet(this, NEW, RUNNING)) {
+            return false;
+        }
+        runner = Thread.currentThread();
+        try {
+            try {
+                task.call();
+            } catch (Throwable e) {
+                complete(FAILED, e);
+                return false;
+            }
+            return STATE.compareAndSet(this, RUNNING, NEW);
+        } finally {
+            afterRun();
+        }
+    }
+
+    private void afterRun() {
+        runner = null;
+        int s = state;
+        if (s >= INTERRUPTING) {
+            // Make sure the cancelling thread has delivered its interrupt while we are still inside this task,
+            // then swallow it so that it does not leak into the next task taken by the worker.
+            while (state == INTERRUPTING) {
+                Thread.yield();
+            }
+            if (runnerInterrupted) {
+                Thread.interrupted();
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        while (true) {
+            int s = state;
+            if (s == NEW) {
+                if (STATE.compareAndSet(this, NEW, CANCELLED)) {
+                    finish();
+                    return true;
+                }
+            } else if (s == RUNNING) {
+                if (!mayInterruptIfRunning) {
+                    if (STATE.compareAndSet(this, RUNNING, CANCELLED)) {
+                        finish();
+                        return true;
+                    }
+                } else if (STATE.compareAndSet(this, RUNNING, INTERRUPTING)) {
+                    try {
+                        Thread thread = runner;
+                        if (thread != null) {
+                            runnerInterrupted = true;
+                            thread.interrupt();
+                        }
+                    } finally {
+                        state = CANCELLED;
+                        finish();
+                    }
+                    return true;
+                }
+            } else {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state >= INTERRUPTING;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state >= COMPLETED;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        int s = state;
+        if (s < COMPLETED) {
+            s = awaitDone(false, 0L);
+        }
+        return report(s);
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (unit == null) {
+            throw new NullPointerException();
+        }
+        int s = state;
+        if (s < COMPLETED && (s = awaitDone(true, unit.toNanos(timeout))) < COMPLETED) {
+            throw new TimeoutException();
+        }
+        return report(s);
+    }
+
+    /**
+     * Waits at most {@code nanos} for the task to finish, for a thread that has other work to look for in between.
+     *
+     * @return true if the task is done
+     */
+    boolean awaitDone(long nanos) throws InterruptedException {
+        return state >= COMPLETED || awaitDone(true, nanos) >= COMPLETED;
+    }
+
+    /**
+     * Fails the task with {@code cause} without running it.
+     *
+     * @return false if the task has already started or is done
+     */
+    boolean fail(Throwable cause) {
+        if (callable == null || !STATE.compareAndSet(this, NEW, RUNNING)) {
+            return false;
+        }
+        complete(FAILED, cause);
+        return true;
+    }
+
+    /**
+     * Invoked once the future reaches a terminal state, after all waiters were released.
+     */
+    protected void done() {
+    }
+
+    private void complete(int terminalState, Object value) {
+        outcome = value;
+        if (STATE.compareAndSet(this, RUNNING, terminalState)) {
+            finish();
+        } else {
+            // Lost the race against cancel(), the outcome is discarded.
+            outcome = null;
+        }
+    }
+
+    private void finish() {
+        WaitNode node = WAITERS.getAndSet(this, null);
+        while (node != null) {
+            Thread thread = node.thread;
+            if (thread != null) {
+                node.thread = null;
+                LockSupport.unpark(thread);
+            }
+            node = node.next;
+        }
+        done();
+        callable = null;
+        Stage<T> dependents = stage;
+        if (dependents != null) {
+            completeStage(dependents);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void completeStage(Stage<T> dependents) {
+        int s = state;
+        if (s == COMPLETED) {
+            dependents.complete((T) outcome);
+        } else if (s == FAILED) {
+            dependents.completeExceptionally((Throwable) outcome);
+        } else if (s >= INTERRUPTING) {
+            dependents.completeExceptionally(new CancellationException());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T report(int s) throws ExecutionException {
+        if (s == COMPLETED) {
+            return (T) outcome;
+        }
+        if (s >= INTERRUPTING) {
+            throw new CancellationException();
+        }
+        throw new ExecutionException((Throwable) outcome);
+    }
+
+    private int awaitDone(boolean timed, long nanos) throws InterruptedException {
+        Deadline deadline = timed ? Deadline.afterNanos(nanos) : null;
+        WaitNode node = null;
+        boolean queued = false;
+        while (true) {
+            int s = state;
+            if (s >= COMPLETED) {
+                if (node != null) {
+                    node.thread = null;
+                }
+                return s;
+            }
+            if (Thread.interrupted()) {
+                removeWaiter(node);
+                throw new InterruptedException();
+            }
+            if (node == null) {
+                if (timed && nanos <= 0L) {
+                    return s;
+                }
+                node = new WaitNode();
+            } else if (!queued) {
+                node.next = waiters;
+                queued = WAITERS.compareAndSet(this, node.next, node);
+            } else if (timed) {
+                if (!deadline.park(this)) {
+                    removeWaiter(node);
+                    return state;
+                }
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    /**
+     * Unlinks a timed out or interrupted waiter. Nodes are marked by clearing their thread and the stack is swept
+     * from the top, restarting whenever a concurrent push or removal is detected.
+     */
+    private void removeWaiter(WaitNode node) {
+        if (node == null) {
+            return;
+        }
+        node.thread = null;
+        retry:
+        while (true) {
+            WaitNode previous = null;
+            WaitNode current = waiters;
+            while (current != null) {
+                WaitNode next = current.next;
+                if (current.thread != null) {
+                    previous = current;
+                } else if (previous != null) {
+                    previous.next = next;
+                    if (previous.thread == null) {
+                        continue retry;
+                    }
+                } else if (!WAITERS.compareAndSet(this, current, next)) {
+                    continue retry;
+                }
+                current = next;
+            }
+            return;
+        }
+    }
+
+    /**
+     * Returns the stage that mirrors this future. Non-async continuations attached to it run on the completing worker
+     * as well, cancelling it cancels the task without interrupting it.
+     */
+    @Override
+    public CompletableFuture<T> toCompletableFuture() {
+        Stage<T> current = stage;
+        if (current == null) {
+            current = new Stage<>(this);
+            if (!STAGE.compareAndSet(this, null, current)) {
+                return stage;
+            }
+            // finish() may have run before the stage was published, complete it here in that case.
+            if (state >= COMPLETED) {
+                completeStage(current);
+            }
+        }
+        return current;
+    }
+
+    private Executor asyncExecutor() {
+        Executor executor = asyncExecutor;
+        return executor != null ? executor : ForkJoinPool.commonPool();
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApply(Function<? super T, ? extends U> fn) {
+        return toCompletableFuture().thenApply(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApplyAsync(Function<? super T, ? extends U> fn) {
+        return toCompletableFuture().thenApplyAsync(fn, asyncExecutor());
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor) {
+        return toCompletableFuture().thenApplyAsync(fn, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAccept(Consumer<? super T> action) {
+        return toCompletableFuture().thenAccept(action);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAcceptAsync(Consumer<? super T> action) {
+        return toCompletableFuture().thenAcceptAsync(action, asyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor) {
+        return toCompletableFuture().thenAcceptAsync(action, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRun(Runnable action) {
+        return toCompletableFuture().thenRun(action);
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRunAsync(Runnable action) {
+        return toCompletableFuture().thenRunAsync(action, asyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> thenRunAsync(Runnable action, Executor executor) {
+        return toCompletableFuture().thenRunAsync(action, executor);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombine(CompletionStage<? extends U> other,
+                                                   BiFunction<? super T, ? super U, ? extends V> fn) {
+        return toCompletableFuture().thenCombine(other, fn);
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(CompletionStage<? extends U> other,
+                                                        BiFunction<? super T, ? super U, ? extends V> fn) {
+        return toCompletableFuture().thenCombineAsync(other, fn, asyncExecutor());
+    }
+
+    @Override
+    public <U, V> CompletableFuture<V> thenCombineAsync(CompletionStage<? extends U> other,
+                                                        BiFunction<? super T, ? super U, ? extends V> fn,
+                                                        Executor executor) {
+        return toCompletableFuture().thenCombineAsync(other, fn, executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBoth(CompletionStage<? extends U> other,
+                                                      BiConsumer<? super T, ? super U> action) {
+        return toCompletableFuture().thenAcceptBoth(other, action);
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(CompletionStage<? extends U> other,
+                                                           BiConsumer<? super T, ? super U> action) {
+        return toCompletableFuture().thenAcceptBothAsync(other, action, asyncExecutor());
+    }
+
+    @Override
+    public <U> CompletableFuture<Void> thenAcceptBothAsync(CompletionStage<? extends U> other,
+                                                           BiConsumer<? super T, ? super U> action,
+                                                           Executor executor) {
+        return toCompletableFuture().thenAcceptBothAsync(other, action, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
+        return toCompletableFuture().runAfterBoth(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+        return toCompletableFuture().runAfterBothAsync(other, action, asyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return toCompletableFuture().runAfterBothAsync(other, action, executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEither(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return toCompletableFuture().applyToEither(other, fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return toCompletableFuture().applyToEitherAsync(other, fn, asyncExecutor());
+    }
+
+    @Override
+    public <U> CompletableFuture<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn,
+                                                       Executor executor) {
+        return toCompletableFuture().applyToEitherAsync(other, fn, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEither(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return toCompletableFuture().acceptEither(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return toCompletableFuture().acceptEitherAsync(other, action, asyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action,
+                                                     Executor executor) {
+        return toCompletableFuture().acceptEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
+        return toCompletableFuture().runAfterEither(other, action);
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+        return toCompletableFuture().runAfterEitherAsync(other, action, asyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return toCompletableFuture().runAfterEitherAsync(other, action, executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return toCompletableFuture().thenCompose(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return toCompletableFuture().thenComposeAsync(fn, asyncExecutor());
+    }
+
+    @Override
+    public <U> CompletableFuture<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn,
+                                                     Executor executor) {
+        return toCompletableFuture().thenComposeAsync(fn, executor);
+    }
+
+    @Override
+    public CompletableFuture<T> exceptionally(Function<Throwable, ? extends T> fn) {
+        return toCompletableFuture().exceptionally(fn);
+    }
+
+    @Override
+    public CompletableFuture<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
+        return toCompletableFuture().whenComplete(action);
+    }
+
+    @Override
+    public CompletableFuture<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action) {
+        return toCompletableFuture().whenCompleteAsync(action, asyncExecutor());
+    }
+
+    @Override
+    public CompletableFuture<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+        return toCompletableFuture().whenCompleteAsync(action, executor);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handle(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return toCompletableFuture().handle(fn);
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return toCompletableFuture().handleAsync(fn, asyncExecutor());
+    }
+
+    @Override
+    public <U> CompletableFuture<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn, Executor executor) {
+        return toCompletableFuture().handleAsync(fn, executor);
+    }
+
+    /**
+     * Dependent stage of a task. Cancelling it cancels the task, and on Java 9 and later the stages derived from it
+     * run their {@code *Async} continuations on the executor of the task as well.
+     */
+    static final class Stage<T> extends CompletableFuture<T> {
+        private final TaskFuture<?> task;
+        private final Executor executor;
+
+        Stage(TaskFuture<?> task) {
+            this.task = task;
+            this.executor = task.asyncExecutor();
+        }
+
+        private Stage(Executor executor) {
+            this.task = null;
+            this.executor = executor;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (task != null) {
+                task.cancel(false);
+            }
+            return super.cancel(mayInterruptIfRunning);
+        }
+
+        // CompletableFuture.defaultExecutor() and newIncompleteFuture() exist since Java 9, these are no-ops on 8.
+        public Executor defaultExecutor() {
+            return executor;
+        }
+
+        public <U> CompletableFuture<U> newIncompleteFuture() {
+            return new Stage<>(executor);
+        }
+    }
+
+    static final class WaitNode {
+        volatile Thread thread = Thread.currentThread();
+        volatile WaitNode next;
+    }
+}
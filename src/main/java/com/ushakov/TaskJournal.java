@@ -0,0 +1,432 @@
+package com.ushakov;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead log of the tasks submitted through {@link FixedExecutorService#executeDurable(Runnable)}, so that the
+ * tasks that had not run when the process crashed or the pool was stopped run again when a pool is built on the same
+ * directory.
+ *
+ * The log is a sequence of memory-mapped segment files of a fixed size. A task is appended as its serialized form
+ * and, once it has run or was discarded, acknowledged with a completion marker that names it. Every record carries a
+ * CRC of its payload and recovery stops reading a segment at the first record that is zero, cut short or damaged. A
+ * segment is deleted as soon as every task in it and in all older segments is acknowledged; the markers of its tasks
+ * may sit in newer segments, so segments are only ever deleted oldest first. A task that never completes holds back
+ * the deletion of all newer segments.
+ *
+ * Delivery is at least once: a task that ran but whose marker was lost with the machine runs again. Appends and
+ * markers are serialized on the journal; with {@link JournalSync#ALWAYS} the sync itself happens outside of that lock
+ * and covers every record appended up to then, which is what groups the commits of concurrent submitters.
+ */
+final class TaskJournal {
+    static final byte TASK = 1;
+    static final byte DONE = 2;
+    // Record layout: int length including the header, byte type, long task id, int CRC32 of the payload, payload.
+    static final int HEADER = 17;
+    static final String LOCK_FILE = "journal.lock";
+    private static final String PREFIX = "segment-";
+    private static final String SUFFIX = ".log";
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Path directory;
+    private final int segmentSize;
+    private final JournalSync sync;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private final Object syncLock = new Object();
+    private final Thread syncThread;
+    // Oldest first, the last one is appended to. This and the fields below are guarded by the journal.
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private List<JournaledTask> recovered = new ArrayList<>();
+    private Segment current;
+    private long nextId = 1L;
+    private long nextSequence;
+    // Bytes appended over the lifetime of the journal.
+    private long appended;
+    // How many of the appended bytes are known to be on disk.
+    private volatile long synced;
+    private volatile boolean closed;
+
+    /**
+     * Opens the journal in {@code directory}, creating it if needed, and reads back the tasks that were not
+     * acknowledged, see {@link #recovered()}.
+     *
+     * @throws IllegalStateException if another executor has the journal open, or a task cannot be deserialized
+     */
+    TaskJournal(Path directory, int segmentSize, JournalSync sync, long syncIntervalNanos) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Journal " + directory + " is in use by another executor");
+        }
+        this.lock = acquired;
+        try {
+            recover();
+            current = newSegment();
+            segments.addLast(current);
+            compact();
+        } catch (IOException | RuntimeException e) {
+            closeFiles();
+            throw e;
+        }
+        if (sync == JournalSync.INTERVAL) {
+            syncThread = new Thread(() -> syncPeriodically(syncIntervalNanos), "fixed-executor-journal-sync");
+            syncThread.setDaemon(true);
+            syncThread.start();
+        } else {
+            syncThread = null;
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        // The sequence number is zero-padded, names sort in log order.
+        Collections.sort(files);
+        Map<Long, Unfinished> unfinished = new LinkedHashMap<>();
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long sequence = Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+            Segment segment = Segment.open(file);
+            segments.addLast(segment);
+            scan(segment, unfinished);
+            nextSequence = sequence + 1;
+        }
+        for (Map.Entry<Long, Unfinished> entry : unfinished.entrySet()) {
+            Unfinished task = entry.getValue();
+            recovered.add(new JournaledTask(deserialize(task.payload, entry.getKey(), task.segment), entry.getKey(),
+                    task.segment, this));
+        }
+    }
+
+    private void scan(Segment segment, Map<Long, Unfinished> unfinished) {
+        ByteBuffer buffer = segment.buffer;
+        int capacity = buffer.capacity();
+        int position = 0;
+        CRC32 crc = new CRC32();
+        while (position + HEADER <= capacity) {
+            int length = buffer.getInt(position);
+            if (length < HEADER || length > capacity - position) {
+                break;
+            }
+            byte type = buffer.get(position + 4);
+            long id = buffer.getLong(position + 5);
+            byte[] payload = new byte[length - HEADER];
+            ByteBuffer view = buffer.duplicate();
+            ((Buffer) view).position(position + HEADER);
+            view.get(payload);
+            crc.reset();
+            crc.update(payload, 0, payload.length);
+            if ((int) crc.getValue() != buffer.getInt(position + 13)) {
+                // Torn by a crash of the machine, nothing after it is trusted either.
+                break;
+            }
+            if (type == TASK) {
+                unfinished.put(id, new Unfinished(segment, payload));
+                segment.pending++;
+            } else if (type == DONE) {
+                Unfinished task = unfinished.remove(id);
+                if (task != null) {
+                    task.segment.pending--;
+                }
+            }
+            nextId = Math.max(nextId, id + 1);
+            position += length;
+        }
+        segment.position = position;
+    }
+
+    /**
+     * Tasks read back when the journal was opened, to be run again. Hands them out once.
+     */
+    synchronized List<JournaledTask> recovered() {
+        List<JournaledTask> tasks = recovered;
+        recovered = Collections.emptyList();
+        return tasks;
+    }
+
+    /**
+     * Appends a task and, with {@link JournalSync#ALWAYS}, waits until it is on disk.
+     *
+     * @throws IllegalArgumentException if the task cannot be serialized or does not fit into a segment
+     */
+    JournaledTask append(Runnable task) {
+        byte[] payload = serialize(task);
+        JournaledTask entry;
+        long end;
+        synchronized (this) {
+            if (closed) {
+                throw new RejectedExecutionException("Executor is shut down");
+            }
+            Segment segment = reserve(HEADER + payload.length);
+            long id = nextId++;
+            write(segment, TASK, id, payload);
+            segment.pending++;
+            entry = new JournaledTask(task, id, segment, this);
+            end = appended;
+        }
+        if (sync == JournalSync.ALWAYS) {
+            sync(end);
+        }
+        return entry;
+    }
+
+    /**
+     * Appends the completion marker of a task, which is not synced on its own: losing it runs the task once more.
+     */
+    synchronized void acknowledge(JournaledTask entry) {
+        if (closed) {
+            return;
+        }
+        write(reserve(HEADER), DONE, entry.id, EMPTY);
+        if (--entry.segment.pending == 0) {
+            compact();
+        }
+    }
+
+    private Segment reserve(int length) {
+        if (length > segmentSize) {
+            throw new IllegalArgumentException(
+                    "Record of " + length + " bytes does not fit into a journal segment of " + segmentSize);
+        }
+        Segment segment = current;
+        if (segment.position + length <= segment.buffer.capacity()) {
+            return segment;
+        }
+        // The rest of the full segment stays zero, which is where recovery stops reading it.
+        if (sync != JournalSync.NEVER) {
+            segment.mapped.force();
+        }
+        try {
+            current = newSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.addLast(current);
+        compact();
+        return current;
+    }
+
+    private Segment newSegment() throws IOException {
+        return Segment.create(directory.resolve(PREFIX + String.format("%019d", nextSequence++) + SUFFIX), segmentSize);
+    }
+
+    private void write(Segment segment, byte type, long id, byte[] payload) {
+        ByteBuffer buffer = segment.buffer;
+        int position = segment.position;
+        int length = HEADER + payload.length;
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        buffer.put(position + 4, type);
+        buffer.putLong(position + 5, id);
+        buffer.putInt(position + 13, (int) crc.getValue());
+        ((Buffer) buffer).position(position + HEADER);
+        buffer.put(payload);
+        // Last, a record is only read back once its length is there.
+        buffer.putInt(position, length);
+        segment.position = position + length;
+        appended += length;
+    }
+
+    /**
+     * Deletes the oldest segments for as long as all their tasks are acknowledged.
+     */
+    private void compact() {
+        Segment oldest;
+        while ((oldest = segments.peekFirst()) != current && oldest.pending == 0) {
+            segments.pollFirst();
+            try {
+                oldest.channel.close();
+                Files.deleteIfExists(oldest.path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * Forces everything appended until now to disk, sharing the sync with the threads that wait for it concurrently.
+     */
+    void sync() {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        sync(target);
+    }
+
+    private void sync(long target) {
+        if (synced >= target) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= target) {
+                return;
+            }
+            MappedByteBuffer mapped;
+            long upTo;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                // Older segments were forced when they filled up.
+                mapped = current.mapped;
+                upTo = appended;
+            }
+            mapped.force();
+            synced = upTo;
+        }
+    }
+
+    private void syncPeriodically(long intervalNanos) {
+        while (!closed) {
+            LockSupport.parkNanos(this, intervalNanos);
+            sync();
+        }
+    }
+
+    /**
+     * Syncs, unless the policy is {@link JournalSync#NEVER}, and releases the files. Tasks still queued stay in the
+     * journal, later acknowledgements are ignored.
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            if (sync != JournalSync.NEVER) {
+                current.mapped.force();
+            }
+            closed = true;
+        }
+        if (syncThread != null) {
+            LockSupport.unpark(syncThread);
+        }
+        try {
+            closeFiles();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void closeFiles() throws IOException {
+        for (Segment segment : segments) {
+            segment.channel.close();
+        }
+        lock.release();
+        lockChannel.close();
+    }
+
+    private static byte[] serialize(Runnable task) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(task);
+        } catch (NotSerializableException e) {
+            throw new IllegalArgumentException("Task is not serializable: " + task, e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Runnable deserialize(byte[] payload, long id, Segment segment) throws IOException {
+        try (ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(payload))) {
+            return (Runnable) input.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IllegalStateException("Cannot replay task " + id + " from " + segment.path, e);
+        }
+    }
+
+    private static final class Unfinished {
+        final Segment segment;
+        final byte[] payload;
+
+        Unfinished(Segment segment, byte[] payload) {
+            this.segment = segment;
+            this.payload = payload;
+        }
+    }
+
+    static final class Segment {
+        final Path path;
+        final FileChannel channel;
+        final MappedByteBuffer mapped;
+        // The same mapping, through the type whose methods exist on Java 8 as well.
+        final ByteBuffer buffer;
+        // Write position and tasks not acknowledged yet, guarded by the journal.
+        int position;
+        int pending;
+
+        private Segment(Path path, FileChannel channel, int size) throws IOException {
+            this.path = path;
+            this.channel = channel;
+            this.mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0L, size);
+            this.buffer = mapped;
+        }
+
+        static Segment create(Path path, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            return map(path, channel, size);
+        }
+
+        static Segment open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return map(path, channel, (int) Math.min(channel.size(), Integer.MAX_VALUE));
+        }
+
+        private static Segment map(Path path, FileChannel channel, int size) throws IOException {
+            try {
+                return new Segment(path, channel, size);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+    }
+}
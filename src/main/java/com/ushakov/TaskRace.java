@@ -0,0 +1,155 @@
+package com.ushakov;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tasks of one {@code invokeAny} call racing for the result.
+ *
+ * The first task that completes normally claims the result with a single CAS, every failure only bumps a counter, so
+ * completing a task is O(1) whatever the number of contenders. The invoking thread is parked until there is a winner
+ * or every task has failed and is the only thread ever woken up.
+ */
+final class TaskRace<T> {
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<TaskRace, Object> RESULT =
+            AtomicReferenceFieldUpdater.newUpdater(TaskRace.class, Object.class, "result");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<TaskRace> FAILURES =
+            AtomicIntegerFieldUpdater.newUpdater(TaskRace.class, "failures");
+    // Marks "no winner yet", a winning task may legitimately return null.
+    private static final Object NONE = new Object();
+
+    private final List<Contender<T>> tasks;
+    private final Thread waiter = Thread.currentThread();
+    private volatile Object result = NONE;
+    private volatile int failures;
+    private volatile ExecutionException lastFailure;
+    private boolean queuedLosers;
+
+    TaskRace(Collection<? extends Callable<T>> callables) {
+        this.tasks = new ArrayList<>(callables.size());
+        for (Callable<T> callable : callables) {
+            if (callable == null) {
+                throw new NullPointerException();
+            }
+            tasks.add(new Contender<>(callable, this));
+        }
+        if (tasks.isEmpty()) {
+            throw new IllegalArgumentException("no tasks to invoke");
+        }
+    }
+
+    List<? extends Runnable> tasks() {
+        return tasks;
+    }
+
+    /**
+     * Waits for the first successful result, cancels the remaining tasks and returns it.
+     *
+     * @param timed whether {@code nanos} applies
+     * @return the result of the winning task
+     * @throws ExecutionException the failure of the last task to fail, if none of them succeeded
+     * @throws TimeoutException if there was no winner before the timeout, the tasks are cancelled
+     */
+    @SuppressWarnings("unchecked")
+    T await(boolean timed, long nanos) throws InterruptedException, ExecutionException, TimeoutException {
+        Deadline deadline = timed ? Deadline.afterNanos(nanos) : null;
+        try {
+            while (!isDecided()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (timed) {
+                    if (!deadline.park(this)) {
+                        throw new TimeoutException();
+                    }
+                } else {
+                    LockSupport.park(this);
+                }
+            }
+        } finally {
+            cancelRemaining();
+        }
+        Object value = result;
+        if (value == NONE) {
+            throw lastFailure;
+        }
+        return (T) value;
+    }
+
+    /**
+     * Whether some of the cancelled losers had not started yet and may still sit in a queue.
+     */
+    boolean hasQueuedLosers() {
+        return queuedLosers;
+    }
+
+    private boolean isDecided() {
+        return result != NONE || failures == tasks.size();
+    }
+
+    /**
+     * Cancels every task that has not completed, interrupting the running ones.
+     */
+    void cancelRemaining() {
+        for (Contender<T> task : tasks) {
+            if (task.cancel(true) && !task.started) {
+                queuedLosers = true;
+            }
+        }
+    }
+
+    private void win(Object value) {
+        if (RESULT.compareAndSet(this, NONE, value)) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private void fail(ExecutionException e) {
+        lastFailure = e;
+        if (FAILURES.incrementAndGet(this) == tasks.size()) {
+            LockSupport.unpark(waiter);
+        }
+    }
+
+    private static final class Contender<T> extends TaskFuture<T> {
+        private final TaskRace<T> race;
+        private volatile boolean started;
+
+        Contender(Callable<T> callable, TaskRace<T> race) {
+            super(callable);
+            this.race = race;
+        }
+
+        @Override
+        public void run() {
+            started = true;
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                race.fail(new ExecutionException(new CancellationException()));
+                return;
+            }
+            try {
+                race.win(get());
+            } catch (ExecutionException e) {
+                race.fail(e);
+            } catch (InterruptedException e) {
+                // Not reachable, the future is already done.
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
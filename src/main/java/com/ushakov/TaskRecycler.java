@@ -0,0 +1,28 @@
+package com.ushakov;
+
+/**
+ * Bounded pool of task wrappers, so that a steady stream of tasks does not allocate one per task.
+ *
+ * Free wrappers sit in a preallocated {@link RingBufferQueue}, taking and returning one costs a CAS each. An empty
+ * pool allocates a new wrapper and a full one leaves the returned wrapper to the garbage collector, so the pool never
+ * blocks and settles at the number of tasks in flight.
+ */
+final class TaskRecycler<T extends TaskWrapper> {
+    private final RingBufferQueue<T> free;
+
+    TaskRecycler(int capacity) {
+        this.free = new RingBufferQueue<>(capacity);
+    }
+
+    /**
+     * A recycled wrapper, or null if the pool is empty and the caller has to allocate one.
+     */
+    T poll() {
+        return free.poll();
+    }
+
+    void recycle(T wrapper) {
+        wrapper.clear();
+        free.offer(wrapper);
+    }
+}
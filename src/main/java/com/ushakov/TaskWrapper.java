@@ -0,0 +1,68 @@
+package com.ushakov;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Envelope the executor puts around a task on its way through a queue, recycled through a {@link TaskRecycler} once
+ * a worker has taken the task out when the executor is built with {@code recycleTaskWrappers(true)}.
+ *
+ * Only the thread that takes the task out recycles the wrapper, but other threads may still look at a wrapper they
+ * found in a queue, an iterator for instance. The generation, bumped when the wrapper is recycled and again when it is
+ * reused, tells them whether the task they read still belongs to the wrapper they found: a reader notes the generation
+ * as soon as it reaches the wrapper and passes it to {@link #snapshot(int)}.
+ */
+abstract class TaskWrapper implements Runnable {
+    volatile int generation;
+    volatile Runnable task;
+    long enqueuedAt;
+
+    TaskWrapper(Runnable task) {
+        this.task = task;
+    }
+
+    /**
+     * The wrapped task, or null if the wrapper was recycled since the reader saw {@code expectedGeneration}.
+     */
+    Runnable snapshot(int expectedGeneration) {
+        Runnable wrapped = task;
+        return generation == expectedGeneration ? wrapped : null;
+    }
+
+    /**
+     * Puts a recycled wrapper back into service for {@code task}, before it is queued again.
+     */
+    void reuse(Runnable task) {
+        generation++;
+        this.task = task;
+    }
+
+    /**
+     * Detaches the task before the wrapper goes back to the pool, by the thread that took it out of the queue.
+     */
+    void clear() {
+        generation++;
+        task = null;
+    }
+
+    @Override
+    public void run() {
+        task.run();
+    }
+
+    /**
+     * The tasks of the wrappers in {@code queue}, each read as soon as the pass reaches its wrapper. Wrappers recycled
+     * in the meantime are skipped. Iterators read a whole sub-queue this way rather than one wrapper per call, so
+     * that the time the caller spends on each task does not widen the window.
+     */
+    static List<Runnable> snapshotAll(Iterable<? extends TaskWrapper> queue) {
+        List<Runnable> tasks = new ArrayList<>();
+        for (TaskWrapper wrapper : queue) {
+            Runnable task = wrapper.snapshot(wrapper.generation);
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+        return tasks;
+    }
+}
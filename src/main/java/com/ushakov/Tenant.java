@@ -0,0 +1,160 @@
+package com.ushakov;
+
+import java.util.Collections;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A party sharing a {@link FixedExecutorService} built with {@link FixedExecutorService.Builder#tenant}, passed along
+ * with the tasks submitted on its behalf. Get one with {@link FixedExecutorService#getTenant(String)}.
+ *
+ * Every tenant has a sub-queue of its own and gets the workers in proportion to its weight, measured in execution
+ * time, see {@link TenantQueue}. Untagged tasks belong to the {@value #DEFAULT} tenant.
+ */
+public final class Tenant {
+    /**
+     * Name of the tenant of untagged tasks, weight 1 and no concurrency limit unless it is configured explicitly.
+     */
+    public static final String DEFAULT = "default";
+
+    static final int UNLIMITED = Integer.MAX_VALUE;
+    // Fractional bits of the virtual time, so that a short task still counts for a tenant with weight 1000.
+    private static final int VIRTUAL_TIME_SHIFT = 10;
+
+    private final String name;
+    private final int weight;
+    private final int maxConcurrency;
+    final Queue<TenantTask> queue;
+    final AtomicInteger running = new AtomicInteger();
+    // Execution time received so far in nanoseconds, scaled by 2^VIRTUAL_TIME_SHIFT / weight. Compared by difference,
+    // it may wrap around.
+    final AtomicLong virtualTime = new AtomicLong();
+    // Moving average of the execution time of a task, charged up front when a worker takes one. Updated racily.
+    volatile long averageCost;
+    private final LongAdder completedTaskCount = new LongAdder();
+    // Null unless metrics are enabled.
+    private final HistogramRecorder waitTimes;
+    private final HistogramRecorder executionTimes;
+
+    Tenant(String name, int weight, int maxConcurrency, int capacity, boolean recordTimes) {
+        this.name = name;
+        this.weight = weight;
+        this.maxConcurrency = maxConcurrency;
+        this.queue = capacity == FixedExecutorService.UNBOUNDED
+                ? new ConcurrentLinkedQueue<>()
+                : new RingBufferQueue<>(capacity);
+        this.waitTimes = recordTimes ? new HistogramRecorder() : null;
+        this.executionTimes = recordTimes ? new HistogramRecorder() : null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Most tasks of this tenant that run at once, {@link Integer#MAX_VALUE} if unlimited.
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * Number of tasks of this tenant waiting in its sub-queue.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Number of tasks of this tenant running right now.
+     */
+    public int getActiveCount() {
+        return running.get();
+    }
+
+    /**
+     * Number of tasks of this tenant that have run, with the time since a previous reading its throughput.
+     */
+    public long getCompletedTaskCount() {
+        return completedTaskCount.sum();
+    }
+
+    /**
+     * Time the tasks of this tenant taken so far have spent in its sub-queue.
+     *
+     * @throws IllegalStateException unless the executor was built with metrics
+     */
+    public LatencyHistogram getQueueWaitTime() {
+        return LatencyHistogram.of(Collections.singletonList(recorder(waitTimes)));
+    }
+
+    /**
+     * Execution time of the tasks of this tenant that have run.
+     *
+     * @throws IllegalStateException unless the executor was built with metrics
+     */
+    public LatencyHistogram getExecutionTime() {
+        return LatencyHistogram.of(Collections.singletonList(recorder(executionTimes)));
+    }
+
+    private static HistogramRecorder recorder(HistogramRecorder recorder) {
+        if (recorder == null) {
+            throw new IllegalStateException("Metrics are not enabled, see Builder.metricsEnabled");
+        }
+        return recorder;
+    }
+
+    long scaled(long nanos) {
+        return (nanos << VIRTUAL_TIME_SHIFT) / weight;
+    }
+
+    /**
+     * Claims a slot below the concurrency limit for a task about to be taken.
+     */
+    boolean tryAcquire() {
+        int count;
+        do {
+            count = running.get();
+            if (count >= maxConcurrency) {
+                return false;
+            }
+        } while (!running.compareAndSet(count, count + 1));
+        return true;
+    }
+
+    boolean hasRunnableTask() {
+        return running.get() < maxConcurrency && !queue.isEmpty();
+    }
+
+    void recordWait(long nanos) {
+        if (waitTimes != null) {
+            waitTimes.recordConcurrent(nanos);
+        }
+    }
+
+    /**
+     * Settles the virtual time charged when the task was taken against its measured execution time.
+     */
+    void complete(long nanos, long charged) {
+        virtualTime.addAndGet(scaled(nanos) - charged);
+        long average = averageCost;
+        averageCost = average + (nanos - average >> 3);
+        completedTaskCount.increment();
+        if (executionTimes != null) {
+            executionTimes.recordConcurrent(nanos);
+        }
+        running.decrementAndGet();
+    }
+
+    @Override
+    public String toString() {
+        return "Tenant[" + name + "]";
+    }
+}
@@ -0,0 +1,313 @@
+package com.ushakov;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Predicate;
+
+/**
+ * Shared task queue split into one sub-queue per {@link Tenant}, served by weighted fair queuing on execution time.
+ *
+ * Every tenant accumulates a virtual time, the execution time its tasks received divided by its weight, and workers
+ * take from the tenant with the least virtual time among those with a queued task and a free slot under their
+ * concurrency limit. A tenant is charged its average task cost when a worker takes a task, so that idle workers do
+ * not all pile onto the same tenant, and the difference to the measured time once the task has run. Charging time
+ * rather than tasks keeps a tenant with long tasks from crowding out one with short tasks. A tenant that comes back
+ * from idle starts at the virtual time of the tenant served last instead of cashing in the time it was away.
+ *
+ * Tasks are offered as {@link TenantTask}, plain tasks go to the {@value Tenant#DEFAULT} tenant, and come out as the
+ * {@code TenantTask} that the worker runs. {@link #isEmpty()} only looks at tenants below their concurrency limit, so
+ * workers park rather than spin on the tasks of a tenant at its limit; the worker that finishes one of its tasks
+ * polls again and takes the next. The choice of tenant is not atomic, concurrent workers may occasionally take from
+ * the same one, which only blurs the shares a little.
+ */
+final class TenantQueue extends AbstractQueue<Runnable> {
+    private final Tenant[] tenants;
+    private final Map<String, Tenant> tenantsByName;
+    private final Tenant defaultTenant;
+    private final boolean recordWaitTimes;
+    // Entries handed back once their task has been taken, null unless wrappers are recycled.
+    private final TaskRecycler<TenantTask> entries;
+    // Virtual time of the tenant served last.
+    private volatile long virtualClock;
+
+    /**
+     * @param weights weight of each tenant by name, in registration order
+     * @param maxConcurrency concurrency limit of the tenants that have one
+     * @param tenantCapacity capacity of each sub-queue or {@link FixedExecutorService#UNBOUNDED}
+     */
+    TenantQueue(Map<String, Integer> weights, Map<String, Integer> maxConcurrency, int tenantCapacity,
+                boolean recordWaitTimes, boolean recycleEntries) {
+        Map<String, Tenant> byName = new LinkedHashMap<>();
+        for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+            String name = weight.getKey();
+            byName.put(name, new Tenant(name, weight.getValue(), maxConcurrency.getOrDefault(name, Tenant.UNLIMITED),
+                    tenantCapacity, recordWaitTimes));
+        }
+        if (!byName.containsKey(Tenant.DEFAULT)) {
+            byName.put(Tenant.DEFAULT, new Tenant(Tenant.DEFAULT, 1, Tenant.UNLIMITED, tenantCapacity, recordWaitTimes));
+        }
+        this.tenantsByName = Collections.unmodifiableMap(byName);
+        this.tenants = byName.values().toArray(new Tenant[0]);
+        this.defaultTenant = byName.get(Tenant.DEFAULT);
+        this.recordWaitTimes = recordWaitTimes;
+        this.entries = recycleEntries
+                ? new TaskRecycler<>(tenantCapacity == FixedExecutorService.UNBOUNDED ? 1024 : tenantCapacity)
+                : null;
+    }
+
+    /**
+     * The tenant registered under {@code name}, null if there is none.
+     */
+    Tenant tenant(String name) {
+        return tenantsByName.get(name);
+    }
+
+    boolean owns(Tenant tenant) {
+        return tenantsByName.get(tenant.getName()) == tenant;
+    }
+
+    @Override
+    public boolean offer(Runnable task) {
+        TenantTask entry = entry(task);
+        Tenant tenant = entry.tenant;
+        if (recordWaitTimes) {
+            entry.enqueuedAt = System.nanoTime();
+        }
+        catchUp(tenant);
+        return tenant.queue.offer(entry);
+    }
+
+    /**
+     * Adds tasks of the same tenant to its sub-queue with a single queue operation. Only for unbounded sub-queues.
+     */
+    @Override
+    public boolean addAll(Collection<? extends Runnable> tasks) {
+        if (tasks.isEmpty()) {
+            return false;
+        }
+        long now = recordWaitTimes ? System.nanoTime() : 0L;
+        List<TenantTask> entries = new ArrayList<>(tasks.size());
+        Tenant tenant = null;
+        boolean sameTenant = true;
+        for (Runnable task : tasks) {
+            TenantTask entry = entry(task);
+            entry.enqueuedAt = now;
+            entries.add(entry);
+            sameTenant &= tenant == null || tenant == entry.tenant;
+            tenant = entry.tenant;
+        }
+        if (sameTenant) {
+            catchUp(tenant);
+            return tenant.queue.addAll(entries);
+        }
+        for (TenantTask entry : entries) {
+            catchUp(entry.tenant);
+            entry.tenant.queue.add(entry);
+        }
+        return true;
+    }
+
+    private TenantTask entry(Runnable task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        return task instanceof TenantTask ? (TenantTask) task : wrap(task, defaultTenant);
+    }
+
+    /**
+     * Tags a task for the sub-queue of {@code tenant}, with a recycled entry if there is one.
+     */
+    TenantTask wrap(Runnable task, Tenant tenant) {
+        TenantTask entry = entries == null ? null : entries.poll();
+        if (entry == null) {
+            return new TenantTask(task, tenant, this);
+        }
+        entry.tenant = tenant;
+        entry.charged = -1L;
+        entry.reuse(task);
+        return entry;
+    }
+
+    List<TenantTask> wrapAll(List<? extends Runnable> tasks, Tenant tenant) {
+        List<TenantTask> wrapped = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            wrapped.add(wrap(task, tenant));
+        }
+        return wrapped;
+    }
+
+    private void catchUp(Tenant tenant) {
+        if (tenant.running.get() != 0 || !tenant.queue.isEmpty()) {
+            return;
+        }
+        long clock = virtualClock;
+        long time;
+        while ((time = tenant.virtualTime.get()) - clock < 0L && !tenant.virtualTime.compareAndSet(time, clock)) {
+            // Raced with the tenant's last task completing.
+        }
+    }
+
+    /**
+     * Takes a task from the tenant with the least virtual time that is below its concurrency limit. The caller must
+     * run the returned task, which releases the tenant's slot.
+     */
+    @Override
+    public Runnable poll() {
+        while (true) {
+            Tenant next = null;
+            long least = 0L;
+            for (Tenant tenant : tenants) {
+                if (tenant.hasRunnableTask()) {
+                    long time = tenant.virtualTime.get();
+                    if (next == null || time - least < 0L) {
+                        next = tenant;
+                        least = time;
+                    }
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            if (!next.tryAcquire()) {
+                continue;
+            }
+            TenantTask entry = next.queue.poll();
+            if (entry == null) {
+                next.running.decrementAndGet();
+                continue;
+            }
+            if (least - virtualClock > 0L) {
+                virtualClock = least;
+            }
+            long charge = next.scaled(next.averageCost);
+            next.virtualTime.addAndGet(charge);
+            entry.charged = charge;
+            if (recordWaitTimes) {
+                next.recordWait(System.nanoTime() - entry.enqueuedAt);
+            }
+            return entry;
+        }
+    }
+
+    /**
+     * Runs a task taken by {@link #poll()} and charges its execution time to its tenant.
+     */
+    void run(TenantTask entry) {
+        Tenant tenant = entry.tenant;
+        long charged = entry.charged;
+        Runnable task = entry.task;
+        if (entries != null) {
+            entries.recycle(entry);
+        }
+        long start = System.nanoTime();
+        try {
+            task.run();
+        } finally {
+            tenant.complete(System.nanoTime() - start, charged);
+        }
+    }
+
+    /**
+     * Takes the oldest queued task of the tenant of {@code task}, or of any tenant for null, regardless of shares and
+     * limits. The entry is not run, it is for dropping or draining.
+     */
+    TenantTask pollQueued(Runnable task) {
+        if (task != null) {
+            return (task instanceof TenantTask ? ((TenantTask) task).tenant : defaultTenant).queue.poll();
+        }
+        for (Tenant tenant : tenants) {
+            TenantTask entry = tenant.queue.poll();
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Runnable peek() {
+        for (Tenant tenant : tenants) {
+            TenantTask head = tenant.queue.peek();
+            Runnable task;
+            if (head != null && (task = head.snapshot(head.generation)) != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Tenant tenant : tenants) {
+            size += tenant.queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * True unless a tenant below its concurrency limit has a task queued, see the class comment.
+     */
+    @Override
+    public boolean isEmpty() {
+        for (Tenant tenant : tenants) {
+            if (tenant.hasRunnableTask()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Only supported for unbounded sub-queues.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super Runnable> filter) {
+        boolean removed = false;
+        for (Tenant tenant : tenants) {
+            removed |= tenant.queue.removeIf(entry -> {
+                Runnable task = entry.snapshot(entry.generation);
+                return task != null && filter.test(task);
+            });
+        }
+        return removed;
+    }
+
+    /**
+     * Weakly consistent iterator over the sub-queues in registration order, reading a sub-queue at a time, see
+     * {@link TaskWrapper#snapshotAll}. Removal through the iterator is not supported.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        return new Iterator<Runnable>() {
+            private int tenant;
+            private Iterator<Runnable> current = TaskWrapper.snapshotAll(tenants[0].queue).iterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (++tenant == tenants.length) {
+                        return false;
+                    }
+                    current = TaskWrapper.snapshotAll(tenants[tenant].queue).iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public Runnable next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+}
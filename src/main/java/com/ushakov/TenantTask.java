@@ -0,0 +1,28 @@
+package com.ushakov;
+
+/**
+ * Tags a task with its {@link Tenant} in the {@link TenantQueue}. Unlike the other wrappers it comes out of the queue
+ * and is run by the worker, so that the tenant learns how long its task took.
+ */
+final class TenantTask extends TaskWrapper {
+    Tenant tenant;
+    // Virtual time charged to the tenant when a worker took the task, -1 while it is queued.
+    long charged = -1L;
+    private final TenantQueue queue;
+
+    TenantTask(Runnable task, Tenant tenant, TenantQueue queue) {
+        super(task);
+        this.tenant = tenant;
+        this.queue = queue;
+    }
+
+    @Override
+    public void run() {
+        if (charged < 0L) {
+            // Run by a rejection policy, the task never went through the queue.
+            task.run();
+            return;
+        }
+        queue.run(this);
+    }
+}
@@ -0,0 +1,13 @@
+package com.ushakov;
+
+/**
+ * Carries the enqueue time of a plain {@link Runnable} while metrics are enabled. Futures created by the executor
+ * carry it themselves and are never wrapped.
+ */
+final class TimestampedTask extends TaskWrapper {
+
+    TimestampedTask(Runnable task, long enqueuedAt) {
+        super(task);
+        this.enqueuedAt = enqueuedAt;
+    }
+}
@@ -0,0 +1,38 @@
+package com.ushakov;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Looks up the virtual thread factory of Java 21+ reflectively, so that the project keeps compiling for Java 8 and
+ * simply reports the feature as unavailable on older runtimes.
+ */
+final class VirtualThreads {
+    private static final ThreadFactory FACTORY = lookup();
+
+    private VirtualThreads() {
+    }
+
+    private static ThreadFactory lookup() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "fixed-executor-virtual-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            // Not there before Java 19 and a preview feature, which throws on invocation, in Java 19 and 20.
+            return null;
+        }
+    }
+
+    static boolean isSupported() {
+        return FACTORY != null;
+    }
+
+    static ThreadFactory factory() {
+        if (FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or newer, running on "
+                    + System.getProperty("java.version"));
+        }
+        return FACTORY;
+    }
+}
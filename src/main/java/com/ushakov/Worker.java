@@ -0,0 +1,121 @@
+package com.ushakov;
+
+import java.util.Collection;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * State owned by a single worker thread of a {@link FixedExecutorService}.
+ *
+ * The owner pushes and pops at the tail of {@code localQueue}, thieves take from the head, so the owner and a thief
+ * only meet when a single task is left.
+ */
+final class Worker {
+    private static final ThreadLocal<Worker> CURRENT = new ThreadLocal<>();
+
+    final FixedExecutorService executorService;
+    final Deque<Runnable> localQueue = new ConcurrentLinkedDeque<>();
+    final AtomicBoolean parked = new AtomicBoolean();
+    volatile Thread thread;
+    WorkerStats stats;
+    // Start order and placement group, set before the worker is listed.
+    int index;
+    int group;
+    // Tasks taken off the shared queue in one go and not run yet, null unless the pool drains batches.
+    final Runnable[] batch;
+    private int batchIndex;
+    private int batchCount;
+
+    Worker(FixedExecutorService executorService) {
+        this.executorService = executorService;
+        this.batch = executorService.drainBatchSize > 1 ? new Runnable[executorService.drainBatchSize] : null;
+    }
+
+    /**
+     * Returns the worker running on the current thread if it belongs to the given executor, null otherwise.
+     */
+    static Worker current(FixedExecutorService executorService) {
+        Worker worker = CURRENT.get();
+        return worker != null && worker.executorService == executorService ? worker : null;
+    }
+
+    /**
+     * Returns the worker running on the current thread, of whichever executor, or null.
+     */
+    static Worker current() {
+        return CURRENT.get();
+    }
+
+    void bind(int index, WorkerPlacement placement) {
+        this.index = index;
+        this.group = placement.group(index);
+        thread = Thread.currentThread();
+        if (executorService.metrics != null) {
+            stats = new WorkerStats(thread.getName(), true);
+        }
+        CURRENT.set(this);
+    }
+
+    void unbind() {
+        CURRENT.remove();
+    }
+
+    void push(Runnable task) {
+        localQueue.addLast(task);
+    }
+
+    Runnable pollLocal() {
+        return localQueue.pollLast();
+    }
+
+    /**
+     * Takes {@code task} back if it is the last one pushed and no thief got it first. Only the owner pushes, so once
+     * {@code task} is at the tail the next poll there returns it or, if it was stolen in between, nothing.
+     */
+    boolean unpush(Runnable task) {
+        return localQueue.peekLast() == task && localQueue.pollLast() != null;
+    }
+
+    Runnable steal() {
+        return localQueue.pollFirst();
+    }
+
+    void recordSteal() {
+        if (stats != null) {
+            stats.recordSteal();
+        }
+    }
+
+    boolean hasLocalTasks() {
+        return !localQueue.isEmpty();
+    }
+
+    /**
+     * Hands out the first of {@code count} tasks just stored in {@code batch}, the others follow from
+     * {@link #nextInBatch()}.
+     */
+    Runnable startBatch(int count) {
+        batchIndex = 1;
+        batchCount = count;
+        Runnable task = batch[0];
+        batch[0] = null;
+        return task;
+    }
+
+    Runnable nextInBatch() {
+        if (batchIndex == batchCount) {
+            return null;
+        }
+        Runnable task = batch[batchIndex];
+        batch[batchIndex++] = null;
+        return task;
+    }
+
+    void drainTo(Collection<Runnable> tasks) {
+        Runnable task;
+        while ((task = localQueue.pollFirst()) != null) {
+            tasks.add(task);
+        }
+    }
+}
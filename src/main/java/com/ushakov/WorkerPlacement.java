@@ -0,0 +1,38 @@
+package com.ushakov;
+
+/**
+ * Decides where the workers of a pool run.
+ *
+ * Every worker gets an index in start order, a worker started in place of one that died or after an elastic pool
+ * shrank gets a new index. The placement maps the index to a group, typically a CPU socket, and binds the worker thread
+ * before it runs its first task. In work-stealing mode an idle worker steals from the workers of its own group before it
+ * looks at other groups, so tasks spawned on a socket tend to stay there with their data.
+ */
+@FunctionalInterface
+public interface WorkerPlacement {
+    /**
+     * Leaves the workers to the scheduler of the operating system, all in one group. The default.
+     */
+    WorkerPlacement NONE = workerIndex -> {
+    };
+
+    /**
+     * Called on the worker thread before it takes any task. An exception goes to the uncaught exception handler of
+     * the pool and the worker keeps running unbound.
+     */
+    void bind(int workerIndex);
+
+    /**
+     * Number of groups the workers are spread over.
+     */
+    default int groupCount() {
+        return 1;
+    }
+
+    /**
+     * Group of the worker with the given index, in {@code [0, groupCount())}.
+     */
+    default int group(int workerIndex) {
+        return 0;
+    }
+}
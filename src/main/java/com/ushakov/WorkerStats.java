@@ -0,0 +1,126 @@
+package com.ushakov;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Counters of one worker. Only the owning worker writes them, using ordered stores instead of atomic read-modify-write
+ * instructions, so recording never contends and readers see slightly stale but never torn values.
+ *
+ * Busy and idle time are accounted per streak, when the worker goes idle or wakes up, not per task. Execution time is
+ * measured for every task that carries an enqueue time and for one task in {@code sampleMask + 1} otherwise.
+ *
+ * The one stats instance shared by task threads in thread-per-task mode ({@code singleWriter == false}) falls back to
+ * atomic increments.
+ */
+final class WorkerStats {
+    private static final AtomicLongFieldUpdater<WorkerStats> TASKS_RUN =
+            AtomicLongFieldUpdater.newUpdater(WorkerStats.class, "tasksRun");
+    private static final AtomicLongFieldUpdater<WorkerStats> BUSY_NANOS =
+            AtomicLongFieldUpdater.newUpdater(WorkerStats.class, "busyNanos");
+    private static final AtomicLongFieldUpdater<WorkerStats> IDLE_NANOS =
+            AtomicLongFieldUpdater.newUpdater(WorkerStats.class, "idleNanos");
+    private static final AtomicLongFieldUpdater<WorkerStats> STEALS =
+            AtomicLongFieldUpdater.newUpdater(WorkerStats.class, "steals");
+
+    final String name;
+    final boolean singleWriter;
+    final HistogramRecorder queueWait = new HistogramRecorder();
+    final HistogramRecorder execution = new HistogramRecorder();
+    volatile long tasksRun;
+    volatile long busyNanos;
+    volatile long idleNanos;
+    volatile long steals;
+    // Start of the idle streak in progress, so that a snapshot taken while the worker waits for work counts it.
+    volatile boolean idle;
+    volatile long idleSince;
+
+    WorkerStats(String name, boolean singleWriter) {
+        this.name = name;
+        this.singleWriter = singleWriter;
+    }
+
+    /**
+     * Counts one task and tells whether its execution time should be sampled.
+     */
+    boolean countTask(int sampleMask) {
+        long count = tasksRun;
+        TASKS_RUN.lazySet(this, count + 1);
+        return (count & sampleMask) == 0;
+    }
+
+    void recordQueueWait(long nanos) {
+        queueWait.record(nanos);
+    }
+
+    void recordExecution(long nanos) {
+        execution.record(nanos);
+    }
+
+    void recordBusy(long nanos) {
+        BUSY_NANOS.lazySet(this, busyNanos + nanos);
+    }
+
+    void recordIdle(long nanos) {
+        IDLE_NANOS.lazySet(this, idleNanos + nanos);
+    }
+
+    /**
+     * Ends a busy streak of {@code nanos} that finished at {@code now}, the worker is idle from then on.
+     */
+    void goIdle(long nanos, long now) {
+        recordBusy(nanos);
+        idleSince = now;
+        idle = true;
+    }
+
+    /**
+     * Ends the idle streak in progress, which lasted {@code nanos}.
+     */
+    void wakeUp(long nanos) {
+        idle = false;
+        recordIdle(nanos);
+    }
+
+    /**
+     * Idle time including the streak in progress.
+     */
+    long idleNanos(long now) {
+        long nanos = idleNanos;
+        if (idle) {
+            nanos += Math.max(0L, now - idleSince);
+        }
+        return nanos;
+    }
+
+    void recordSteal() {
+        STEALS.lazySet(this, steals + 1);
+    }
+
+    /**
+     * Records a whole task from a thread other than a worker, always timed.
+     */
+    void recordTaskConcurrent(long queueWaitNanos, long executionNanos) {
+        if (queueWaitNanos >= 0) {
+            queueWait.recordConcurrent(queueWaitNanos);
+        }
+        execution.recordConcurrent(executionNanos);
+        TASKS_RUN.incrementAndGet(this);
+        BUSY_NANOS.addAndGet(this, executionNanos);
+    }
+
+    /**
+     * Folds the counters of a worker that exits into this (shared) instance so that they survive in snapshots.
+     */
+    void absorb(WorkerStats retired) {
+        TASKS_RUN.addAndGet(this, retired.tasksRun);
+        BUSY_NANOS.addAndGet(this, retired.busyNanos);
+        IDLE_NANOS.addAndGet(this, retired.idleNanos);
+        STEALS.addAndGet(this, retired.steals);
+        long[] counts = new long[HistogramRecorder.BUCKET_COUNT];
+        retired.queueWait.addTo(counts);
+        queueWait.addAll(counts);
+        counts = new long[HistogramRecorder.BUCKET_COUNT];
+        retired.execution.addTo(counts);
+        execution.addAll(counts);
+    }
+}
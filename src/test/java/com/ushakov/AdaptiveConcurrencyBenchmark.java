@@ -0,0 +1,78 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Calls to a simulated backend that serves 8 calls at once in a millisecond and degrades beyond that, a call taking
+ * the square of the overload longer as the calls get in each other's way. For two seconds a pool of 64 workers is kept
+ * busy, and the counters report the calls that completed ({@code calls}) and those that took more than twice the
+ * no-load time ({@code slowCalls}). With all 64 workers calling at once the backend gets through a fraction of what it
+ * can, with the adaptive limit the pool backs off to just above the 8 calls the backend serves well.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AdaptiveConcurrencyBenchmark {
+    private static final int WORKERS = 64;
+    private static final int KNEE = 8;
+    private static final long SERVICE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int LOAD_MILLIS = 2_000;
+
+    @Param({"FIXED", "ADAPTIVE"})
+    String limit;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Outcome {
+        public long calls;
+        public long slowCalls;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            calls = 0L;
+            slowCalls = 0L;
+        }
+    }
+
+    @Benchmark
+    public void overload(Outcome outcome) throws InterruptedException {
+        FixedExecutorService.Builder builder = FixedExecutorService.builder().capacity(WORKERS);
+        if ("ADAPTIVE".equals(limit)) {
+            builder.adaptiveConcurrency(1, 1).concurrencyWindow(10, TimeUnit.MILLISECONDS);
+        }
+        FixedExecutorService executorService = builder.build();
+        AtomicInteger active = new AtomicInteger();
+        LongAdder calls = new LongAdder();
+        LongAdder slowCalls = new LongAdder();
+        Runnable call = () -> {
+            long overload = Math.max(active.incrementAndGet(), KNEE);
+            long latency = SERVICE_NANOS * overload * overload / (KNEE * KNEE);
+            LockSupport.parkNanos(latency);
+            active.decrementAndGet();
+            calls.increment();
+            if (latency > 2 * SERVICE_NANOS) {
+                slowCalls.increment();
+            }
+        };
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LOAD_MILLIS);
+        while (System.nanoTime() - end < 0L) {
+            // Closed loop: a backlog is always waiting.
+            while (executorService.getQueueDepth() < 2 * WORKERS) {
+                executorService.execute(call);
+            }
+            Thread.sleep(1);
+        }
+        executorService.shutdownNow();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        outcome.calls += calls.sum();
+        outcome.slowCalls += slowCalls.sum();
+    }
+}
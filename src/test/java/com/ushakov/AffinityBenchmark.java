@@ -0,0 +1,66 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache-sensitive batch: every task sweeps a buffer owned by the worker thread that runs it, sized to stay in a
+ * core's L2. Unpinned workers migrate between cores and sockets and find their buffer cold, workers pinned to one CPU
+ * each keep it warm. Pinning needs Linux with {@code taskset}, that setup fails elsewhere.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AffinityBenchmark {
+    private static final int TASK_COUNT = 1_000;
+
+    @Param({"NONE", "PINNED"})
+    String placement;
+
+    @Param({"256"})
+    int bufferKb;
+
+    FixedExecutorService executorService;
+    List<Callable<Long>> tasks;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        FixedExecutorService.Builder builder = FixedExecutorService.builder().capacity(cpus);
+        if ("PINNED".equals(placement)) {
+            builder.workerPlacement(LinuxAffinity.cpus("0-" + (cpus - 1)));
+        }
+        executorService = builder.build();
+        ThreadLocal<int[]> buffers = ThreadLocal.withInitial(() -> new int[bufferKb * 1024 / Integer.BYTES]);
+        tasks = new ArrayList<>(TASK_COUNT);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            tasks.add(() -> {
+                int[] buffer = buffers.get();
+                long sum = 0;
+                for (int pass = 0; pass < 4; pass++) {
+                    for (int j = 0; j < buffer.length; j += 16) {
+                        sum += buffer[j]++;
+                    }
+                }
+                return sum;
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public int sweepBuffers() throws Exception {
+        return executorService.submitBatch(tasks).getResults().size();
+    }
+}
@@ -0,0 +1,55 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Allocation per {@code execute} of a trivial task on a bounded queue: plain, with metrics measuring every task and
+ * with priority lanes, each with and without recycled task wrappers. Run with the GC profiler and look at
+ * {@code gc.alloc.rate.norm}, which should stay near zero bytes per operation with recycling:
+ * {@code java -cp target/classes:target/test-classes:<test classpath> org.openjdk.jmh.Main AllocationBenchmark -prof gc}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AllocationBenchmark {
+    private static final Runnable TASK = () -> {
+    };
+
+    @Param({"PLAIN", "METRICS", "LANES"})
+    String configuration;
+
+    @Param({"false", "true"})
+    boolean recycle;
+
+    FixedExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        FixedExecutorService.Builder builder = FixedExecutorService.builder()
+                .capacity(Math.max(1, Runtime.getRuntime().availableProcessors() - 1))
+                .queueCapacity(4096)
+                .rejectionPolicy(RejectionPolicy.BLOCK)
+                .recycleTaskWrappers(recycle);
+        if ("METRICS".equals(configuration)) {
+            builder.metricsEnabled(true).latencySamplingInterval(1);
+        } else if ("LANES".equals(configuration)) {
+            builder.priorityLanes(4, 2, 1);
+        }
+        executorService = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public void execute() {
+        executorService.execute(TASK, Priority.LOW);
+    }
+}
@@ -0,0 +1,62 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to submit and complete a whole batch of trivial tasks with {@link FixedExecutorService#submitBatch} versus a
+ * loop over {@link FixedExecutorService#submit(Callable)} followed by a {@code get()} on every future.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchSubmitBenchmark {
+    private static final Callable<Integer> TASK = () -> 1;
+
+    @Param({"10", "1000", "100000"})
+    int batchSize;
+
+    FixedExecutorService executorService;
+    List<Callable<Integer>> tasks;
+
+    @Setup
+    public void setUp() {
+        executorService = new FixedExecutorService(Runtime.getRuntime().availableProcessors());
+        tasks = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            tasks.add(TASK);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public int submitBatch() throws Exception {
+        TaskBatch<Integer> batch = executorService.submitBatch(tasks);
+        batch.await();
+        return batch.size();
+    }
+
+    @Benchmark
+    public int submitLoop() throws Exception {
+        List<Future<Integer>> futures = new ArrayList<>(batchSize);
+        for (Callable<Integer> task : tasks) {
+            futures.add(executorService.submit(task));
+        }
+        for (Future<Integer> future : futures) {
+            future.get();
+        }
+        return futures.size();
+    }
+}
@@ -0,0 +1,59 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to get through 100k tasks that each block for 10 ms, on a pool of platform workers versus a virtual thread
+ * per task with the same 100k concurrency limit. The virtual mode needs Java 21+, its setup fails on older runtimes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingTasksBenchmark {
+    private static final int TASK_COUNT = 100_000;
+
+    @Param({"POOLED", "VIRTUAL"})
+    String mode;
+
+    @Param({"256"})
+    int poolSize;
+
+    FixedExecutorService executorService;
+    List<Callable<Integer>> tasks;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        FixedExecutorService.Builder builder = FixedExecutorService.builder();
+        if ("VIRTUAL".equals(mode)) {
+            builder.virtualThreads().capacity(TASK_COUNT);
+        } else {
+            builder.capacity(poolSize);
+        }
+        executorService = builder.build();
+        tasks = new ArrayList<>(TASK_COUNT);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            tasks.add(() -> {
+                Thread.sleep(10);
+                return 1;
+            });
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public int sleepingTasks() throws Exception {
+        return executorService.submitBatch(tasks).getResults().size();
+    }
+}
@@ -0,0 +1,92 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to run a batch of 10-stage pipelines. The blocking variant submits each stage and waits for it with
+ * {@code get} before submitting the next, the way plain futures compose. The composed variants attach all stages up
+ * front and wait once per pipeline: inline continuations run on the worker that completed the previous stage, async
+ * ones are put back on the pool.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompletionPipelineBenchmark {
+    private static final int STAGES = 10;
+    private static final int PIPELINES = 100;
+
+    @Param({"100"})
+    int work;
+
+    FixedExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        executorService = FixedExecutorService.builder().capacity(Runtime.getRuntime().availableProcessors()).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    private Integer stage(Integer value) {
+        Blackhole.consumeCPU(work);
+        return value + 1;
+    }
+
+    @Benchmark
+    public int blockingGet() throws Exception {
+        int sum = 0;
+        for (int i = 0; i < PIPELINES; i++) {
+            Integer value = i;
+            for (int j = 0; j < STAGES; j++) {
+                Integer input = value;
+                value = executorService.submit(() -> stage(input)).get();
+            }
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int inlineContinuations() throws Exception {
+        return await(pipelines(false));
+    }
+
+    @Benchmark
+    public int asyncContinuations() throws Exception {
+        return await(pipelines(true));
+    }
+
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Integer>[] pipelines(boolean async) {
+        CompletableFuture<Integer>[] pipelines = (CompletableFuture<Integer>[]) new CompletableFuture<?>[PIPELINES];
+        for (int i = 0; i < PIPELINES; i++) {
+            Integer input = i;
+            CompletableFuture<Integer> pipeline = executorService.submit(() -> stage(input)).toCompletableFuture();
+            for (int j = 1; j < STAGES; j++) {
+                pipeline = async
+                        ? pipeline.thenApplyAsync(this::stage, executorService)
+                        : pipeline.thenApply(this::stage);
+            }
+            pipelines[i] = pipeline;
+        }
+        return pipelines;
+    }
+
+    private static int await(CompletableFuture<Integer>[] pipelines) throws Exception {
+        int sum = 0;
+        for (CompletableFuture<Integer> pipeline : pipelines) {
+            sum += pipeline.get();
+        }
+        return sum;
+    }
+}
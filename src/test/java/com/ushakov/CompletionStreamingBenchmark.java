@@ -0,0 +1,85 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of short tasks with one straggler that takes as long as all the others together. {@code invokeAll} only
+ * returns, and so hands out its first result, once the straggler is done; a streaming batch hands out the first result
+ * as soon as any task completes. The {@code *FirstResult} variants stop the clock at the first result and let the
+ * rest of the batch finish outside the measurement, {@code streamingAll} takes every result.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompletionStreamingBenchmark {
+    private static final int BATCH_SIZE = 32;
+
+    @Param({"2000"})
+    int work;
+
+    FixedExecutorService executorService;
+    List<Callable<Integer>> tasks;
+    CompletionBatch<Integer> pending;
+
+    @Setup
+    public void setUp() {
+        executorService = FixedExecutorService.builder()
+                .capacity(Math.max(4, Runtime.getRuntime().availableProcessors()))
+                .build();
+        tasks = new ArrayList<>(BATCH_SIZE);
+        tasks.add(() -> {
+            Blackhole.consumeCPU((long) work * (BATCH_SIZE - 1));
+            return 0;
+        });
+        for (int i = 1; i < BATCH_SIZE; i++) {
+            tasks.add(() -> {
+                Blackhole.consumeCPU(work);
+                return 1;
+            });
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void awaitBatch() throws InterruptedException {
+        if (pending != null) {
+            pending.await();
+            pending = null;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public Integer invokeAllFirstResult() throws Exception {
+        return executorService.invokeAll(tasks).get(0).get();
+    }
+
+    @Benchmark
+    public Integer streamingFirstResult() throws Exception {
+        pending = executorService.submitStreaming(tasks);
+        return pending.take().get();
+    }
+
+    @Benchmark
+    public int streamingAll() throws Exception {
+        CompletionBatch<Integer> batch = executorService.submitStreaming(tasks);
+        int sum = 0;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            sum += batch.take().get();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,136 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyLimiterTest {
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long WINDOW = 10 * MILLI;
+
+    /**
+     * Backend that serves {@code knee} calls at once in {@code serviceNanos}, further calls queue up and make every
+     * call slower. Runs on a simulated clock, always with tasks waiting in the pool's queue unless told otherwise.
+     */
+    private static final class Backend {
+        final ConcurrencyLimiter limiter;
+        long now;
+        int knee;
+        long serviceNanos = MILLI;
+        boolean backlog = true;
+
+        Backend(ConcurrencyLimiter limiter, int knee) {
+            this.limiter = limiter;
+            this.knee = knee;
+        }
+
+        /**
+         * Keeps as many calls running as the limit allows, completing one at a time for {@code nanos} of simulated
+         * time. Returns the highest limit seen outside of probes.
+         */
+        int run(long nanos) {
+            long end = now + nanos;
+            int highest = 0;
+            while (now < end) {
+                int concurrency = limiter.getInFlight();
+                while (limiter.tryAcquire()) {
+                    concurrency++;
+                }
+                long latency = serviceNanos * Math.max(concurrency, knee) / knee;
+                // Calls finish at the rate the backend serves them.
+                now += latency / concurrency;
+                limiter.record(now - latency, now, backlog);
+                limiter.release();
+                if (!limiter.isProbing()) {
+                    highest = Math.max(highest, limiter.getLimit());
+                }
+            }
+            return highest;
+        }
+    }
+
+    private static ConcurrencyLimiter limiter(int initialLimit) {
+        return new ConcurrencyLimiter(1, initialLimit, 64, WINDOW, 0L);
+    }
+
+    @Test
+    public void testConvergesWhereTheBackendStartsToQueue() {
+        Backend backend = new Backend(limiter(1), 16);
+
+        backend.run(TimeUnit.SECONDS.toNanos(1));
+        int highest = backend.run(TimeUnit.SECONDS.toNanos(2));
+
+        int limit = backend.limiter.getLimit();
+        assertTrue("limit " + limit, limit >= 16 && limit <= 23);
+        assertTrue("highest " + highest, highest <= 23);
+        assertEquals(MILLI, backend.limiter.getNoLoadExecutionTimeNanos());
+        assertTrue(backend.limiter.getThrottledCount() > 0L);
+    }
+
+    @Test
+    public void testBacksOffWhenTheBackendServesFewerCalls() {
+        Backend backend = new Backend(limiter(1), 16);
+        backend.run(TimeUnit.SECONDS.toNanos(1));
+
+        backend.knee = 4;
+        backend.run(TimeUnit.SECONDS.toNanos(1));
+
+        int limit = backend.limiter.getLimit();
+        assertTrue("limit " + limit, limit >= 4 && limit <= 11);
+        assertTrue(backend.limiter.getEstimatedQueue() <= 7.0);
+    }
+
+    @Test
+    public void testProbeRelearnsNoLoadTimeOfSlowerBackend() {
+        Backend backend = new Backend(limiter(1), 16);
+        backend.run(TimeUnit.SECONDS.toNanos(1));
+
+        // Without a new no-load time every call would look queued and the limit would stay at the minimum.
+        backend.serviceNanos = 3 * MILLI;
+        backend.run(TimeUnit.SECONDS.toNanos(6));
+
+        int limit = backend.limiter.getLimit();
+        assertTrue("limit " + limit, limit >= 16 && limit <= 23);
+        assertEquals(3 * MILLI, backend.limiter.getNoLoadExecutionTimeNanos());
+    }
+
+    @Test
+    public void testDoesNotGrowWithoutQueuedTasks() {
+        Backend backend = new Backend(limiter(4), 16);
+        backend.backlog = false;
+
+        backend.run(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals(4, backend.limiter.getLimit());
+        assertEquals(0L, backend.limiter.getThrottledCount());
+    }
+
+    @Test
+    public void testWindowNeedsEnoughSamples() {
+        ConcurrencyLimiter limiter = limiter(2);
+        for (int i = 1; i < ConcurrencyLimiter.MIN_SAMPLES; i++) {
+            assertEquals(0, limiter.record(0L, i * WINDOW, true));
+        }
+        assertEquals(0L, limiter.getExecutionTimeNanos());
+
+        assertEquals(1, limiter.record(0L, ConcurrencyLimiter.MIN_SAMPLES * WINDOW, true));
+
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    public void testPermitsStopAtLimit() {
+        ConcurrencyLimiter limiter = limiter(2);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.hasPermit());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.hasPermit());
+        assertFalse(limiter.tryAcquire());
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+        assertEquals(2, limiter.getInFlight());
+    }
+}
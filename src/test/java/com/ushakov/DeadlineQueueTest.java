@@ -0,0 +1,103 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class DeadlineQueueTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final Runnable NOOP = () -> {
+    };
+
+    private static DeadlineTask poll(DeadlineQueue queue) {
+        return (DeadlineTask) queue.poll();
+    }
+
+    @Test
+    public void testEarliestDeadlineFirst() {
+        DeadlineQueue queue = new DeadlineQueue(FixedExecutorService.UNBOUNDED, 2 * SECOND);
+        long now = System.nanoTime();
+        Runnable late = () -> {
+        };
+        Runnable early = () -> {
+        };
+        Runnable plain = () -> {
+        };
+        Runnable sameAsEarly = () -> {
+        };
+
+        queue.offer(queue.wrap(late, now + 3 * SECOND));
+        queue.offer(plain);
+        queue.offer(queue.wrap(early, now + SECOND));
+        queue.offer(queue.wrap(sameAsEarly, now + SECOND));
+
+        assertEquals(4, queue.size());
+        Runnable head = queue.peek();
+        assertSame(early, ((DeadlineTask) head).task);
+        assertSame(head, queue.poll());
+        assertSame(sameAsEarly, poll(queue).task);
+        assertSame(plain, poll(queue).task);
+        assertSame(late, poll(queue).task);
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testBoundedQueueRejectsWhenFull() {
+        DeadlineQueue queue = new DeadlineQueue(2, 0L);
+
+        assertTrue(queue.offer(NOOP));
+        assertTrue(queue.offer(NOOP));
+        assertFalse(queue.offer(NOOP));
+        queue.poll();
+        assertTrue(queue.offer(NOOP));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testExpiredEntryShedsItsTask() throws Exception {
+        DeadlineQueue queue = new DeadlineQueue(FixedExecutorService.UNBOUNDED, 0L);
+        AtomicInteger executed = new AtomicInteger();
+        TaskFuture<Integer> future = new TaskFuture<>(executed::incrementAndGet);
+        long now = System.nanoTime();
+        queue.offer(queue.wrap(future, now - 1L));
+        queue.offer(queue.wrap(executed::incrementAndGet, now - 1L));
+        queue.offer(queue.wrap(executed::incrementAndGet, now + SECOND));
+        queue.offer(executed::incrementAndGet);
+
+        Runnable task;
+        while ((task = queue.poll()) != null) {
+            task.run();
+        }
+
+        assertEquals(2, executed.get());
+        assertEquals(2, queue.shedCount.sum());
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    @Test
+    public void testRemoveIf() {
+        DeadlineQueue queue = new DeadlineQueue(FixedExecutorService.UNBOUNDED, 0L);
+        Future<?> cancelled = new TaskFuture<>(NOOP, null);
+        cancelled.cancel(false);
+        queue.offer(queue.wrap((Runnable) cancelled, System.nanoTime() + SECOND));
+        queue.offer(NOOP);
+
+        assertTrue(queue.removeIf(task -> task instanceof Future && ((Future<?>) task).isCancelled()));
+
+        assertEquals(1, queue.size());
+        assertSame(NOOP, ((DeadlineTask) queue.peek()).task);
+    }
+}
@@ -0,0 +1,100 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Goodput at twice the load the pool can take: for one second tasks of 200 microseconds arrive at a fixed rate, each
+ * worth running only within 5 milliseconds of its arrival, and the counters report how many finished in time
+ * ({@code onTime}, which is also the goodput per second), too late ({@code late}) or were dropped ({@code shed}). With
+ * a plain FIFO queue the backlog grows until every task misses its deadline, with deadline scheduling the workers
+ * drop the tasks that cannot make it and keep up with the others.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DeadlineSheddingBenchmark {
+    private static final long SERVICE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long DEADLINE_MILLIS = 5;
+    private static final int LOAD_MILLIS = 1_000;
+
+    @Param({"FIFO", "EDF"})
+    String scheduling;
+
+    int workers = Runtime.getRuntime().availableProcessors();
+    // Twice as many tasks per millisecond as the workers get through.
+    int arrivalsPerMilli = (int) (2 * workers * TimeUnit.MILLISECONDS.toNanos(1) / SERVICE_NANOS);
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Outcome {
+        public long onTime;
+        public long late;
+        public long shed;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            onTime = 0L;
+            late = 0L;
+            shed = 0L;
+        }
+    }
+
+    private static void work(long nanos) {
+        long start = System.nanoTime();
+        while (System.nanoTime() - start < nanos) {
+            Blackhole.consumeCPU(1);
+        }
+    }
+
+    @Benchmark
+    public void overload(Outcome outcome) throws InterruptedException {
+        boolean edf = "EDF".equals(scheduling);
+        FixedExecutorService.Builder builder = FixedExecutorService.builder().capacity(workers);
+        if (edf) {
+            builder.deadlineScheduling(DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        FixedExecutorService executorService = builder.build();
+        LongAdder onTime = new LongAdder();
+        LongAdder late = new LongAdder();
+        long deadlineNanos = TimeUnit.MILLISECONDS.toNanos(DEADLINE_MILLIS);
+        long start = System.nanoTime();
+        for (int tick = 0; tick < LOAD_MILLIS; tick++) {
+            // Open loop: tasks arrive by the clock, however far behind the pool is.
+            long wait;
+            while ((wait = start + TimeUnit.MILLISECONDS.toNanos(tick) - System.nanoTime()) > 0L) {
+                LockSupport.parkNanos(wait);
+            }
+            for (int i = 0; i < arrivalsPerMilli; i++) {
+                long deadline = System.nanoTime() + deadlineNanos;
+                Runnable task = () -> {
+                    work(SERVICE_NANOS);
+                    if (System.nanoTime() - deadline <= 0L) {
+                        onTime.increment();
+                    } else {
+                        late.increment();
+                    }
+                };
+                if (edf) {
+                    executorService.executeWithDeadline(task, DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+                } else {
+                    executorService.execute(task);
+                }
+            }
+        }
+        // The tasks still queued after that are past their deadline.
+        Thread.sleep(DEADLINE_MILLIS);
+        executorService.shutdownNow();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        outcome.onTime += onTime.sum();
+        outcome.late += late.sum();
+        outcome.shed += executorService.getShedTaskCount();
+    }
+}
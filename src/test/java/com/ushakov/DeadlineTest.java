@@ -0,0 +1,51 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class DeadlineTest {
+    private static final long TOLERANCE = TimeUnit.MILLISECONDS.toNanos(200);
+
+    @Test
+    public void testRemainingNanos() throws Exception {
+        Deadline deadline = Deadline.afterNanos(TimeUnit.SECONDS.toNanos(1));
+
+        long first = deadline.remainingNanos();
+        Thread.sleep(10);
+        long second = deadline.remainingNanos();
+
+        assertTrue(first <= TimeUnit.SECONDS.toNanos(1));
+        assertTrue(second <= first - TimeUnit.MILLISECONDS.toNanos(10));
+        assertTrue(deadline.remainingNanos() > 0L);
+    }
+
+    @Test
+    public void testZeroAndNegativeTimeoutsAreExpired() {
+        assertEquals(0L, Deadline.afterNanos(0).remainingNanos());
+        assertEquals(0L, Deadline.afterNanos(-1).remainingNanos());
+        assertFalse(Deadline.afterNanos(-1).park(this));
+    }
+
+    @Test
+    public void testHugeTimeoutDoesNotOverflow() {
+        Deadline deadline = Deadline.afterNanos(Long.MAX_VALUE);
+
+        assertTrue(deadline.remainingNanos() > TimeUnit.DAYS.toNanos(365));
+    }
+
+    @Test
+    public void testParkReturnsAtDeadline() {
+        long start = System.nanoTime();
+        Deadline deadline = Deadline.afterNanos(TimeUnit.MILLISECONDS.toNanos(20));
+
+        while (deadline.park(this)) {
+        }
+
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(20) + TOLERANCE);
+    }
+}
@@ -0,0 +1,117 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Throughput of empty and roughly 100 ns tasks for several drain batch sizes, in bursts that fit into the bounded
+ * queue and are waited for. {@code keyed} and {@code coalesced} push the same items through one serial lane, one task
+ * per item versus one sink call per batch of the items that piled up while the previous batch ran.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DrainBatchBenchmark {
+    private static final int BURST = 1_000;
+    private static final String KEY = "sink";
+
+    @Param({"1", "16", "64"})
+    int drainBatchSize;
+
+    @Param({"0", "100"})
+    long taskNanos;
+
+    FixedExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        executorService = FixedExecutorService.builder()
+                .capacity(Runtime.getRuntime().availableProcessors())
+                .queueCapacity(1024)
+                .drainBatchSize(drainBatchSize)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executorService.shutdownNow();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private static void work(long nanos) {
+        if (nanos > 0L) {
+            long start = System.nanoTime();
+            while (System.nanoTime() - start < nanos) {
+                Blackhole.consumeCPU(1);
+            }
+        }
+    }
+
+    /**
+     * Counts down the items of a burst as they are done with.
+     */
+    static final class Burst {
+        final AtomicInteger remaining = new AtomicInteger(BURST);
+        final CountDownLatch done = new CountDownLatch(1);
+
+        void completed(int items) {
+            if (remaining.addAndGet(-items) == 0) {
+                done.countDown();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void execute() throws InterruptedException {
+        Burst burst = new Burst();
+        long nanos = taskNanos;
+        Runnable task = () -> {
+            work(nanos);
+            burst.completed(1);
+        };
+        for (int i = 0; i < BURST; i++) {
+            executorService.execute(task);
+        }
+        burst.done.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void keyed() throws InterruptedException {
+        Burst burst = new Burst();
+        long nanos = taskNanos;
+        Runnable task = () -> {
+            work(nanos);
+            burst.completed(1);
+        };
+        for (int i = 0; i < BURST; i++) {
+            executorService.execute(KEY, task);
+        }
+        burst.done.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void coalesced() throws InterruptedException {
+        Burst burst = new Burst();
+        long nanos = taskNanos;
+        Consumer<List<Integer>> sink = items -> {
+            work(nanos * items.size());
+            burst.completed(items.size());
+        };
+        for (int i = 0; i < BURST; i++) {
+            executorService.coalesce(KEY, i, sink);
+        }
+        burst.done.await();
+    }
+}
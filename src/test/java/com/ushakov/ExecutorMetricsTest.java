@@ -0,0 +1,184 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ExecutorMetricsTest {
+
+    @Test
+    public void testSnapshotCountsTasks() throws Exception {
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(2)
+                .metricsEnabled(true)
+                .latencySamplingInterval(1)
+                .build();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(() -> {
+                Thread.sleep(2);
+                return 1;
+            });
+        }
+        executorService.invokeAll(tasks);
+        CountDownLatch done = new CountDownLatch(1);
+        executorService.execute(done::countDown);
+        done.await();
+        Thread.sleep(50);
+
+        MetricsSnapshot snapshot = executorService.getMetrics().snapshot();
+
+        assertEquals(11, snapshot.getTasksRun());
+        assertEquals(2, snapshot.getWorkers().size());
+        assertEquals(11, snapshot.getExecutionTime().getCount());
+        assertEquals(11, snapshot.getQueueWaitTime().getCount());
+        assertTrue(snapshot.getExecutionTime().getValueAtPercentile(50) >= TimeUnit.MILLISECONDS.toNanos(2));
+        assertTrue(snapshot.getBusyNanos() >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertTrue(snapshot.getIdleNanos() > 0);
+        assertTrue(snapshot.getUtilization() > 0 && snapshot.getUtilization() < 1);
+        assertEquals(0, snapshot.getQueueDepth());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testLatencyIsSampled() throws Exception {
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(1)
+                .metricsEnabled(true)
+                .latencySamplingInterval(4)
+                .build();
+        CountDownLatch done = new CountDownLatch(1000);
+        for (int i = 0; i < 1000; i++) {
+            executorService.execute(done::countDown);
+        }
+        done.await();
+        Thread.sleep(50);
+
+        MetricsSnapshot snapshot = executorService.getMetrics().snapshot();
+
+        assertEquals(1000, snapshot.getTasksRun());
+        long sampled = snapshot.getExecutionTime().getCount();
+        assertTrue(sampled >= 250 && sampled < 1000);
+        assertTrue(snapshot.getQueueWaitTime().getCount() > 0);
+        assertTrue(snapshot.getQueueWaitTime().getCount() < 1000);
+        executorService.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSamplingInterval() {
+        FixedExecutorService.builder().latencySamplingInterval(0);
+    }
+
+    @Test
+    public void testStealsAreCounted() throws Exception {
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(2)
+                .schedulingMode(SchedulingMode.WORK_STEALING)
+                .metricsEnabled(true)
+                .build();
+        CountDownLatch children = new CountDownLatch(5);
+
+        Future<Boolean> parent = executorService.submit(() -> {
+            for (int i = 0; i < 5; i++) {
+                executorService.execute(children::countDown);
+            }
+            return children.await(1, TimeUnit.SECONDS);
+        });
+
+        assertTrue(parent.get());
+        assertEquals(5, executorService.getMetrics().snapshot().getSteals());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testRetiredWorkersStayInTotals() throws Exception {
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(1)
+                .metricsEnabled(true)
+                .build();
+        executorService.submit(() -> 1).get();
+
+        executorService.shutdownNow();
+        assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+
+        MetricsSnapshot snapshot = executorService.getMetrics().snapshot();
+        assertEquals(0, snapshot.getWorkers().size());
+        assertEquals(1, snapshot.getTasksRun());
+    }
+
+    @Test
+    public void testLaneQueueWaitTime() throws Exception {
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(1)
+                .priorityLanes(4, 2, 1)
+                .metricsEnabled(true)
+                .build();
+
+        executorService.submit(() -> 1, Priority.LOW).get();
+        executorService.submit(() -> 1, Priority.LOW).get();
+        executorService.submit(() -> 1, Priority.HIGH).get();
+
+        assertEquals(2, executorService.getQueueWaitTime(Priority.LOW).getCount());
+        assertEquals(1, executorService.getQueueWaitTime(Priority.HIGH).getCount());
+        assertEquals(0, executorService.getQueueWaitTime(Priority.NORMAL).getCount());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testThreadPerTaskMode() throws Exception {
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(2)
+                .threadPerTask(Thread::new)
+                .metricsEnabled(true)
+                .build();
+
+        executorService.submit(() -> 1).get();
+        Thread.sleep(50);
+
+        assertEquals(1, executorService.getMetrics().snapshot().getTasksRun());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(1)
+                .metricsEnabled(true)
+                .build();
+        executorService.submit(() -> 1).get();
+        Thread.sleep(50);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("com.ushakov:type=FixedExecutorService,name=\"metrics-test\"");
+
+        executorService.getMetrics().registerMBean("metrics-test");
+        try {
+            assertEquals(1L, server.getAttribute(name, "TasksRun"));
+            assertEquals(1, server.getAttribute(name, "WorkerCount"));
+        } finally {
+            executorService.getMetrics().unregisterMBean();
+        }
+        assertFalse(server.isRegistered(name));
+        executorService.shutdownNow();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testMetricsDisabled() {
+        FixedExecutorService executorService = new FixedExecutorService(1);
+        try {
+            executorService.getMetrics();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+}
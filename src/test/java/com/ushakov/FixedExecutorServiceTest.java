@@ -1,20 +1,44 @@
 package com.ushakov;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
 public class FixedExecutorServiceTest {
     private static final int WAIT_TIME = 500;
     private final List<Boolean> TEST_FLAG = new ArrayList<>();
+    private static final Runnable NOOP = () -> {
+    };
     private final Runnable TEST = () -> {
         TEST_FLAG.set(0, true);
     };
@@ -28,9 +52,29 @@ public class FixedExecutorServiceTest {
         return 1;
     };
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Pool configuration every test starts from, overridden to run the whole contract in other execution modes.
+     */
+    protected FixedExecutorService.Builder builder() {
+        return FixedExecutorService.builder();
+    }
+
+    protected boolean isPooled() {
+        return true;
+    }
+
+    private FixedExecutorService newExecutorService(int capacity) {
+        return builder().capacity(capacity).build();
+    }
+
     @Test
     public void testConstructorCreatesThreads() {
-        FixedExecutorService executorService = new FixedExecutorService(2);
+        assumeTrue(isPooled());
+
+        FixedExecutorService executorService = newExecutorService(2);
 
         assertEquals(2, executorService.threadList.size());
         assertFalse(executorService.threadList.get(0).isInterrupted());
@@ -39,16 +83,16 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testShutdown() {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         executorService.shutdown();
 
-        assertTrue(executorService.isShutdownInProgress);
+        assertTrue(executorService.ctl.get() >= FixedExecutorService.SHUTDOWN);
     }
 
     @Test
     public void testIsShutdown() {
-        ExecutorService executorService = new FixedExecutorService(1);
+        ExecutorService executorService = newExecutorService(1);
 
         assertFalse(executorService.isShutdown());
         executorService.shutdown();
@@ -57,7 +101,7 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testShutdownNowReturnsCorrectList() {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         Runnable task = () -> {
             try {
@@ -77,7 +121,9 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testShutdownNowTerminatesAllThreads() throws Exception {
-        FixedExecutorService executorService = new FixedExecutorService(2);
+        assumeTrue(isPooled());
+
+        FixedExecutorService executorService = newExecutorService(2);
 
         Thread.sleep(WAIT_TIME);
 
@@ -94,10 +140,12 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testTaskExecutorExecutes() throws Exception {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        assumeTrue(isPooled());
+
+        FixedExecutorService executorService = newExecutorService(1);
         executorService.shutdownNow();
 
-        executorService.isShutdownInProgress = false;
+        executorService.ctl.set(FixedExecutorService.RUNNING);
 
         TEST_FLAG.clear();
         TEST_FLAG.add(false);
@@ -112,7 +160,7 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testIsTerminated() throws Exception {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         Thread.sleep(WAIT_TIME);
 
@@ -127,16 +175,185 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testAwaitTermination() throws Exception {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
+
+        executorService.shutdownNow();
+
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
 
+    @Test
+    public void testAwaitTerminationAfterShutdown() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        AtomicInteger completed = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            executorService.execute(() -> {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                completed.incrementAndGet();
+            });
+        }
+
+        executorService.shutdown();
+        long start = System.nanoTime();
+
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(WAIT_TIME));
+        assertEquals(4, completed.get());
+        assertTrue(executorService.isTerminated());
+    }
+
+    @Test
+    public void testAwaitTerminationTimesOutWithoutShutdown() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        long start = System.nanoTime();
+
+        assertFalse(executorService.awaitTermination(50, TimeUnit.MILLISECONDS));
+
+        long elapsed = System.nanoTime() - start;
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(50 + WAIT_TIME));
         executorService.shutdownNow();
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testExecuteAfterShutdownIsRejected() {
+        FixedExecutorService executorService = newExecutorService(1);
+        executorService.shutdown();
+
+        executorService.execute(NOOP);
+    }
 
+    @Test
+    public void testShutdownDrainsQueuedTasks() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        executorService.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            completed.incrementAndGet();
+        });
+        for (int i = 0; i < 5; i++) {
+            executorService.execute(completed::incrementAndGet);
+        }
+
+        executorService.shutdown();
+        assertFalse(executorService.awaitTermination(20, TimeUnit.MILLISECONDS));
+        assertFalse(executorService.isTerminated());
+        release.countDown();
+
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(6, completed.get());
+        assertTrue(executorService.isTerminated());
+    }
+
+    @Test
+    public void testShutdownNowReturnsExactlyTheQueuedTasks() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger ran = new AtomicInteger();
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                // Interrupted by shutdownNow().
+            }
+        });
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        List<Runnable> queued = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Runnable task = ran::incrementAndGet;
+            queued.add(task);
+            executorService.execute(task);
+        }
+
+        List<Runnable> notRun = executorService.shutdownNow();
+
+        assertEquals(queued, notRun);
         assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(0, ran.get());
+        assertEquals(0, executorService.getQueueDepth());
+    }
+
+    @Test
+    public void testShutdownRacingSubmittersRunsEveryAcceptedTask() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger ran = new AtomicInteger();
+        CountDownLatch submitting = new CountDownLatch(4);
+        List<Thread> submitters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread submitter = new Thread(() -> {
+                submitting.countDown();
+                try {
+                    // Bounded, a task thread per task drains slowly and the shutdown may come late on few CPUs.
+                    while (accepted.get() < 20_000) {
+                        executorService.execute(ran::incrementAndGet);
+                        accepted.incrementAndGet();
+                    }
+                } catch (RejectedExecutionException e) {
+                    // Shut down.
+                }
+            });
+            submitter.start();
+            submitters.add(submitter);
+        }
+        assertTrue(submitting.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        while (accepted.get() < 2_000) {
+            Thread.yield();
+        }
+
+        executorService.shutdown();
+
+        for (Thread submitter : submitters) {
+            submitter.join();
+        }
+        assertTrue(executorService.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(accepted.get(), ran.get());
+    }
+
+    @Test
+    public void testTimedGetHonoursTimeoutUnderLoad() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(executorService.submit(() -> {
+                long spinUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(5);
+                while (System.nanoTime() < spinUntil) {
+                    Thread.yield();
+                }
+                release.await();
+                return 1;
+            }));
+        }
+
+        for (Future<Integer> future : futures.subList(0, 3)) {
+            long start = System.nanoTime();
+            try {
+                future.get(30, TimeUnit.MILLISECONDS);
+                fail();
+            } catch (TimeoutException e) {
+                long elapsed = System.nanoTime() - start;
+                assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(30));
+                assertTrue(elapsed < TimeUnit.MILLISECONDS.toNanos(30 + WAIT_TIME));
+            }
+        }
+        release.countDown();
+        executorService.shutdownNow();
     }
 
     @Test
     public void testExecute() throws Exception {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
 
         TEST_FLAG.clear();
@@ -151,7 +368,7 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testSubmitCallable() throws Exception {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         Callable<Integer> test = () -> {
             return 1;
@@ -164,7 +381,7 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testSubmitRunnable() throws Exception {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         TEST_FLAG.clear();
         TEST_FLAG.add(false);
@@ -176,7 +393,7 @@ public class FixedExecutorServiceTest {
 
     @Test
     public void testSubmitRunnableWithResult() throws Exception {
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         TEST_FLAG.clear();
         TEST_FLAG.add(false);
@@ -188,6 +405,89 @@ public class FixedExecutorServiceTest {
         assertEquals(result_value, result.get());
     }
 
+    @Test
+    public void testContinuationRunsOnCompletingWorker() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicReference<Thread> taskThread = new AtomicReference<>();
+
+        TaskFuture<Integer> future = executorService.submit(() -> {
+            taskThread.set(Thread.currentThread());
+            release.await();
+            return 1;
+        });
+        CompletableFuture<Thread> continuation = future.thenApply(value -> Thread.currentThread());
+        release.countDown();
+
+        Thread continuationThread = continuation.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+        assertSame(taskThread.get(), continuationThread);
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testAsyncContinuationsRunOnPool() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+
+        CompletableFuture<Integer> pipeline = executorService.submit(() -> 1)
+                .thenApplyAsync(value -> value + 1)
+                .thenComposeAsync(value -> executorService.submit(() -> value * 10))
+                .thenApplyAsync(value -> {
+                    assertFalse(Thread.currentThread() instanceof ForkJoinWorkerThread);
+                    return value + 1;
+                }, executorService);
+
+        assertEquals(Integer.valueOf(21), pipeline.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testAsyncContinuationsOfBatchAndScheduledTasksRunOnPool() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+
+        TaskFuture<Integer> batched = (TaskFuture<Integer>) executorService.invokeAll(
+                Collections.singletonList(CALLABLE_TEST)).get(0);
+        TaskFuture<Integer> streamed = (TaskFuture<Integer>) executorService.submitStreaming(
+                Collections.singletonList(CALLABLE_TEST)).take();
+        TaskFuture<Integer> scheduled = (TaskFuture<Integer>) executorService.schedule(CALLABLE_TEST, 1,
+                TimeUnit.MILLISECONDS);
+
+        for (TaskFuture<Integer> future : Arrays.asList(batched, streamed, scheduled)) {
+            Thread thread = future.thenApplyAsync(value -> Thread.currentThread())
+                    .get(WAIT_TIME, TimeUnit.MILLISECONDS);
+            assertFalse(thread instanceof ForkJoinWorkerThread);
+            if (isPooled()) {
+                assertTrue(executorService.threadList.contains(thread));
+            }
+        }
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testCompletableFutureRunsOnPool() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+
+        CompletableFuture<String> future = CompletableFuture
+                .supplyAsync(() -> Thread.currentThread().getName(), executorService)
+                .thenCombineAsync(CompletableFuture.supplyAsync(() -> "b", executorService), (a, b) -> a + b,
+                        executorService);
+
+        assertTrue(future.get(WAIT_TIME, TimeUnit.MILLISECONDS).endsWith("b"));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testFailedTaskCompletesStageExceptionally() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        IllegalStateException failure = new IllegalStateException();
+
+        CompletableFuture<Object> recovered = executorService.submit(() -> {
+            throw failure;
+        }).handle((value, e) -> e);
+
+        assertSame(failure, recovered.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdownNow();
+    }
+
     @Test
     public void testInvokeAll() throws Exception {
         List<Callable<Integer>> tasks = new ArrayList<>();
@@ -196,7 +496,7 @@ public class FixedExecutorServiceTest {
             tasks.add(CALLABLE_TEST);
         }
 
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         List<Future<Integer>> result = executorService.invokeAll(tasks);
 
@@ -214,15 +514,16 @@ public class FixedExecutorServiceTest {
             tasks.add(CALLABLE_TEST);
         }
 
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         List<Future<Integer>> result = executorService.invokeAll(tasks, 1, TimeUnit.NANOSECONDS);
 
+        // The tasks left behind are withdrawn.
         boolean notAllAreExecuted = false;
         for (Future<Integer> future : result) {
-            if (!future.isDone()) {
+            assertTrue(future.isDone());
+            if (future.isCancelled()) {
                 notAllAreExecuted = true;
-                break;
             }
         }
         assertTrue(notAllAreExecuted);
@@ -248,7 +549,7 @@ public class FixedExecutorServiceTest {
             tasks.add(CALLABLE_TEST);
         }
 
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
         Integer result = executorService.invokeAny(tasks);
 
@@ -263,12 +564,2040 @@ public class FixedExecutorServiceTest {
             tasks.add(CALLABLE_TEST);
         }
 
-        FixedExecutorService executorService = new FixedExecutorService(1);
+        FixedExecutorService executorService = newExecutorService(1);
 
-        Integer result = executorService.invokeAny(tasks, 1, TimeUnit.MILLISECONDS);
-        assertNull(result);
-        result = executorService.invokeAny(tasks, WAIT_TIME, TimeUnit.MILLISECONDS);
+        Integer result = executorService.invokeAny(tasks, WAIT_TIME, TimeUnit.MILLISECONDS);
         assertEquals(new Integer(1), result);
     }
 
-}
\ No newline at end of file
+    @Test(expected = TimeoutException.class)
+    public void testInvokeAnyTimesOut() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            executorService.invokeAny(Collections.singletonList(() -> {
+                release.await();
+                return 1;
+            }), 10, TimeUnit.MILLISECONDS);
+        } finally {
+            release.countDown();
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testInvokeAnyCancelsLosers() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        CountDownLatch loserInterrupted = new CountDownLatch(1);
+        AtomicInteger queuedLosersRun = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                loserInterrupted.countDown();
+            }
+            return 2;
+        });
+        tasks.add(() -> {
+            Thread.sleep(20);
+            return 1;
+        });
+        for (int i = 0; i < 10; i++) {
+            tasks.add(() -> {
+                Thread.sleep(200);
+                return queuedLosersRun.incrementAndGet();
+            });
+        }
+
+        assertEquals(new Integer(1), executorService.invokeAny(tasks));
+
+        assertTrue(loserInterrupted.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(0, executorService.getQueueDepth());
+        assertEquals(0, queuedLosersRun.get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testInvokeAnySkipsFailures() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            throw new IllegalStateException();
+        });
+        tasks.add(() -> 1);
+
+        assertEquals(new Integer(1), executorService.invokeAny(tasks));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testInvokeAnyFailsWhenEveryTaskFails() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(() -> {
+                throw new IllegalStateException();
+            });
+        }
+
+        try {
+            executorService.invokeAny(tasks);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        executorService.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvokeAnyRejectsEmptyCollection() throws Exception {
+        newExecutorService(1).invokeAny(Collections.<Callable<Integer>>emptyList());
+    }
+
+    @Test
+    public void testWorkStealingRunsLocalTasksOnPeers() throws Exception {
+        assumeTrue(isPooled());
+
+        FixedExecutorService executorService = builder()
+                .capacity(2)
+                .schedulingMode(SchedulingMode.WORK_STEALING)
+                .build();
+        CountDownLatch children = new CountDownLatch(10);
+
+        Future<Boolean> parent = executorService.submit(() -> {
+            for (int i = 0; i < 10; i++) {
+                executorService.execute(children::countDown);
+            }
+            // The children sit on this worker's deque, only a thief can run them while we block here.
+            return children.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+        });
+
+        assertTrue(parent.get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testShutdownNowReturnsLocalTasks() throws Exception {
+        assumeTrue(isPooled());
+
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .schedulingMode(SchedulingMode.WORK_STEALING)
+                .build();
+        Runnable child = () -> {
+        };
+        CountDownLatch pushed = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executorService.execute(() -> {
+            executorService.execute(child);
+            pushed.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+        });
+        pushed.await();
+
+        List<Runnable> result = executorService.shutdownNow();
+
+        assertEquals(1, result.size());
+        assertSame(child, result.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderRejectsZeroCapacity() {
+        builder().capacity(0);
+    }
+
+    private FixedExecutorService blockedBoundedExecutor(RejectionPolicy policy, CountDownLatch release) throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .queueCapacity(2)
+                .rejectionPolicy(policy)
+                .build();
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+        });
+        started.await();
+        return executorService;
+    }
+
+    @Test
+    public void testBoundedQueueAbort() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FixedExecutorService executorService = blockedBoundedExecutor(RejectionPolicy.ABORT, release);
+
+        executorService.execute(NOOP);
+        executorService.execute(NOOP);
+        try {
+            executorService.execute(NOOP);
+            fail();
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        assertEquals(2, executorService.getQueueDepth());
+        assertEquals(1, executorService.getRejectedTaskCount());
+        release.countDown();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testBoundedQueueCallerRuns() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FixedExecutorService executorService = blockedBoundedExecutor(RejectionPolicy.CALLER_RUNS, release);
+        List<Thread> runner = new ArrayList<>();
+
+        executorService.execute(NOOP);
+        executorService.execute(NOOP);
+        executorService.execute(() -> runner.add(Thread.currentThread()));
+
+        assertEquals(Thread.currentThread(), runner.get(0));
+        assertEquals(1, executorService.getRejectedTaskCount());
+        release.countDown();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testBoundedQueueDiscardOldest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FixedExecutorService executorService = blockedBoundedExecutor(RejectionPolicy.DISCARD_OLDEST, release);
+
+        Future<Integer> oldest = executorService.submit(CALLABLE_TEST);
+        Future<Integer> middle = executorService.submit(CALLABLE_TEST);
+        Future<Integer> newest = executorService.submit(CALLABLE_TEST);
+
+        assertTrue(oldest.isCancelled());
+        release.countDown();
+        assertEquals(new Integer(1), middle.get());
+        assertEquals(new Integer(1), newest.get());
+        assertEquals(1, executorService.getRejectedTaskCount());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testBoundedQueueDiscardNewest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FixedExecutorService executorService = blockedBoundedExecutor(RejectionPolicy.DISCARD_NEWEST, release);
+
+        Future<Integer> oldest = executorService.submit(CALLABLE_TEST);
+        executorService.submit(CALLABLE_TEST);
+        Future<Integer> newest = executorService.submit(CALLABLE_TEST);
+
+        assertTrue(newest.isCancelled());
+        release.countDown();
+        assertEquals(new Integer(1), oldest.get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testBoundedQueueBlock() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FixedExecutorService executorService = blockedBoundedExecutor(RejectionPolicy.BLOCK, release);
+
+        executorService.execute(NOOP);
+        executorService.execute(NOOP);
+        Thread producer = new Thread(() -> executorService.execute(NOOP));
+        producer.start();
+        producer.join(WAIT_TIME / 5);
+        assertTrue(producer.isAlive());
+
+        release.countDown();
+        producer.join(WAIT_TIME);
+        assertFalse(producer.isAlive());
+        assertEquals(1, executorService.getRejectedTaskCount());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testSubmitBatch() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            tasks.add(() -> value);
+        }
+        FixedExecutorService executorService = newExecutorService(2);
+
+        TaskBatch<Integer> batch = executorService.submitBatch(tasks);
+
+        assertEquals(10, batch.size());
+        List<Integer> results = batch.getResults();
+        assertTrue(batch.isDone());
+        assertEquals(0, batch.getRemaining());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(new Integer(i), results.get(i));
+        }
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testSubmitBatchWakesAWorkerPerTask() throws Exception {
+        FixedExecutorService executorService = newExecutorService(3);
+        Thread.sleep(WAIT_TIME / 5);
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(() -> barrier.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        }
+
+        // Every task waits for the other two, so they only complete when all three workers were woken up.
+        TaskBatch<Integer> batch = executorService.submitBatch(tasks);
+
+        assertTrue(batch.await(WAIT_TIME * 2, TimeUnit.MILLISECONDS));
+        batch.getResults();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testSubmitBatchToBoundedQueue() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FixedExecutorService executorService = blockedBoundedExecutor(RejectionPolicy.DISCARD_NEWEST, release);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(CALLABLE_TEST);
+        }
+
+        TaskBatch<Integer> batch = executorService.submitBatch(tasks);
+
+        assertTrue(batch.getFutures().get(2).isCancelled());
+        assertEquals(1, executorService.getRejectedTaskCount());
+        release.countDown();
+        assertTrue(batch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(new Integer(1), batch.getFutures().get(0).get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testSubmitStreamingHandsOutResultsInCompletionOrder() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        tasks.add(() -> {
+            release.await();
+            return 0;
+        });
+        for (int i = 1; i < 4; i++) {
+            int value = i;
+            tasks.add(() -> value);
+        }
+
+        CompletionBatch<Integer> batch = executorService.submitStreaming(tasks);
+
+        List<Integer> first = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            first.add(batch.take().get());
+        }
+        Collections.sort(first);
+        assertEquals(Arrays.asList(1, 2, 3), first);
+        assertNull(batch.poll(WAIT_TIME / 10, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertEquals(Integer.valueOf(0), batch.take().get());
+        assertNull(batch.poll());
+        try {
+            batch.take();
+            fail();
+        } catch (NoSuchElementException e) {
+            // Every result was taken.
+        }
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testSubmitStreamingSharesResultsBetweenPollAndTake() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        List<Callable<Integer>> tasks = Collections.nCopies(8, () -> 1);
+        for (int round = 0; round < 50; round++) {
+            CompletionBatch<Integer> batch = executorService.submitStreaming(tasks);
+            List<Future<Integer>> taken = new CopyOnWriteArrayList<>();
+            Thread taker = new Thread(() -> {
+                try {
+                    while (true) {
+                        taken.add(batch.take());
+                    }
+                } catch (NoSuchElementException e) {
+                    // Every result was taken.
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            taker.start();
+
+            long deadline = System.currentTimeMillis() + WAIT_TIME;
+            while ((taker.isAlive() || taken.size() < tasks.size()) && System.currentTimeMillis() < deadline) {
+                Future<Integer> future = batch.poll();
+                if (future != null) {
+                    taken.add(future);
+                }
+            }
+            taker.join(WAIT_TIME);
+
+            assertFalse("take() waits for a result that poll() took", taker.isAlive());
+            assertEquals(tasks.size(), new HashSet<>(taken).size());
+            assertEquals(tasks.size(), taken.size());
+        }
+        executorService.shutdown();
+    }
+
+    private static final class RecordingSubscriber<T> implements CompletionBatch.Subscriber<T> {
+        final List<T> items = new CopyOnWriteArrayList<>();
+        final CountDownLatch terminated = new CountDownLatch(1);
+        final long initialRequest;
+        volatile CompletionBatch.Subscription subscription;
+        volatile Throwable error;
+        volatile boolean completed;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(CompletionBatch.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(initialRequest);
+        }
+
+        @Override
+        public void onNext(T item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            terminated.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            terminated.countDown();
+        }
+    }
+
+    @Test
+    public void testSubmitStreamingPublishesOnDemand() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            tasks.add(() -> value);
+        }
+        CompletionBatch<Integer> batch = executorService.submitStreaming(tasks);
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>(1);
+
+        batch.subscribe(subscriber);
+
+        assertTrue(batch.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, subscriber.items.size());
+        assertFalse(subscriber.completed);
+        subscriber.subscription.request(100);
+        assertTrue(subscriber.terminated.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(subscriber.completed);
+        List<Integer> items = new ArrayList<>(subscriber.items);
+        Collections.sort(items);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.valueOf(i), items.get(i));
+        }
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testSubmitStreamingPublishesFailure() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        IllegalStateException failure = new IllegalStateException();
+        CompletionBatch<Integer> batch = executorService.submitStreaming(Arrays.asList(() -> 1, () -> {
+            throw failure;
+        }));
+        RecordingSubscriber<Integer> subscriber = new RecordingSubscriber<>(Long.MAX_VALUE);
+        RecordingSubscriber<Integer> second = new RecordingSubscriber<>(Long.MAX_VALUE);
+
+        batch.subscribe(subscriber);
+        batch.subscribe(second);
+
+        assertTrue(subscriber.terminated.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertSame(failure, subscriber.error);
+        assertEquals(Collections.singletonList(1), subscriber.items);
+        assertTrue(second.error instanceof IllegalStateException);
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testCapacityLimitsConcurrency() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return 1;
+            });
+        }
+
+        executorService.invokeAll(tasks);
+
+        assertEquals(2, maxRunning.get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testExecuteFailureGoesToHandler() throws Exception {
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .uncaughtExceptionHandler((thread, e) -> failures.add(e))
+                .build();
+        RuntimeException exception = new RuntimeException("Test exception");
+        CountDownLatch done = new CountDownLatch(1);
+
+        executorService.execute(() -> {
+            throw exception;
+        });
+        executorService.execute(done::countDown);
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, failures.size());
+        assertSame(exception, failures.get(0));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testFailedTaskDoesNotKillWorker() throws Exception {
+        assumeTrue(isPooled());
+
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .uncaughtExceptionHandler((thread, e) -> {
+                })
+                .build();
+        Thread worker = executorService.threadList.get(0);
+        CountDownLatch done = new CountDownLatch(1);
+
+        executorService.execute(() -> {
+            throw new Error("Test error");
+        });
+        executorService.execute(() -> Thread.currentThread().interrupt());
+        executorService.execute(done::countDown);
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, executorService.threadList.size());
+        assertSame(worker, executorService.threadList.get(0));
+        assertTrue(worker.isAlive());
+        assertEquals(0, executorService.getReplacedWorkerCount());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testSubmitFailureIsReportedByFuture() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        RuntimeException exception = new RuntimeException("Test exception");
+
+        Future<Integer> failed = executorService.submit(() -> {
+            throw exception;
+        });
+        Future<Integer> succeeded = executorService.submit(CALLABLE_TEST);
+
+        try {
+            failed.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+        assertEquals(new Integer(1), succeeded.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testWorkerIsReplacedWhenHandlerThrows() throws Exception {
+        assumeTrue(isPooled());
+
+        FixedExecutorService executorService = builder()
+                .capacity(2)
+                .uncaughtExceptionHandler((thread, e) -> {
+                    throw new IllegalStateException(e);
+                })
+                .build();
+        Thread.UncaughtExceptionHandler defaultHandler = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler((thread, e) -> {
+        });
+        try {
+            executorService.execute(() -> {
+                throw new RuntimeException("Test exception");
+            });
+            long deadline = System.currentTimeMillis() + WAIT_TIME;
+            while (executorService.getReplacedWorkerCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(defaultHandler);
+        }
+
+        assertEquals(1, executorService.getReplacedWorkerCount());
+        assertEquals(2, executorService.threadList.size());
+        CountDownLatch done = new CountDownLatch(2);
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        for (int i = 0; i < 2; i++) {
+            executorService.execute(() -> {
+                try {
+                    barrier.await(WAIT_TIME, TimeUnit.MILLISECONDS);
+                    done.countDown();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        }
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testPoolTerminatesWhenReplacementCannotBeCreated() throws Exception {
+        assumeTrue(isPooled());
+        AtomicInteger created = new AtomicInteger();
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .uncaughtExceptionHandler((thread, e) -> {
+                    throw new IllegalStateException(e);
+                })
+                .workerThreadFactory(runnable -> {
+                    if (created.incrementAndGet() > 1) {
+                        throw new IllegalStateException("Test exception");
+                    }
+                    Thread thread = new Thread(runnable);
+                    // Keeps the worker that goes down quiet.
+                    thread.setUncaughtExceptionHandler((t, e) -> {
+                    });
+                    return thread;
+                })
+                .build();
+        Thread worker = executorService.threadList.get(0);
+
+        executorService.execute(() -> {
+            throw new RuntimeException("Test exception");
+        });
+        worker.join(WAIT_TIME);
+
+        assertFalse(worker.isAlive());
+        assertEquals(2, created.get());
+        assertEquals(0, executorService.getReplacedWorkerCount());
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testBuilderRejectsNullHandler() {
+        FixedExecutorService.builder().uncaughtExceptionHandler(null);
+    }
+
+    @Test
+    public void testScheduleRunnable() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        CountDownLatch done = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        ScheduledFuture<?> future = executorService.schedule(done::countDown, 30, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+        assertNull(future.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testScheduleCallable() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+
+        ScheduledFuture<Integer> future = executorService.schedule(() -> 1, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(future.getDelay(TimeUnit.MILLISECONDS) <= 10);
+        assertEquals(new Integer(1), future.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testScheduledTasksNeverFireEarly() throws Exception {
+        FixedExecutorService executorService = newExecutorService(2);
+        Random random = new Random();
+        int count = 500;
+        CountDownLatch done = new CountDownLatch(count);
+        AtomicInteger early = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            long delay = TimeUnit.MILLISECONDS.toNanos(random.nextInt(100));
+            long due = System.nanoTime() + delay;
+            executorService.schedule(() -> {
+                if (System.nanoTime() < due) {
+                    early.incrementAndGet();
+                }
+                done.countDown();
+            }, delay, TimeUnit.NANOSECONDS);
+        }
+
+        assertTrue(done.await(WAIT_TIME * 2, TimeUnit.MILLISECONDS));
+        assertEquals(0, early.get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testCancelScheduledTask() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        ScheduledFuture<?> future = executorService.schedule(runs::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        assertTrue(future.cancel(false));
+        Thread.sleep(50);
+
+        assertTrue(future.isCancelled());
+        assertEquals(0, runs.get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testScheduleAtFixedRate() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        CountDownLatch runs = new CountDownLatch(5);
+        long start = System.nanoTime();
+
+        ScheduledFuture<?> future = executorService.scheduleAtFixedRate(runs::countDown, 0, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(runs.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40));
+        assertFalse(future.isDone());
+        assertTrue(future.cancel(false));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testScheduleWithFixedDelay() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(3);
+
+        ScheduledFuture<?> future = executorService.scheduleWithFixedDelay(() -> {
+            runs.incrementAndGet();
+            done.countDown();
+        }, 0, 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        future.cancel(false);
+        int runsAfterCancel = runs.get();
+        Thread.sleep(50);
+        assertTrue(runs.get() <= runsAfterCancel + 1);
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testPeriodicTaskStopsOnFailure() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        AtomicInteger runs = new AtomicInteger();
+        RuntimeException exception = new RuntimeException("Test exception");
+
+        ScheduledFuture<?> future = executorService.scheduleAtFixedRate(() -> {
+            if (runs.incrementAndGet() == 2) {
+                throw exception;
+            }
+        }, 0, 5, TimeUnit.MILLISECONDS);
+
+        try {
+            future.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+        Thread.sleep(30);
+        assertEquals(2, runs.get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testShutdownCancelsScheduledTasks() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        ScheduledFuture<?> future = executorService.schedule(NOOP, 1, TimeUnit.HOURS);
+
+        executorService.shutdown();
+
+        assertTrue(future.isCancelled());
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testShutdownNowReturnsScheduledTasks() {
+        FixedExecutorService executorService = newExecutorService(1);
+        ScheduledFuture<?> future = executorService.schedule(NOOP, 1, TimeUnit.HOURS);
+
+        List<Runnable> notRun = executorService.shutdownNow();
+
+        assertEquals(1, notRun.size());
+        assertSame(future, notRun.get(0));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void testScheduleAfterShutdown() {
+        FixedExecutorService executorService = newExecutorService(1);
+        executorService.shutdown();
+        executorService.schedule(NOOP, 1, TimeUnit.SECONDS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testScheduleAtFixedRateRejectsZeroPeriod() {
+        FixedExecutorService executorService = newExecutorService(1);
+        try {
+            executorService.scheduleAtFixedRate(NOOP, 0, 0, TimeUnit.SECONDS);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStrictPriorityLanes() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .strictPriorityLanes()
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        List<Priority> order = new CopyOnWriteArrayList<>();
+
+        executorService.execute(() -> order.add(Priority.LOW), Priority.LOW);
+        executorService.execute(() -> order.add(Priority.NORMAL));
+        Future<Priority> high = executorService.submit(() -> {
+            order.add(Priority.HIGH);
+            return Priority.HIGH;
+        }, Priority.HIGH);
+
+        assertEquals(1, executorService.getQueueDepth(Priority.LOW));
+        assertEquals(1, executorService.getQueueDepth(Priority.HIGH));
+        assertEquals(3, executorService.getQueueDepth());
+        release.countDown();
+        assertEquals(Priority.HIGH, high.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(Priority.HIGH, Priority.NORMAL, Priority.LOW), order);
+    }
+
+    @Test
+    public void testSubmitBatchWithPriority() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(2)
+                .priorityLanes(4, 2, 1)
+                .build();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(() -> 1);
+        }
+
+        TaskBatch<Integer> batch = executorService.submitBatch(tasks, Priority.LOW);
+
+        assertEquals(10, batch.getResults().size());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testPriorityIgnoredWithoutLanes() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        executorService.execute(done::countDown, Priority.HIGH);
+
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdownNow();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLaneDepthWithoutLanes() {
+        FixedExecutorService executorService = newExecutorService(1);
+        try {
+            executorService.getQueueDepth(Priority.HIGH);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderRejectsZeroWeight() {
+        FixedExecutorService.builder().priorityLanes(1, 0, 1);
+    }
+
+    @Test
+    public void testQuietTenantJumpsNoisyBacklog() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .tenant("noisy", 1)
+                .tenant("quiet", 1)
+                .build();
+        Tenant noisy = executorService.getTenant("noisy");
+        Tenant quiet = executorService.getTenant("quiet");
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        executorService.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, noisy);
+        List<Callable<Boolean>> flood = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            flood.add(() -> order.add("noisy"));
+        }
+        TaskBatch<Boolean> batch = executorService.submitBatch(flood, noisy);
+        Future<Boolean> quietTask = executorService.submit(() -> order.add("quiet"), quiet);
+
+        release.countDown();
+
+        assertTrue(quietTask.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        batch.await();
+        assertEquals(51, order.size());
+        assertEquals(0, order.indexOf("quiet"));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testTenantConcurrencyLimit() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(4)
+                .tenant("capped", 1, 1)
+                .build();
+        Tenant capped = executorService.getTenant("capped");
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            tasks.add(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(1);
+                return running.decrementAndGet();
+            });
+        }
+
+        TaskBatch<Integer> batch = executorService.submitBatch(tasks, capped);
+        // Untagged tasks still find free workers.
+        Future<?> other = executorService.submit(() -> {
+        });
+
+        other.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+        assertTrue(batch.await(10 * WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, maxRunning.get());
+        // A task is accounted after its future completes.
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(20, capped.getCompletedTaskCount());
+        assertEquals(0, capped.getActiveCount());
+    }
+
+    @Test
+    public void testShutdownNowReturnsTasksOfTenantAtLimit() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(2)
+                .tenant("capped", 1, 1)
+                .build();
+        Tenant capped = executorService.getTenant("capped");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, capped);
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        List<Runnable> queued = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Runnable task = () -> {
+            };
+            queued.add(task);
+            executorService.execute(task, capped);
+        }
+
+        List<Runnable> result = executorService.shutdownNow();
+
+        assertEquals(queued, result);
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testTenantMetrics() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(2)
+                .metricsEnabled(true)
+                .tenant("a", 2)
+                .build();
+        Tenant tenant = executorService.getTenant("a");
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(() -> 1);
+        }
+
+        executorService.invokeAll(tasks, tenant);
+        executorService.execute(() -> {
+        });
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        assertEquals(10, tenant.getCompletedTaskCount());
+        assertEquals(10, tenant.getQueueWaitTime().getCount());
+        assertEquals(10, tenant.getExecutionTime().getCount());
+        assertEquals(1, executorService.getTenant(Tenant.DEFAULT).getCompletedTaskCount());
+        assertEquals(11, executorService.getMetrics().snapshot().getQueueWaitTime().getCount());
+    }
+
+    @Test
+    public void testTenantValidation() {
+        FixedExecutorService executorService = builder().capacity(1).tenant("a", 1).build();
+        FixedExecutorService other = builder().capacity(1).tenant("a", 1).build();
+        FixedExecutorService plain = newExecutorService(1);
+        try {
+            try {
+                executorService.getTenant("b");
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                executorService.execute(() -> {
+                }, other.getTenant("a"));
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+            try {
+                executorService.getTenant(Tenant.DEFAULT).getQueueWaitTime();
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+            try {
+                plain.getTenant(Tenant.DEFAULT);
+                fail();
+            } catch (IllegalStateException expected) {
+            }
+        } finally {
+            executorService.shutdownNow();
+            other.shutdownNow();
+            plain.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderRejectsTenantsWithPriorityLanes() {
+        FixedExecutorService.builder().tenant("a", 1).priorityLanes(2, 1, 1).build();
+    }
+
+    @Test
+    public void testDeadlineSchedulingRunsEarliestDeadlineFirst() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .deadlineScheduling(10, TimeUnit.SECONDS)
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        List<String> order = new CopyOnWriteArrayList<>();
+
+        executorService.execute(() -> order.add("none"));
+        executorService.executeWithDeadline(() -> order.add("late"), 3, TimeUnit.SECONDS);
+        executorService.executeWithDeadline(() -> order.add("early"), 1, TimeUnit.SECONDS);
+        Future<String> middle = executorService.submitWithDeadline(() -> {
+            order.add("middle");
+            return "middle";
+        }, 2, TimeUnit.SECONDS);
+
+        assertEquals(4, executorService.getQueueDepth());
+        release.countDown();
+        assertEquals("middle", middle.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("early", "middle", "late", "none"), order);
+        assertEquals(0, executorService.getShedTaskCount());
+    }
+
+    @Test
+    public void testExpiredTasksAreShed() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .deadlineScheduling(0, TimeUnit.SECONDS)
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        AtomicInteger executed = new AtomicInteger();
+
+        Future<Integer> expired = executorService.submitWithDeadline(executed::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+        executorService.executeWithDeadline(executed::incrementAndGet, 10, TimeUnit.MILLISECONDS);
+        Future<Integer> plain = executorService.submit(executed::incrementAndGet);
+        Thread.sleep(50);
+        release.countDown();
+
+        try {
+            expired.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        assertEquals(1, (int) plain.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, executed.get());
+        assertEquals(2, executorService.getShedTaskCount());
+    }
+
+    @Test
+    public void testTimedInvokeAllWithdrawsTasksLeftBehind() throws Exception {
+        for (boolean deadlineScheduling : new boolean[]{false, true}) {
+            FixedExecutorService.Builder builder = builder().capacity(1);
+            if (deadlineScheduling) {
+                builder.deadlineScheduling(1, TimeUnit.SECONDS);
+            }
+            FixedExecutorService executorService = builder.build();
+            CountDownLatch release = new CountDownLatch(1);
+            CountDownLatch started = new CountDownLatch(1);
+            executorService.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+            AtomicInteger executed = new AtomicInteger();
+            List<Callable<Integer>> tasks = Collections.nCopies(3, executed::incrementAndGet);
+
+            List<Future<Integer>> futures = executorService.invokeAll(tasks, 20, TimeUnit.MILLISECONDS);
+
+            for (Future<Integer> future : futures) {
+                assertTrue(future.isCancelled());
+            }
+            assertEquals(0, executorService.getQueueDepth());
+            release.countDown();
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+            assertEquals(0, executed.get());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testDeadlineWithoutDeadlineScheduling() {
+        FixedExecutorService executorService = newExecutorService(1);
+        try {
+            executorService.executeWithDeadline(NOOP, 1, TimeUnit.SECONDS);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderRejectsDeadlineSchedulingWithPriorityLanes() {
+        FixedExecutorService.builder().deadlineScheduling(1, TimeUnit.SECONDS).strictPriorityLanes().build();
+    }
+
+    @Test
+    public void testTasksOverTheConcurrencyLimitWaitInTheQueue() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(4)
+                .adaptiveConcurrency(1, 2)
+                .concurrencyWindow(1, TimeUnit.HOURS)
+                .build();
+        ConcurrencyLimiter limiter = executorService.getConcurrencyLimiter();
+        AtomicInteger running = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+
+        for (int i = 0; i < 4; i++) {
+            executorService.execute(() -> {
+                running.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Thread.sleep(50);
+        assertEquals(2, running.get());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(2, executorService.getQueueDepth());
+        release.countDown();
+        assertTrue(done.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    public void testShutdownDrainsTasksHeldBackByConcurrencyLimit() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(4)
+                .adaptiveConcurrency(1, 1)
+                .concurrencyWindow(1, TimeUnit.HOURS)
+                .build();
+        AtomicInteger executed = new AtomicInteger();
+
+        for (int i = 0; i < 20; i++) {
+            executorService.execute(() -> {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                executed.incrementAndGet();
+            });
+        }
+        executorService.shutdown();
+
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(20, executed.get());
+    }
+
+    @Test
+    public void testAdaptiveConcurrencySettlesWhereBackendStartsToQueue() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(16)
+                .adaptiveConcurrency(1, 1)
+                .concurrencyWindow(10, TimeUnit.MILLISECONDS)
+                .build();
+        ConcurrencyLimiter limiter = executorService.getConcurrencyLimiter();
+        // Serves 2 calls at once in a millisecond, further calls slow down every call.
+        AtomicInteger calls = new AtomicInteger();
+        Runnable call = () -> {
+            int concurrency = calls.incrementAndGet();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1) * Math.max(concurrency, 2) / 2);
+            calls.decrementAndGet();
+        };
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (System.nanoTime() - end < 0L) {
+            while (executorService.getQueueDepth() < 32) {
+                executorService.execute(call);
+            }
+            Thread.sleep(1);
+        }
+
+        int limit = limiter.getLimit();
+        executorService.shutdownNow();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(limiter.toString(), limit >= 2 && limit <= 12 || limiter.isProbing());
+        assertTrue(limiter.getNoLoadExecutionTimeNanos() >= TimeUnit.MILLISECONDS.toNanos(1));
+        assertTrue(limiter.getThrottledCount() > 0L);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testConcurrencyLimiterWithoutAdaptiveConcurrency() {
+        FixedExecutorService executorService = newExecutorService(1);
+        try {
+            executorService.getConcurrencyLimiter();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitialConcurrencyLimitMustNotExceedCapacity() {
+        builder().capacity(2).adaptiveConcurrency(1, 3).build();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInitialConcurrencyLimitMustNotBeBelowMinimum() {
+        FixedExecutorService.builder().adaptiveConcurrency(2, 1);
+    }
+
+    @Test
+    public void testElasticPoolStartsWorkersLazily() throws Exception {
+        assumeTrue(isPooled());
+        FixedExecutorService executorService = builder().elastic(2, 4).build();
+
+        assertEquals(0, executorService.getPoolSize());
+        assertTrue(executorService.threadList.isEmpty());
+
+        assertEquals(1, (int) executorService.submit(() -> 1).get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, executorService.getPoolSize());
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testElasticPoolGrowsWithQueueDepthAndShrinksAfterKeepAlive() throws Exception {
+        assumeTrue(isPooled());
+        FixedExecutorService executorService = builder()
+                .elastic(1, 3)
+                .keepAlive(50, TimeUnit.MILLISECONDS)
+                .scaleUpThreshold(1, 1, TimeUnit.HOURS)
+                .build();
+        CountDownLatch started = new CountDownLatch(3);
+        CountDownLatch release = new CountDownLatch(1);
+
+        for (int i = 0; i < 3; i++) {
+            executorService.execute(() -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(3, executorService.getPoolSize());
+        release.countDown();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        // A retiring worker gives up its slot first and leaves the thread list on its way out.
+        while ((executorService.getPoolSize() > 1 || executorService.threadList.size() > 1)
+                && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, executorService.getPoolSize());
+        assertEquals(1, executorService.threadList.size());
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testElasticPoolGrowsWhenQueuedTasksWaitTooLong() throws Exception {
+        assumeTrue(isPooled());
+        FixedExecutorService executorService = builder()
+                .elastic(1, 2)
+                .scaleUpThreshold(1_000, 20, TimeUnit.MILLISECONDS)
+                .build();
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // The only core worker is blocked, nobody else submits: the timer has to notice the backlog.
+        Future<Integer> queued = executorService.submit(() -> 1);
+
+        assertEquals(1, (int) queued.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(2, executorService.getPoolSize());
+        release.countDown();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testFixedPoolStartsAllWorkers() {
+        assumeTrue(isPooled());
+        FixedExecutorService executorService = newExecutorService(3);
+
+        assertEquals(3, executorService.getPoolSize());
+        executorService.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBuilderRejectsCoreAboveMax() {
+        FixedExecutorService.builder().elastic(4, 2);
+    }
+
+    @Test
+    public void testWorkerThreadFactory() throws Exception {
+        assumeTrue(isPooled());
+        AtomicInteger created = new AtomicInteger();
+        FixedExecutorService executorService = builder()
+                .capacity(2)
+                .workerThreadFactory(runnable -> new Thread(runnable, "custom-" + created.incrementAndGet()))
+                .build();
+
+        String name = executorService.submit(() -> Thread.currentThread().getName()).get();
+
+        assertEquals(2, created.get());
+        assertTrue(name, name.startsWith("custom-"));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testWorkersAreNamedByDefault() throws Exception {
+        assumeTrue(isPooled());
+        FixedExecutorService executorService = newExecutorService(1);
+
+        String name = executorService.submit(() -> Thread.currentThread().getName()).get();
+
+        assertTrue(name, name.matches("fixed-executor-\\d+-worker-1"));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testPlacementBindsEveryWorker() throws Exception {
+        assumeTrue(isPooled());
+        List<Integer> bound = new CopyOnWriteArrayList<>();
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        FixedExecutorService executorService = builder()
+                .capacity(3)
+                .workerPlacement(workerIndex -> {
+                    bound.add(workerIndex);
+                    if (workerIndex == 1) {
+                        throw new IllegalStateException("no such CPU");
+                    }
+                })
+                .uncaughtExceptionHandler((thread, e) -> failures.add(e))
+                .build();
+
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            tasks.add(() -> 1);
+        }
+        executorService.invokeAll(tasks);
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        List<Integer> indexes = new ArrayList<>(bound);
+        Collections.sort(indexes);
+        assertEquals(Arrays.asList(0, 1, 2), indexes);
+        assertEquals(1, failures.size());
+        assertEquals(0, executorService.getReplacedWorkerCount());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testBuilderRejectsNullPlacement() {
+        FixedExecutorService.builder().workerPlacement(null);
+    }
+
+    @Test
+    public void testKeyedTasksRunInOrderPerKey() throws Exception {
+        FixedExecutorService executorService = builder().capacity(4).serialLanes(4).build();
+        int keys = 8;
+        int tasksPerKey = 500;
+        List<List<Integer>> executed = new ArrayList<>();
+        for (int key = 0; key < keys; key++) {
+            executed.add(Collections.synchronizedList(new ArrayList<>()));
+        }
+        CountDownLatch done = new CountDownLatch(keys * tasksPerKey);
+
+        for (int i = 0; i < tasksPerKey; i++) {
+            for (int key = 0; key < keys; key++) {
+                List<Integer> log = executed.get(key);
+                int sequence = i;
+                executorService.execute("account-" + key, () -> {
+                    log.add(sequence);
+                    done.countDown();
+                });
+            }
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (List<Integer> log : executed) {
+            assertEquals(tasksPerKey, log.size());
+            for (int i = 0; i < tasksPerKey; i++) {
+                assertEquals(i, (int) log.get(i));
+            }
+        }
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testDifferentKeysRunInParallel() throws Exception {
+        FixedExecutorService executorService = builder().capacity(2).serialLanes(2).build();
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.execute(0, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        Future<Integer> otherKey = executorService.submit(1, () -> 1);
+
+        assertEquals(1, (int) otherKey.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        Future<Integer> sameKey = executorService.submit(0, () -> 2);
+        try {
+            sameKey.get(50, TimeUnit.MILLISECONDS);
+            fail("ran before the earlier task of its key");
+        } catch (TimeoutException expected) {
+        }
+        release.countDown();
+        assertEquals(2, (int) sameKey.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testKeyedFailureDoesNotStopLane() throws Exception {
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .uncaughtExceptionHandler((thread, e) -> failures.add(e))
+                .build();
+
+        executorService.execute("key", () -> {
+            throw new IllegalStateException("Test exception");
+        });
+        Future<Integer> next = executorService.submit("key", () -> 1);
+
+        assertEquals(1, (int) next.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(1, failures.size());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testShutdownNowReturnsQueuedKeyedTasks() throws Exception {
+        FixedExecutorService executorService = builder().capacity(1).build();
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute("key", () -> {
+            started.countDown();
+            try {
+                Thread.sleep(WAIT_TIME * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        List<Runnable> queued = Arrays.asList(NOOP, () -> {
+        }, () -> {
+        });
+        for (Runnable task : queued) {
+            executorService.execute("key", task);
+        }
+
+        List<Runnable> pending = executorService.shutdownNow();
+
+        assertEquals(queued, pending);
+    }
+
+    @Test
+    public void testKeyedTaskRunsOnSubmitterWhenQueueIsFull() throws Exception {
+        assumeTrue(isPooled());
+        FixedExecutorService executorService = builder().capacity(1).queueCapacity(1).build();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        while (executorService.getQueueDepth() < executorService.getQueueCapacity()) {
+            executorService.execute(NOOP);
+        }
+
+        Future<Thread> keyed = executorService.submit("key", Thread::currentThread);
+
+        assertSame(Thread.currentThread(), keyed.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        release.countDown();
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testDiscardOldestPassesOverSerialLanes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FixedExecutorService executorService = blockedBoundedExecutor(RejectionPolicy.DISCARD_OLDEST, release);
+        AtomicInteger keyed = new AtomicInteger();
+
+        executorService.execute("key", keyed::incrementAndGet);
+        Future<Integer> oldest = executorService.submit(CALLABLE_TEST);
+        Future<Integer> newest = executorService.submit(CALLABLE_TEST);
+        executorService.execute("key", keyed::incrementAndGet);
+
+        assertTrue(oldest.isCancelled());
+        release.countDown();
+        assertEquals(new Integer(1), newest.get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        // The lane is still scheduled properly, later tasks of its key run as well.
+        Future<?> later = executorService.submit("key", keyed::incrementAndGet);
+        later.get(WAIT_TIME, TimeUnit.MILLISECONDS);
+        assertEquals(3, keyed.get());
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testDiscardOldestDropsIncomingTaskBehindSerialLanes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        FixedExecutorService executorService = blockedBoundedExecutor(RejectionPolicy.DISCARD_OLDEST, release);
+        AtomicInteger keyed = new AtomicInteger();
+
+        executorService.execute("a", keyed::incrementAndGet);
+        executorService.execute("b", keyed::incrementAndGet);
+        Future<Integer> incoming = executorService.submit(CALLABLE_TEST);
+
+        assertTrue(incoming.isCancelled());
+        assertEquals(2, executorService.getQueueDepth());
+        release.countDown();
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(2, keyed.get());
+    }
+
+    @Test
+    public void testCoalesceMergesQueuedItems() throws Exception {
+        FixedExecutorService executorService = builder().capacity(1).build();
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        List<List<Integer>> first = new CopyOnWriteArrayList<>();
+        List<List<Integer>> second = new CopyOnWriteArrayList<>();
+
+        for (int i = 0; i < 10; i++) {
+            executorService.coalesce("first", i, first::add);
+            executorService.coalesce("second", -i, second::add);
+        }
+        release.countDown();
+        executorService.shutdown();
+
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(Collections.singletonList(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)), first);
+        assertEquals(Collections.singletonList(Arrays.asList(0, -1, -2, -3, -4, -5, -6, -7, -8, -9)), second);
+        assertTrue(executorService.coalescing.isEmpty());
+    }
+
+    @Test
+    public void testCoalesceStartsNewBatchOnceRunning() throws Exception {
+        FixedExecutorService executorService = builder().capacity(2).build();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger running = new AtomicInteger();
+        List<List<Integer>> batches = new CopyOnWriteArrayList<>();
+        Consumer<List<Integer>> sink = batch -> {
+            assertEquals(1, running.incrementAndGet());
+            batches.add(batch);
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        };
+
+        executorService.coalesce("sink", 1, sink);
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.coalesce("sink", 2, sink);
+        executorService.coalesce("sink", 3, sink);
+        // The second batch waits for the first on the serial lane of the key.
+        Thread.sleep(50);
+        assertEquals(1, batches.size());
+        release.countDown();
+        executorService.shutdown();
+
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList(Collections.singletonList(1), Arrays.asList(2, 3)), batches);
+    }
+
+    @Test
+    public void testCoalesceRejectedAfterShutdown() {
+        FixedExecutorService executorService = newExecutorService(1);
+        executorService.shutdown();
+        try {
+            executorService.coalesce("sink", 1, batch -> fail());
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+        assertTrue(executorService.coalescing.isEmpty());
+    }
+
+    @Test
+    public void testDrainBatchRunsEveryTask() throws Exception {
+        assumeTrue(isPooled());
+        int[] queueCapacities = {FixedExecutorService.UNBOUNDED, 64};
+        for (SchedulingMode mode : SchedulingMode.values()) {
+            for (int queueCapacity : queueCapacities) {
+                FixedExecutorService executorService = builder()
+                        .capacity(2)
+                        .schedulingMode(mode)
+                        .queueCapacity(queueCapacity)
+                        .rejectionPolicy(RejectionPolicy.BLOCK)
+                        .drainBatchSize(16)
+                        .build();
+                AtomicInteger executed = new AtomicInteger();
+
+                for (int i = 0; i < 10_000; i++) {
+                    executorService.execute(executed::incrementAndGet);
+                }
+                executorService.shutdown();
+
+                assertTrue(executorService.awaitTermination(WAIT_TIME * 4, TimeUnit.MILLISECONDS));
+                assertEquals(10_000, executed.get());
+            }
+        }
+    }
+
+    @Test
+    public void testShutdownNowLeavesDrainedBatchToWorker() throws Exception {
+        assumeTrue(isPooled());
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .queueCapacity(16)
+                .drainBatchSize(4)
+                .build();
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executorService.execute(() -> {
+            blocking.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocking.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(WAIT_TIME * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            executorService.execute(executed::incrementAndGet);
+        }
+        release.countDown();
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+
+        List<Runnable> pending = executorService.shutdownNow();
+
+        // The worker took the sleeping task with the next three in one batch.
+        assertEquals(2, pending.size());
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(3, executed.get());
+    }
+
+    @Test
+    public void testDrainedBatchOutlivesThrowingHandler() throws Exception {
+        assumeTrue(isPooled());
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .queueCapacity(16)
+                .drainBatchSize(4)
+                .uncaughtExceptionHandler((thread, e) -> {
+                    throw new IllegalStateException(e);
+                })
+                .workerThreadFactory(runnable -> {
+                    Thread thread = new Thread(runnable);
+                    // Keeps the worker that goes down quiet.
+                    thread.setUncaughtExceptionHandler((t, e) -> {
+                    });
+                    return thread;
+                })
+                .build();
+        CountDownLatch blocking = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        executorService.execute(() -> {
+            blocking.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(blocking.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.execute(() -> {
+            throw new RuntimeException("Test exception");
+        });
+        for (int i = 0; i < 3; i++) {
+            executorService.execute(executed::incrementAndGet);
+        }
+        release.countDown();
+        executorService.shutdown();
+
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(3, executed.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDrainBatchSizeMustBePositive() {
+        FixedExecutorService.builder().drainBatchSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDrainBatchesExcludeTenants() {
+        FixedExecutorService.builder().drainBatchSize(8).tenant("a", 1).build();
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testKeyedExecuteRejectsNullKey() {
+        FixedExecutorService executorService = newExecutorService(1);
+        try {
+            executorService.execute(null, NOOP);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRecycledTaskWrappers() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(2)
+                .queueCapacity(64)
+                .rejectionPolicy(RejectionPolicy.BLOCK)
+                .priorityLanes(2, 1, 1)
+                .metricsEnabled(true)
+                .latencySamplingInterval(1)
+                .recycleTaskWrappers(true)
+                .build();
+        int taskCount = 10_000;
+        AtomicInteger executed = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(taskCount);
+        Runnable task = () -> {
+            executed.incrementAndGet();
+            done.countDown();
+        };
+
+        for (int i = 0; i < taskCount; i++) {
+            executorService.execute(task, Priority.values()[i % 3]);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(taskCount, executed.get());
+        // The last tasks are recorded after they count down, termination waits for that.
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(taskCount, executorService.getMetrics().snapshot().getQueueWaitTime().getCount());
+    }
+
+    @Test
+    public void testShutdownNowUnwrapsRecycledWrappers() throws Exception {
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .metricsEnabled(true)
+                .latencySamplingInterval(1)
+                .recycleTaskWrappers(true)
+                .build();
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(WAIT_TIME * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.execute(NOOP);
+
+        assertEquals(Collections.singletonList(NOOP), executorService.shutdownNow());
+    }
+
+    private static final class Sum extends RecursiveTask<Long> {
+        private final long[] values;
+        private final int from;
+        private final int to;
+
+        Sum(long[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= 16) {
+                long sum = 0L;
+                for (int i = from; i < to; i++) {
+                    if (values[i] < 0L) {
+                        throw new IllegalStateException("negative value at " + i);
+                    }
+                    sum += values[i];
+                }
+                return sum;
+            }
+            int middle = (from + to) >>> 1;
+            Sum left = new Sum(values, from, middle);
+            Sum right = new Sum(values, middle, to);
+            left.fork();
+            return right.invoke() + left.join();
+        }
+    }
+
+    private static long[] values(int count) {
+        long[] values = new long[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = i;
+        }
+        return values;
+    }
+
+    @Test
+    public void testRecursiveTaskJoinDoesNotExhaustPool() throws Exception {
+        FixedExecutorService executorService = newExecutorService(1);
+        long[] values = values(10_000);
+
+        assertEquals(Long.valueOf(10_000L * 9_999L / 2), executorService.invoke(new Sum(values, 0, values.length)));
+        assertEquals(Long.valueOf(10_000L * 9_999L / 2),
+                executorService.submit(new Sum(values, 0, values.length)).get(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRecursiveTaskWithWorkStealing() throws Exception {
+        assumeTrue(isPooled());
+
+        FixedExecutorService executorService = builder()
+                .capacity(2)
+                .schedulingMode(SchedulingMode.WORK_STEALING)
+                .build();
+        long[] values = values(100_000);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Long.valueOf(100_000L * 99_999L / 2),
+                    executorService.invoke(new Sum(values, 0, values.length)));
+        }
+        assertEquals(0, executorService.getQueueDepth());
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRecursiveTaskJoinRethrowsFailure() {
+        FixedExecutorService executorService = newExecutorService(2);
+        long[] values = values(1_000);
+        values[700] = -1L;
+
+        try {
+            executorService.invoke(new Sum(values, 0, values.length));
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("negative value at 700", e.getMessage());
+        }
+        executorService.shutdown();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRecursiveTaskForkOutsidePool() {
+        new Sum(values(100), 0, 100).fork();
+    }
+
+    @Test
+    public void testRecursiveTaskInvokedOutsidePoolComputesInline() {
+        long[] values = values(10);
+
+        assertEquals(Long.valueOf(45L), new Sum(values, 0, values.length).invoke());
+    }
+
+    static final class DurableTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        static final List<String> RUN = new CopyOnWriteArrayList<>();
+        final String name;
+
+        DurableTask(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            RUN.add(name);
+        }
+    }
+
+    @Test
+    public void testDurableTasksRunAgainAfterShutdownNow() throws Exception {
+        DurableTask.RUN.clear();
+        Path directory = folder.getRoot().toPath();
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .journal(directory, JournalSync.ALWAYS)
+                .build();
+        CountDownLatch started = new CountDownLatch(1);
+        executorService.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(WAIT_TIME * 10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(WAIT_TIME, TimeUnit.MILLISECONDS));
+        executorService.executeDurable(new DurableTask("a"));
+        executorService.executeDurable(new DurableTask("b"));
+
+        List<Runnable> queued = executorService.shutdownNow();
+        assertEquals(2, queued.size());
+        assertTrue(queued.get(0) instanceof DurableTask);
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertTrue(DurableTask.RUN.isEmpty());
+
+        FixedExecutorService restarted = builder()
+                .capacity(1)
+                .journal(directory, JournalSync.NEVER)
+                .build();
+        restarted.executeDurable(new DurableTask("c"));
+        restarted.shutdown();
+        assertTrue(restarted.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(Arrays.asList("a", "b", "c"), DurableTask.RUN);
+
+        FixedExecutorService drained = builder()
+                .capacity(1)
+                .journal(directory, JournalSync.NEVER)
+                .build();
+        drained.shutdown();
+        assertTrue(drained.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+        assertEquals(3, DurableTask.RUN.size());
+    }
+
+    @Test
+    public void testExecuteDurableValidation() throws Exception {
+        FixedExecutorService plain = newExecutorService(1);
+        try {
+            plain.executeDurable(new DurableTask("a"));
+            fail();
+        } catch (IllegalStateException e) {
+            // No journal.
+        }
+        plain.shutdown();
+        FixedExecutorService executorService = builder()
+                .capacity(1)
+                .journal(folder.getRoot().toPath(), JournalSync.NEVER)
+                .build();
+        try {
+            executorService.executeDurable(NOOP);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // Lambdas are not serializable.
+        }
+        try {
+            builder().journal(folder.getRoot().toPath(), JournalSync.NEVER).build();
+            fail();
+        } catch (IllegalStateException e) {
+            // The journal is in use.
+        }
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(WAIT_TIME, TimeUnit.MILLISECONDS));
+    }
+}
@@ -0,0 +1,207 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Divide-and-conquer sum and merge sort with recursive tasks on this executor, with a shared queue and with work
+ * stealing, against the same code on a {@link ForkJoinPool} of the same parallelism. Both split down to leaves of a
+ * few thousand elements, fork one half, compute the other and join.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ForkJoinBenchmark {
+    private static final int SIZE = 1 << 20;
+    private static final int THRESHOLD = 1 << 13;
+
+    @Param({"SHARED_QUEUE", "WORK_STEALING", "FORK_JOIN_POOL"})
+    String executor;
+
+    FixedExecutorService executorService;
+    ForkJoinPool forkJoinPool;
+    long[] values;
+    int[] unsorted;
+    int[] data;
+    int[] buffer;
+
+    @Setup
+    public void setUp() {
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        if ("FORK_JOIN_POOL".equals(executor)) {
+            forkJoinPool = new ForkJoinPool(parallelism);
+        } else {
+            executorService = FixedExecutorService.builder()
+                    .capacity(parallelism)
+                    .schedulingMode(SchedulingMode.valueOf(executor))
+                    .build();
+        }
+        Random random = new Random(42);
+        values = new long[SIZE];
+        unsorted = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = random.nextInt(1000);
+            unsorted[i] = random.nextInt();
+        }
+        data = new int[SIZE];
+        buffer = new int[SIZE];
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (forkJoinPool != null) {
+            forkJoinPool.shutdownNow();
+        } else {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public long sum() {
+        if (forkJoinPool != null) {
+            return forkJoinPool.invoke(new ForkJoinSum(values, 0, SIZE));
+        }
+        return executorService.invoke(new Sum(values, 0, SIZE));
+    }
+
+    @Benchmark
+    public int[] sort() {
+        System.arraycopy(unsorted, 0, data, 0, SIZE);
+        if (forkJoinPool != null) {
+            forkJoinPool.invoke(new ForkJoinSort(data, buffer, 0, SIZE));
+        } else {
+            executorService.invoke(new Sort(data, buffer, 0, SIZE));
+        }
+        return data;
+    }
+
+    private static long sumDirectly(long[] values, int from, int to) {
+        long sum = 0L;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Merges the sorted halves of {@code [from, to)} through {@code buffer}.
+     */
+    private static void merge(int[] data, int[] buffer, int from, int middle, int to) {
+        System.arraycopy(data, from, buffer, from, middle - from);
+        int left = from;
+        int right = middle;
+        int target = from;
+        while (left < middle && right < to) {
+            data[target++] = buffer[left] <= data[right] ? buffer[left++] : data[right++];
+        }
+        System.arraycopy(buffer, left, data, target, middle - left);
+    }
+
+    static final class Sum extends RecursiveTask<Long> {
+        private final long[] values;
+        private final int from;
+        private final int to;
+
+        Sum(long[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= THRESHOLD) {
+                return sumDirectly(values, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            Sum left = new Sum(values, from, middle);
+            left.fork();
+            return new Sum(values, middle, to).invoke() + left.join();
+        }
+    }
+
+    static final class Sort extends RecursiveTask<Void> {
+        private final int[] data;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+
+        Sort(int[] data, int[] buffer, int from, int to) {
+            this.data = data;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Void compute() {
+            if (to - from <= THRESHOLD) {
+                Arrays.sort(data, from, to);
+                return null;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Sort(data, buffer, from, middle), new Sort(data, buffer, middle, to));
+            merge(data, buffer, from, middle, to);
+            return null;
+        }
+    }
+
+    static final class ForkJoinSum extends java.util.concurrent.RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final long[] values;
+        private final int from;
+        private final int to;
+
+        ForkJoinSum(long[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from <= THRESHOLD) {
+                return sumDirectly(values, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ForkJoinSum left = new ForkJoinSum(values, from, middle);
+            left.fork();
+            return new ForkJoinSum(values, middle, to).invoke() + left.join();
+        }
+    }
+
+    static final class ForkJoinSort extends java.util.concurrent.RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] data;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+
+        ForkJoinSort(int[] data, int[] buffer, int from, int to) {
+            this.data = data;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                Arrays.sort(data, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ForkJoinSort(data, buffer, from, middle), new ForkJoinSort(data, buffer, middle, to));
+            merge(data, buffer, from, middle, to);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Enqueue-to-start latency for each {@link IdleStrategy}: every operation executes a task and spins until a worker
+ * has started it. The worker is left idle for {@code idleMicros} before each operation so that the strategy, not a
+ * still-hot worker, decides how fast it reacts. Look at the p0.50, p0.99 and p0.999 rows of the sample output.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdleStrategyLatencyBenchmark {
+    @Param({"BUSY_SPIN", "SPIN_WAIT", "YIELD", "BACKOFF", "BLOCKING"})
+    String idleStrategy;
+
+    @Param({"0", "50"})
+    long idleMicros;
+
+    FixedExecutorService executorService;
+    volatile boolean started;
+    final Runnable task = () -> started = true;
+
+    @Setup
+    public void setUp() throws Exception {
+        executorService = FixedExecutorService.builder()
+                .capacity(1)
+                .idleStrategy((IdleStrategy) IdleStrategy.class.getField(idleStrategy).get(null))
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Setup(Level.Invocation)
+    public void idle() {
+        started = false;
+        if (idleMicros > 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(idleMicros));
+        }
+    }
+
+    @Benchmark
+    public boolean enqueueToStart() {
+        executorService.execute(task);
+        while (!started) {
+            SpinWait.onSpinWait();
+        }
+        return started;
+    }
+}
@@ -0,0 +1,69 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class IdleStrategyTest {
+
+    @Test
+    public void testBackoffSchedule() {
+        IdleStrategy strategy = IdleStrategy.backoff(2, 1, 10, 35);
+
+        assertEquals(0L, strategy.idle(1));
+        assertEquals(0L, strategy.idle(2));
+        assertEquals(0L, strategy.idle(3));
+        assertEquals(10L, strategy.idle(4));
+        assertEquals(20L, strategy.idle(5));
+        assertEquals(35L, strategy.idle(6));
+        assertEquals(35L, strategy.idle(Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBackoffRejectsInvertedBounds() {
+        IdleStrategy.backoff(1, 1, 10, 5);
+    }
+
+    @Test
+    public void testEveryStrategyRunsTasks() throws Exception {
+        IdleStrategy[] strategies = {
+                IdleStrategy.BUSY_SPIN,
+                IdleStrategy.SPIN_WAIT,
+                IdleStrategy.YIELD,
+                IdleStrategy.BACKOFF,
+                IdleStrategy.BLOCKING
+        };
+        for (IdleStrategy strategy : strategies) {
+            FixedExecutorService executorService = FixedExecutorService.builder()
+                    .capacity(2)
+                    .idleStrategy(strategy)
+                    .build();
+            for (int i = 0; i < 100; i++) {
+                Future<Integer> result = executorService.submit(() -> 1);
+                assertEquals(new Integer(1), result.get(1, TimeUnit.SECONDS));
+            }
+            executorService.shutdownNow();
+            assertTrue(executorService.awaitTermination(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testTimedParkedWorkerLeavesIdleStackWhenRunning() throws Exception {
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(1)
+                .idleStrategy(IdleStrategy.BACKOFF)
+                .build();
+        Thread.sleep(100);
+
+        // The worker has backed off into timed parks and is registered as idle.
+        assertEquals(1, executorService.idleWorkers.size());
+        Future<Integer> result = executorService.submit(() -> executorService.idleWorkers.size());
+
+        assertEquals(new Integer(0), result.get(1, TimeUnit.SECONDS));
+        executorService.shutdownNow();
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@code executeDurable} from four submitters under each {@link JournalSync} policy, against plain
+ * {@code execute} of the same task without a journal. With {@code ALWAYS} the submitters share their syncs, so the
+ * throughput is bounded by the sync latency of the disk times the number of submitters rather than by the sync
+ * latency alone. Run it on the disk the journal will live on, on tmpfs a sync costs next to nothing.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class JournalBenchmark {
+    private static final Runnable TASK = new BillingTask();
+
+    static final class BillingTask implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        final long account = 42L;
+        final long amount = 1_000L;
+
+        @Override
+        public void run() {
+        }
+    }
+
+    @Param({"OFF", "NEVER", "INTERVAL", "ALWAYS"})
+    String sync;
+
+    FixedExecutorService executorService;
+    Path directory;
+
+    @Setup
+    public void setUp() throws IOException {
+        FixedExecutorService.Builder builder = FixedExecutorService.builder().capacity(2);
+        if (!"OFF".equals(sync)) {
+            directory = Files.createTempDirectory("journal-benchmark");
+            builder.journal(directory, JournalSync.valueOf(sync));
+        }
+        executorService = builder.build();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        executorService.shutdown();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+        if (directory != null) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    @Benchmark
+    public void enqueue() {
+        if (directory == null) {
+            executorService.execute(TASK);
+        } else {
+            executorService.executeDurable(TASK);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Time to run a batch of small tasks spread over a number of keys: without ordering, through the keyed serial lanes,
+ * and with the usual wrapper that takes a lock per key around every task, which keeps the tasks of a key apart but
+ * parks workers on contended locks and does not even preserve submission order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyedExecutionBenchmark {
+    private static final int TASK_COUNT = 1_000;
+
+    @Param({"4", "1024"})
+    int keys;
+
+    @Param({"100"})
+    int work;
+
+    FixedExecutorService executorService;
+    ReentrantLock[] locks;
+
+    @Setup
+    public void setUp() {
+        int capacity = Runtime.getRuntime().availableProcessors();
+        executorService = FixedExecutorService.builder().capacity(capacity).build();
+        locks = new ReentrantLock[keys];
+        for (int i = 0; i < keys; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public void unkeyed() throws Exception {
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            executorService.execute(() -> {
+                Blackhole.consumeCPU(work);
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+    @Benchmark
+    public void keyed() throws Exception {
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            executorService.execute(i % keys, () -> {
+                Blackhole.consumeCPU(work);
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+
+    @Benchmark
+    public void lockWrapper() throws Exception {
+        CountDownLatch done = new CountDownLatch(TASK_COUNT);
+        for (int i = 0; i < TASK_COUNT; i++) {
+            ReentrantLock lock = locks[i % keys];
+            executorService.execute(() -> {
+                lock.lock();
+                try {
+                    Blackhole.consumeCPU(work);
+                } finally {
+                    lock.unlock();
+                }
+                done.countDown();
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,47 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketsAreContiguous() {
+        for (int index = 1; index < HistogramRecorder.BUCKET_COUNT; index++) {
+            long lowest = HistogramRecorder.highestValueAt(index - 1) + 1;
+            assertEquals(index, HistogramRecorder.indexOf(lowest));
+            assertEquals(index, HistogramRecorder.indexOf(HistogramRecorder.highestValueAt(index)));
+        }
+        assertEquals(HistogramRecorder.BUCKET_COUNT - 1, HistogramRecorder.indexOf(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentilesWithinRelativeError() {
+        HistogramRecorder recorder = new HistogramRecorder();
+        for (long value = 1; value <= 100_000; value++) {
+            recorder.record(value * 1000);
+        }
+
+        LatencyHistogram histogram = LatencyHistogram.of(Collections.singletonList(recorder));
+
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000_000, histogram.getValueAtPercentile(50), 50_000_000 * 0.04);
+        assertEquals(99_000_000, histogram.getValueAtPercentile(99), 99_000_000 * 0.04);
+        assertEquals(99_900_000, histogram.getValueAtPercentile(99.9), 99_900_000 * 0.04);
+        assertEquals(100_000_000, histogram.getMax(), 100_000_000 * 0.04);
+        assertEquals(50_000_500, histogram.getMean(), 50_000_500 * 0.04);
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = LatencyHistogram.of(Collections.singletonList(new HistogramRecorder()));
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMax());
+    }
+
+}
@@ -0,0 +1,138 @@
+package com.ushakov;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class LinuxAffinityTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testParseCpuList() {
+        assertArrayEquals(new int[]{0, 1, 2, 3, 8, 10, 11}, LinuxAffinity.parseCpuList("0-3,8,10-11"));
+        assertArrayEquals(new int[]{1, 2}, LinuxAffinity.parseCpuList(" 2 , 1-2\n"));
+        assertEquals("0,2,5", LinuxAffinity.formatCpuList(new int[]{0, 2, 5}));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseCpuListRejectsInvertedRange() {
+        LinuxAffinity.parseCpuList("3-1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseCpuListRejectsGarbage() {
+        LinuxAffinity.parseCpuList("0,x");
+    }
+
+    @Test
+    public void testPerSocketSpreadsWorkersOverSockets() throws Exception {
+        Path sysfs = twoSockets();
+
+        LinuxAffinity affinity = LinuxAffinity.perSocket(sysfs);
+
+        assertEquals(2, affinity.groupCount());
+        assertArrayEquals(new int[]{0, 1}, affinity.cpus(0));
+        assertArrayEquals(new int[]{2, 3}, affinity.cpus(1));
+        assertArrayEquals(new int[]{0, 1}, affinity.cpus(2));
+        assertEquals(0, affinity.group(0));
+        assertEquals(1, affinity.group(1));
+        assertEquals(0, affinity.group(2));
+    }
+
+    @Test
+    public void testCpusGroupsWorkersBySocket() throws Exception {
+        Path sysfs = twoSockets();
+
+        LinuxAffinity affinity = LinuxAffinity.cpus(sysfs, new int[]{1, 2, 3});
+
+        assertEquals(2, affinity.groupCount());
+        assertArrayEquals(new int[]{1}, affinity.cpus(0));
+        assertArrayEquals(new int[]{3}, affinity.cpus(2));
+        assertArrayEquals(new int[]{1}, affinity.cpus(3));
+        assertEquals(0, affinity.group(0));
+        assertEquals(1, affinity.group(1));
+        assertEquals(1, affinity.group(2));
+    }
+
+    @Test
+    public void testCpusAreLaidOutSocketBySocket() throws Exception {
+        Path sysfs = topology(0, 1, 0, 1);
+
+        LinuxAffinity affinity = LinuxAffinity.cpus(sysfs, LinuxAffinity.parseCpuList("3,0,1,2"));
+
+        assertArrayEquals(new int[]{0}, affinity.cpus(0));
+        assertArrayEquals(new int[]{2}, affinity.cpus(1));
+        assertArrayEquals(new int[]{1}, affinity.cpus(2));
+        assertArrayEquals(new int[]{3}, affinity.cpus(3));
+        assertEquals(0, affinity.group(1));
+        assertEquals(1, affinity.group(2));
+    }
+
+    @Test
+    public void testWorkersArePinned() throws Exception {
+        assumeTrue(Files.exists(Paths.get("/proc/thread-self")) && Files.isExecutable(Paths.get("/usr/bin/taskset")));
+        List<Throwable> failures = new CopyOnWriteArrayList<>();
+        FixedExecutorService executorService = FixedExecutorService.builder()
+                .capacity(2)
+                .workerPlacement(LinuxAffinity.cpus("0"))
+                .uncaughtExceptionHandler((thread, e) -> failures.add(e))
+                .build();
+
+        String affinity = executorService.submit(() -> {
+            String threadId = Files.readSymbolicLink(Paths.get("/proc/thread-self")).getFileName().toString();
+            Process process = new ProcessBuilder("taskset", "-p", "-c", threadId).start();
+            process.waitFor(5, TimeUnit.SECONDS);
+            return new String(readAll(process), StandardCharsets.US_ASCII).trim();
+        }).get();
+
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertTrue(affinity, affinity.endsWith(": 0"));
+        executorService.shutdownNow();
+    }
+
+    private static byte[] readAll(Process process) throws IOException {
+        byte[] buffer = new byte[256];
+        int length = 0;
+        int count;
+        while ((count = process.getInputStream().read(buffer, length, buffer.length - length)) > 0) {
+            length += count;
+        }
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, length);
+        return result;
+    }
+
+    private Path twoSockets() throws IOException {
+        return topology(0, 0, 1, 1);
+    }
+
+    /**
+     * Fake sysfs with CPU {@code i} online on socket {@code sockets[i]}.
+     */
+    private Path topology(int... sockets) throws IOException {
+        Path sysfs = folder.getRoot().toPath();
+        Path cpu = sysfs.resolve("devices/system/cpu");
+        Files.createDirectories(cpu);
+        Files.write(cpu.resolve("online"), ("0-" + (sockets.length - 1) + "\n").getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < sockets.length; i++) {
+            Path topology = cpu.resolve("cpu" + i + "/topology");
+            Files.createDirectories(topology);
+            Files.write(topology.resolve("physical_package_id"),
+                    (sockets[i] + "\n").getBytes(StandardCharsets.US_ASCII));
+        }
+        return sysfs;
+    }
+}
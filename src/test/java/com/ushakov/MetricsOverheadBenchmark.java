@@ -0,0 +1,53 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Throughput of {@link FixedExecutorService#execute} for trivial tasks with metrics off and on. Every operation
+ * executes a burst of tasks and waits until they have all run, the two scores should stay within a few percent.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsOverheadBenchmark {
+    private static final int BURST = 1000;
+
+    @Param({"false", "true"})
+    boolean metricsEnabled;
+
+    FixedExecutorService executorService;
+    final AtomicInteger remaining = new AtomicInteger();
+    final Runnable task = remaining::decrementAndGet;
+
+    @Setup
+    public void setUp() {
+        executorService = FixedExecutorService.builder()
+                .capacity(Runtime.getRuntime().availableProcessors())
+                .metricsEnabled(metricsEnabled)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int executeBurst() {
+        remaining.set(BURST);
+        for (int i = 0; i < BURST; i++) {
+            executorService.execute(task);
+        }
+        while (remaining.get() > 0) {
+            Thread.yield();
+        }
+        return BURST;
+    }
+}
@@ -0,0 +1,219 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PriorityLaneQueueTest {
+    private static final long NO_AGING = Long.MAX_VALUE;
+
+    private static PrioritizedTask tagged(Priority priority) {
+        return new PrioritizedTask(new Tag(priority), priority);
+    }
+
+    private static Priority priorityOf(Runnable task) {
+        return ((Tag) task).priority;
+    }
+
+    @Test
+    public void testStrictPriority() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(null, NO_AGING, FixedExecutorService.UNBOUNDED, false, false);
+        Runnable low = () -> {
+        };
+        Runnable normal = () -> {
+        };
+        Runnable high = () -> {
+        };
+
+        queue.offer(new PrioritizedTask(low, Priority.LOW));
+        queue.offer(normal);
+        queue.offer(new PrioritizedTask(high, Priority.HIGH));
+
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.size(Priority.LOW));
+        assertSame(high, queue.peek());
+        assertSame(high, queue.poll());
+        assertSame(normal, queue.poll());
+        assertSame(low, queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testWeightedRoundRobin() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(new int[]{8, 4, 1}, NO_AGING, FixedExecutorService.UNBOUNDED,
+                false, false);
+        for (int i = 0; i < 130; i++) {
+            for (Priority priority : Priority.values()) {
+                queue.offer(tagged(priority));
+            }
+        }
+
+        Map<Priority, Integer> taken = new EnumMap<>(Priority.class);
+        for (int i = 0; i < 130; i++) {
+            taken.merge(priorityOf(queue.poll()), 1, Integer::sum);
+        }
+
+        assertEquals(Integer.valueOf(80), taken.get(Priority.HIGH));
+        assertEquals(Integer.valueOf(40), taken.get(Priority.NORMAL));
+        assertEquals(Integer.valueOf(10), taken.get(Priority.LOW));
+    }
+
+    @Test
+    public void testRoundRobinIsInterleaved() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(new int[]{2, 1, 1}, NO_AGING, FixedExecutorService.UNBOUNDED,
+                false, false);
+        for (int i = 0; i < 4; i++) {
+            for (Priority priority : Priority.values()) {
+                queue.offer(tagged(priority));
+            }
+        }
+
+        List<Priority> order = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            order.add(priorityOf(queue.poll()));
+        }
+
+        assertEquals(Arrays.asList(Priority.HIGH, Priority.NORMAL, Priority.LOW, Priority.HIGH), order);
+    }
+
+    @Test
+    public void testEmptyLaneGivesUpItsTurn() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(new int[]{1, 1, 1}, NO_AGING, FixedExecutorService.UNBOUNDED,
+                false, false);
+        Runnable low = () -> {
+        };
+
+        queue.offer(new PrioritizedTask(low, Priority.LOW));
+
+        assertSame(low, queue.poll());
+    }
+
+    @Test
+    public void testAgingServesStarvedLane() throws Exception {
+        PriorityLaneQueue queue = new PriorityLaneQueue(null, TimeUnit.MILLISECONDS.toNanos(20),
+                FixedExecutorService.UNBOUNDED, false, false);
+        Runnable low = () -> {
+        };
+        queue.offer(new PrioritizedTask(low, Priority.LOW));
+        Thread.sleep(30);
+        for (int i = 0; i < 3; i++) {
+            queue.offer(new PrioritizedTask(() -> {
+            }, Priority.HIGH));
+        }
+
+        assertSame(low, queue.poll());
+    }
+
+    @Test
+    public void testBoundedLanes() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(null, NO_AGING, 2, false, false);
+
+        assertTrue(queue.offer(new PrioritizedTask(() -> {
+        }, Priority.HIGH)));
+        assertTrue(queue.offer(new PrioritizedTask(() -> {
+        }, Priority.HIGH)));
+        assertFalse(queue.offer(new PrioritizedTask(() -> {
+        }, Priority.HIGH)));
+        assertTrue(queue.offer(() -> {
+        }));
+    }
+
+    @Test
+    public void testWaitTimes() throws Exception {
+        PriorityLaneQueue queue = new PriorityLaneQueue(null, NO_AGING, FixedExecutorService.UNBOUNDED, true, false);
+        queue.addAll(Arrays.asList(new PrioritizedTask(() -> {
+        }, Priority.LOW), new PrioritizedTask(() -> {
+        }, Priority.LOW)));
+        Thread.sleep(5);
+
+        queue.poll();
+        queue.poll();
+
+        LatencyHistogram waitTime = queue.waitTime(Priority.LOW);
+        assertEquals(2, waitTime.getCount());
+        assertTrue(waitTime.getMax() >= TimeUnit.MILLISECONDS.toNanos(5));
+        assertEquals(0, queue.waitTime(Priority.HIGH).getCount());
+    }
+
+    @Test
+    public void testIteratorAndRemoveIf() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(null, NO_AGING, FixedExecutorService.UNBOUNDED, false, false);
+        Runnable low = () -> {
+        };
+        Runnable high = () -> {
+        };
+        queue.offer(new PrioritizedTask(low, Priority.LOW));
+        queue.offer(new PrioritizedTask(high, Priority.HIGH));
+
+        List<Runnable> tasks = new ArrayList<>(queue);
+        assertEquals(Arrays.asList(high, low), tasks);
+
+        assertTrue(queue.removeIf(task -> task == high));
+        assertEquals(1, queue.size());
+        assertSame(low, queue.poll());
+    }
+
+    @Test
+    public void testRecycledEntries() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(null, NO_AGING, FixedExecutorService.UNBOUNDED, false, true);
+        Tag first = new Tag(Priority.HIGH);
+        Tag second = new Tag(Priority.LOW);
+        PrioritizedTask entry = queue.wrap(first, Priority.HIGH);
+        queue.offer(entry);
+        int generation = entry.generation;
+
+        assertSame(first, queue.poll());
+        assertNull(entry.snapshot(generation));
+        assertSame(entry, queue.wrap(second, Priority.LOW));
+        // A reader that found the entry before it was recycled does not mistake the new task for the one it found.
+        assertNull(entry.snapshot(generation));
+        assertSame(second, entry.snapshot(entry.generation));
+        assertEquals(Priority.LOW, entry.priority);
+    }
+
+    @Test
+    public void testIteratorIgnoresEntryRequeuedForAnotherTask() {
+        PriorityLaneQueue queue = new PriorityLaneQueue(null, NO_AGING, FixedExecutorService.UNBOUNDED, false, true);
+        Tag first = new Tag(Priority.NORMAL);
+        Tag second = new Tag(Priority.NORMAL);
+        Tag third = new Tag(Priority.NORMAL);
+        queue.offer(first);
+        queue.offer(second);
+
+        Iterator<Runnable> iterator = queue.iterator();
+        assertSame(first, iterator.next());
+        // A worker takes both tasks, and the entry of the second, which the iterator is about to return, carries a new
+        // task into the same lane. The entry of the first goes to another task first.
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        queue.wrap(new Tag(Priority.HIGH), Priority.HIGH);
+        queue.offer(third);
+
+        List<Runnable> rest = new ArrayList<>();
+        iterator.forEachRemaining(rest::add);
+        assertEquals(Collections.singletonList(second), rest);
+        assertEquals(Collections.singletonList(third), new ArrayList<>(queue));
+    }
+
+    private static final class Tag implements Runnable {
+        final Priority priority;
+
+        Tag(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+}
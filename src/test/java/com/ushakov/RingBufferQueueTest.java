@@ -0,0 +1,199 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class RingBufferQueueTest {
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new RingBufferQueue<Integer>(1).capacity());
+        assertEquals(8, new RingBufferQueue<Integer>(5).capacity());
+        assertEquals(1024, new RingBufferQueue<Integer>(1024).capacity());
+    }
+
+    @Test
+    public void testOfferFailsWhenFull() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(2);
+
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertFalse(queue.offer(3));
+        assertEquals(2, queue.size());
+    }
+
+    @Test
+    public void testSingleSlotQueue() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(1);
+
+        assertTrue(queue.offer(1));
+        assertFalse(queue.offer(2));
+        assertEquals(0, queue.offerBatch(Arrays.asList(3, 4), 0));
+        assertEquals(1, (int) queue.poll());
+        assertEquals(1, queue.offerBatch(Arrays.asList(3, 4), 0));
+        assertFalse(queue.offer(5));
+        assertEquals(3, (int) queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testFifoOrderAcrossWrapAround() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.offer(i));
+            assertTrue(queue.offer(i + 100));
+            assertEquals(new Integer(i), queue.peek());
+            assertEquals(new Integer(i), queue.poll());
+            assertEquals(new Integer(i + 100), queue.poll());
+        }
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testIterator() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+        queue.offer(1);
+        queue.offer(2);
+        queue.poll();
+        queue.offer(3);
+
+        List<Integer> result = new ArrayList<>(queue);
+
+        assertEquals(2, result.size());
+        assertEquals(new Integer(2), result.get(0));
+        assertEquals(new Integer(3), result.get(1));
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws Exception {
+        int producers = 4;
+        int perProducer = 10_000;
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(64);
+        Set<Integer> consumed = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(producers * perProducer);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+            threads.add(new Thread(() -> {
+                while (done.getCount() > 0) {
+                    Integer value = queue.poll();
+                    if (value == null) {
+                        Thread.yield();
+                    } else {
+                        assertTrue(consumed.add(value));
+                        done.countDown();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * perProducer, consumed.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testOfferBatch() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+        List<Integer> elements = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            elements.add(i);
+        }
+        queue.offer(-1);
+
+        assertEquals(3, queue.offerBatch(elements, 0));
+        assertEquals(0, queue.offerBatch(elements, 3));
+        assertEquals(new Integer(-1), queue.poll());
+        assertEquals(1, queue.offerBatch(elements, 3));
+        for (int i = 0; i < 4; i++) {
+            assertEquals(new Integer(i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testPollBatch() {
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+        Integer[] batch = new Integer[3];
+
+        assertEquals(0, queue.pollBatch(batch));
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.offer(lap * 4 + i));
+            }
+
+            assertEquals(3, queue.pollBatch(batch));
+            assertArrayEquals(new Integer[]{lap * 4, lap * 4 + 1, lap * 4 + 2}, batch);
+            assertEquals(1, queue.pollBatch(batch));
+            assertEquals(new Integer(lap * 4 + 3), batch[0]);
+            assertTrue(queue.isEmpty());
+        }
+    }
+
+    @Test
+    public void testConcurrentBatchConsumers() throws Exception {
+        int producers = 4;
+        int perProducer = 10_000;
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(64);
+        Set<Integer> consumed = ConcurrentHashMap.newKeySet();
+        CountDownLatch done = new CountDownLatch(producers * perProducer);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int p = 0; p < producers; p++) {
+            int base = p * perProducer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!queue.offer(base + i)) {
+                        Thread.yield();
+                    }
+                }
+            }));
+            threads.add(new Thread(() -> {
+                Integer[] batch = new Integer[8];
+                while (done.getCount() > 0) {
+                    int count = queue.pollBatch(batch);
+                    if (count == 0) {
+                        Thread.yield();
+                    }
+                    for (int i = 0; i < count; i++) {
+                        assertTrue(consumed.add(batch[i]));
+                        done.countDown();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(producers * perProducer, consumed.size());
+        assertTrue(queue.isEmpty());
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip (submit and wait for the result) of a trivial task with 1, 4, 16 and 64 producer threads, reported both
+ * as throughput and as a latency distribution for each {@link SchedulingMode}.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SchedulingBenchmark {
+    private static final Callable<Integer> TASK = () -> 1;
+
+    @Param({"SHARED_QUEUE", "WORK_STEALING"})
+    SchedulingMode schedulingMode;
+
+    FixedExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        executorService = FixedExecutorService.builder()
+                .capacity(Runtime.getRuntime().availableProcessors())
+                .schedulingMode(schedulingMode)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Integer producers1() throws Exception {
+        return executorService.submit(TASK).get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Integer producers4() throws Exception {
+        return executorService.submit(TASK).get();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Integer producers16() throws Exception {
+        return executorService.submit(TASK).get();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public Integer producers64() throws Exception {
+        return executorService.submit(TASK).get();
+    }
+}
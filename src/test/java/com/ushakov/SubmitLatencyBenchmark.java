@@ -0,0 +1,49 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Submit-to-return latency of {@link FixedExecutorService#submit(Callable)}.
+ *
+ * {@code roundTrip} reproduces the previous behaviour where submit only returned after the task finished,
+ * {@code submit} measures the non-blocking path. Run with
+ * {@code java -cp target/test-classes:<test classpath> org.openjdk.jmh.Main SubmitLatencyBenchmark}.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubmitLatencyBenchmark {
+    private static final Callable<Integer> TASK = () -> 1;
+
+    @Param({"1", "4"})
+    int capacity;
+
+    FixedExecutorService executorService;
+
+    @Setup
+    public void setUp() {
+        executorService = new FixedExecutorService(capacity);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public Future<Integer> submit() {
+        return executorService.submit(TASK);
+    }
+
+    @Benchmark
+    public Integer roundTrip() throws Exception {
+        return executorService.submit(TASK).get();
+    }
+}
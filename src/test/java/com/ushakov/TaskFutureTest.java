@@ -0,0 +1,198 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TaskFutureTest {
+    private static final Callable<Integer> TEST = () -> {
+        return 1;
+    };
+
+    @Test
+    public void testRunSuccess() throws Exception {
+        TaskFuture<Integer> future = new TaskFuture<>(TEST);
+        assertFalse(future.isDone());
+        future.run();
+        assertTrue(future.isDone());
+        assertFalse(future.isCancelled());
+        assertEquals(new Integer(1), future.get());
+    }
+
+    @Test
+    public void testRunnableWithResult() throws Exception {
+        TaskFuture<String> future = new TaskFuture<>(() -> {
+        }, "Result value");
+        future.run();
+        assertEquals("Result value", future.get());
+    }
+
+    @Test
+    public void testRunThrowsException() throws Exception {
+        RuntimeException exception = new RuntimeException("Test exception");
+        TaskFuture<Integer> future = new TaskFuture<>(() -> {
+            throw exception;
+        });
+
+        future.run();
+
+        assertTrue(future.isDone());
+        try {
+            future.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertSame(exception, e.getCause());
+        }
+    }
+
+    @Test(expected = CancellationException.class)
+    public void testCancelBeforeRun() throws Exception {
+        TaskFuture<Integer> future = new TaskFuture<>(TEST);
+
+        assertTrue(future.cancel(false));
+        assertTrue(future.isCancelled());
+        assertTrue(future.isDone());
+        assertFalse(future.cancel(false));
+
+        future.run();
+        future.get();
+    }
+
+    @Test
+    public void testCancelAfterRun() {
+        TaskFuture<Integer> future = new TaskFuture<>(TEST);
+        future.run();
+
+        assertFalse(future.cancel(true));
+        assertFalse(future.isCancelled());
+    }
+
+    @Test
+    public void testCancelInterruptsRunner() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        TaskFuture<Integer> future = new TaskFuture<>(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return 1;
+        });
+        Thread thread = new Thread(future);
+        thread.start();
+        started.await();
+
+        assertTrue(future.cancel(true));
+
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        thread.join(1000);
+        assertTrue(future.isCancelled());
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void testGetWithTimeout() throws Exception {
+        TaskFuture<Integer> future = new TaskFuture<>(TEST);
+        future.get(100, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testGetWaitsForCompletion() throws Exception {
+        TaskFuture<Integer> future = new TaskFuture<>(() -> {
+            Thread.sleep(50);
+            return 1;
+        });
+        new Thread(future).start();
+
+        assertEquals(new Integer(1), future.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRunAndReset() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        TaskFuture<Integer> future = new TaskFuture<>(runs::incrementAndGet);
+
+        assertTrue(future.runAndReset());
+        assertTrue(future.runAndReset());
+        assertFalse(future.isDone());
+        assertEquals(2, runs.get());
+
+        future.run();
+        assertEquals(new Integer(3), future.get());
+        assertFalse(future.runAndReset());
+    }
+
+    @Test
+    public void testRunAndResetFailure() {
+        TaskFuture<Integer> future = new TaskFuture<>(() -> {
+            throw new IllegalStateException();
+        });
+
+        assertFalse(future.runAndReset());
+        assertTrue(future.isDone());
+    }
+
+    @Test
+    public void testStageCompletesWithResult() throws Exception {
+        TaskFuture<Integer> future = new TaskFuture<>(TEST);
+        CompletableFuture<Integer> next = future.thenApply(value -> value + 1);
+
+        assertFalse(next.isDone());
+        future.run();
+
+        assertEquals(Integer.valueOf(2), next.getNow(null));
+    }
+
+    @Test
+    public void testStageAttachedAfterCompletion() throws Exception {
+        TaskFuture<Integer> future = new TaskFuture<>(TEST);
+        future.run();
+
+        assertEquals(Integer.valueOf(2), future.thenApply(value -> value + 1).getNow(null));
+    }
+
+    @Test
+    public void testStageCompletesExceptionally() {
+        IllegalStateException exception = new IllegalStateException();
+        TaskFuture<Integer> future = new TaskFuture<>(() -> {
+            throw exception;
+        });
+        CompletableFuture<Throwable> failure = future.handle((value, e) -> e);
+
+        future.run();
+
+        assertSame(exception, failure.getNow(null));
+    }
+
+    @Test
+    public void testCancellingTaskCancelsStage() {
+        TaskFuture<Integer> future = new TaskFuture<>(TEST);
+        CompletableFuture<Integer> stage = future.toCompletableFuture();
+
+        future.cancel(false);
+
+        assertTrue(stage.isCancelled());
+    }
+
+    @Test
+    public void testCancellingStageCancelsTask() {
+        AtomicInteger runs = new AtomicInteger();
+        TaskFuture<Integer> future = new TaskFuture<>(runs::incrementAndGet);
+
+        assertTrue(future.toCompletableFuture().cancel(false));
+        future.run();
+
+        assertTrue(future.isCancelled());
+        assertEquals(0, runs.get());
+    }
+}
@@ -0,0 +1,163 @@
+package com.ushakov;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TaskJournalTest {
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static final class Named implements Runnable, Serializable {
+        private static final long serialVersionUID = 1L;
+        final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+        }
+    }
+
+    private TaskJournal open(Path directory) throws IOException {
+        return new TaskJournal(directory, SEGMENT_SIZE, JournalSync.ALWAYS, TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    private static List<String> names(List<JournaledTask> tasks) {
+        List<String> names = new ArrayList<>();
+        for (JournaledTask task : tasks) {
+            names.add(((Named) task.task).name);
+        }
+        return names;
+    }
+
+    private static List<Path> segmentFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    @Test
+    public void testRecoversUnacknowledgedTasksInOrder() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        TaskJournal journal = open(directory);
+        journal.append(new Named("a"));
+        JournaledTask b = journal.append(new Named("b"));
+        journal.append(new Named("c"));
+        b.run();
+        journal.close();
+
+        TaskJournal reopened = open(directory);
+
+        List<JournaledTask> recovered = reopened.recovered();
+        assertEquals(Arrays.asList("a", "c"), names(recovered));
+        assertTrue(reopened.recovered().isEmpty());
+        for (JournaledTask task : recovered) {
+            task.run();
+        }
+        reopened.close();
+        TaskJournal drained = open(directory);
+        assertTrue(drained.recovered().isEmpty());
+        drained.close();
+    }
+
+    @Test
+    public void testDeletesSegmentsOnceAcknowledged() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        TaskJournal journal = open(directory);
+        List<JournaledTask> tasks = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            tasks.add(journal.append(new Named("task-" + i)));
+        }
+        assertTrue(journal.getSegmentCount() > 2);
+
+        for (int i = 1; i < tasks.size(); i++) {
+            tasks.get(i).run();
+        }
+        // The first task holds back every newer segment.
+        assertTrue(journal.getSegmentCount() > 2);
+        tasks.get(0).run();
+
+        assertEquals(1, journal.getSegmentCount());
+        assertEquals(1, segmentFiles(directory).size());
+        journal.close();
+    }
+
+    @Test
+    public void testRecoveryStopsAtDamagedRecord() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        TaskJournal journal = open(directory);
+        journal.append(new Named("a"));
+        journal.append(new Named("b"));
+        journal.close();
+        Path segment = segmentFiles(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            channel.read(length, 0L);
+            int second = length.getInt(0);
+            // Flips the last payload byte of the second record.
+            ByteBuffer last = ByteBuffer.allocate(4);
+            channel.read(last, second);
+            ByteBuffer flipped = ByteBuffer.allocate(1);
+            channel.read(flipped, second + last.getInt(0) - 1);
+            flipped.put(0, (byte) ~flipped.get(0));
+            flipped.flip();
+            channel.write(flipped, second + last.getInt(0) - 1);
+        }
+
+        TaskJournal reopened = open(directory);
+
+        assertEquals(Arrays.asList("a"), names(reopened.recovered()));
+        reopened.close();
+    }
+
+    @Test
+    public void testDirectoryIsOpenedByOneJournalOnly() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        TaskJournal journal = open(directory);
+
+        try {
+            open(directory);
+            fail();
+        } catch (IllegalStateException e) {
+            // Locked.
+        }
+        journal.close();
+        open(directory).close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsTaskLargerThanSegment() throws Exception {
+        TaskJournal journal = open(folder.getRoot().toPath());
+        try {
+            char[] name = new char[SEGMENT_SIZE];
+            Arrays.fill(name, 'x');
+            journal.append(new Named(new String(name)));
+        } finally {
+            journal.close();
+        }
+    }
+}
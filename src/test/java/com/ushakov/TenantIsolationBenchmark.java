@@ -0,0 +1,93 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a short task of a quiet tenant while a noisy tenant keeps the pool flooded with {@code invokeAll}
+ * batches of longer tasks from two threads. Look at the p0.99 line: in one shared queue the quiet task waits behind
+ * whole batches, hundreds of noisy tasks, while with fair shares it waits for about one noisy task per worker, and
+ * with the noisy tenant capped below the capacity for hardly any.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TenantIsolationBenchmark {
+    private static final int BATCH_SIZE = 256;
+    private static final Callable<Integer> QUIET_TASK = () -> 1;
+
+    @Param({"SHARED", "FAIR", "FAIR_CAPPED"})
+    String scheduling;
+
+    @Param({"2000"})
+    int noisyWork;
+
+    FixedExecutorService executorService;
+    Tenant quiet;
+    volatile boolean flooding;
+    List<Thread> floods;
+
+    @Setup
+    public void setUp() {
+        int capacity = Math.max(2, Runtime.getRuntime().availableProcessors());
+        FixedExecutorService.Builder builder = FixedExecutorService.builder().capacity(capacity);
+        if ("FAIR".equals(scheduling)) {
+            builder.tenant("noisy", 1).tenant("quiet", 1);
+        } else if ("FAIR_CAPPED".equals(scheduling)) {
+            builder.tenant("noisy", 1, capacity - 1).tenant("quiet", 1);
+        }
+        executorService = builder.build();
+        Tenant noisy = "SHARED".equals(scheduling) ? null : executorService.getTenant("noisy");
+        quiet = noisy == null ? null : executorService.getTenant("quiet");
+        List<Callable<Integer>> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            batch.add(() -> {
+                Blackhole.consumeCPU(noisyWork);
+                return 0;
+            });
+        }
+        flooding = true;
+        floods = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            Thread flood = new Thread(() -> {
+                try {
+                    while (flooding) {
+                        if (noisy == null) {
+                            executorService.invokeAll(batch);
+                        } else {
+                            executorService.invokeAll(batch, noisy);
+                        }
+                    }
+                } catch (Exception e) {
+                    // Shut down.
+                }
+            });
+            flood.start();
+            floods.add(flood);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        flooding = false;
+        executorService.shutdownNow();
+        for (Thread flood : floods) {
+            // Its batch may have been drained by shutdownNow() and would never complete.
+            flood.interrupt();
+            flood.join();
+        }
+    }
+
+    @Benchmark
+    public Integer quietRoundTrip() throws Exception {
+        return (quiet == null ? executorService.submit(QUIET_TASK) : executorService.submit(QUIET_TASK, quiet)).get();
+    }
+}
@@ -0,0 +1,176 @@
+package com.ushakov;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class TenantQueueTest {
+    private static final long COST = 1_000L;
+
+    private static TenantQueue queue(int weightA, int weightB, int maxConcurrencyA) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("a", weightA);
+        weights.put("b", weightB);
+        Map<String, Integer> maxConcurrency = new HashMap<>();
+        maxConcurrency.put("a", maxConcurrencyA);
+        return new TenantQueue(weights, maxConcurrency, FixedExecutorService.UNBOUNDED, false, false);
+    }
+
+    private static void offer(TenantQueue queue, String tenant, int count) {
+        for (int i = 0; i < count; i++) {
+            queue.offer(queue.wrap(() -> {
+            }, queue.tenant(tenant)));
+        }
+    }
+
+    private static String tenantOf(Runnable task) {
+        return ((TenantTask) task).tenant.getName();
+    }
+
+    @Test
+    public void testWeightedShares() {
+        TenantQueue queue = queue(3, 1, Tenant.UNLIMITED);
+        queue.tenant("a").averageCost = COST;
+        queue.tenant("b").averageCost = COST;
+        offer(queue, "a", 100);
+        offer(queue, "b", 100);
+
+        int takenByA = 0;
+        for (int i = 0; i < 40; i++) {
+            if ("a".equals(tenantOf(queue.poll()))) {
+                takenByA++;
+            }
+        }
+
+        assertEquals(30, takenByA);
+    }
+
+    @Test
+    public void testLongTasksCountMoreThanShortOnes() {
+        TenantQueue queue = queue(1, 1, Tenant.UNLIMITED);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(queue.wrap(() -> {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, queue.tenant("a")));
+        }
+        offer(queue, "b", 100);
+
+        Runnable first = queue.poll();
+        assertEquals("a", tenantOf(first));
+        first.run();
+        for (int i = 0; i < 50; i++) {
+            Runnable task = queue.poll();
+            assertEquals("b", tenantOf(task));
+            task.run();
+        }
+        assertEquals(1, queue.tenant("a").getCompletedTaskCount());
+        assertEquals(50, queue.tenant("b").getCompletedTaskCount());
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        TenantQueue queue = queue(1, 1, 1);
+        offer(queue, "a", 3);
+
+        Runnable first = queue.poll();
+
+        assertEquals("a", tenantOf(first));
+        assertNull(queue.poll());
+        assertTrue(queue.isEmpty());
+        assertEquals(2, queue.size());
+        assertEquals(1, queue.tenant("a").getActiveCount());
+        first.run();
+        assertFalse(queue.isEmpty());
+        assertEquals("a", tenantOf(queue.poll()));
+    }
+
+    @Test
+    public void testIdleTenantDoesNotBankTime() {
+        TenantQueue queue = queue(1, 1, Tenant.UNLIMITED);
+        queue.tenant("a").averageCost = COST;
+        queue.tenant("b").averageCost = COST;
+        offer(queue, "a", 100);
+        for (int i = 0; i < 50; i++) {
+            assertEquals("a", tenantOf(queue.poll()));
+        }
+
+        offer(queue, "b", 50);
+        int takenByB = 0;
+        for (int i = 0; i < 20; i++) {
+            if ("b".equals(tenantOf(queue.poll()))) {
+                takenByB++;
+            }
+        }
+
+        assertTrue(String.valueOf(takenByB), takenByB >= 9 && takenByB <= 11);
+    }
+
+    @Test
+    public void testPollQueuedIgnoresLimits() {
+        TenantQueue queue = queue(1, 1, 1);
+        offer(queue, "a", 2);
+        assertNotNull(queue.poll());
+
+        assertEquals("a", tenantOf(queue.pollQueued(null)));
+        assertNull(queue.pollQueued(null));
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testPlainTasksGoToDefaultTenant() {
+        TenantQueue queue = queue(1, 1, Tenant.UNLIMITED);
+        Runnable task = () -> {
+        };
+
+        queue.offer(task);
+
+        assertEquals(1, queue.tenant(Tenant.DEFAULT).getQueueDepth());
+        assertSame(task, queue.peek());
+        Runnable taken = queue.poll();
+        assertEquals(Tenant.DEFAULT, tenantOf(taken));
+        assertSame(task, ((TenantTask) taken).task);
+    }
+
+    @Test
+    public void testIteratorIgnoresEntryRequeuedForAnotherTask() {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        weights.put("a", 1);
+        TenantQueue queue = new TenantQueue(weights, new HashMap<>(), FixedExecutorService.UNBOUNDED, false, true);
+        Tenant tenant = queue.tenant("a");
+        Runnable first = () -> {
+        };
+        Runnable second = () -> {
+        };
+        Runnable third = () -> {
+        };
+        queue.offer(queue.wrap(first, tenant));
+        queue.offer(queue.wrap(second, tenant));
+
+        Iterator<Runnable> iterator = queue.iterator();
+        assertSame(first, iterator.next());
+        // Workers run both tasks, and the entry of the second, which the iterator is about to return, carries a new
+        // task into the same sub-queue. The entry of the first goes to another task first.
+        queue.run((TenantTask) queue.poll());
+        queue.run((TenantTask) queue.poll());
+        queue.wrap(() -> {
+        }, tenant);
+        queue.offer(queue.wrap(third, tenant));
+
+        List<Runnable> rest = new ArrayList<>();
+        iterator.forEachRemaining(rest::add);
+        assertEquals(Collections.singletonList(second), rest);
+        assertEquals(Collections.singletonList(third), new ArrayList<>(queue));
+    }
+}
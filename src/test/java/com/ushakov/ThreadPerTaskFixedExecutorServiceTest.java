@@ -0,0 +1,19 @@
+package com.ushakov;
+
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the {@link FixedExecutorServiceTest} contract with a platform thread per task.
+ */
+public class ThreadPerTaskFixedExecutorServiceTest extends FixedExecutorServiceTest {
+
+    @Override
+    protected FixedExecutorService.Builder builder() {
+        return super.builder().threadPerTask(Executors.defaultThreadFactory());
+    }
+
+    @Override
+    protected boolean isPooled() {
+        return false;
+    }
+}
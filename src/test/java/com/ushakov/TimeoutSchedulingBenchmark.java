@@ -0,0 +1,111 @@
+package com.ushakov;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules 1M timeouts that never fire and cancels all of them, the typical life of a request timeout. Compares the
+ * timing wheel of {@link FixedExecutorService} with a JDK {@link DelayQueue}, cancelled lazily because its
+ * {@code remove} is a linear scan, and with a {@link ScheduledThreadPoolExecutor} that removes cancelled tasks from its
+ * heap.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TimeoutSchedulingBenchmark {
+    private static final Runnable NOOP = () -> {
+    };
+    private static final long TIMEOUT_SECONDS = 30;
+
+    @Param({"1000000"})
+    int timeouts;
+
+    FixedExecutorService executorService;
+    ScheduledThreadPoolExecutor scheduledThreadPool;
+    DelayQueue<Timeout> delayQueue;
+    ScheduledFuture<?>[] futures;
+    Timeout[] delayed;
+
+    @Setup
+    public void setUp() {
+        executorService = new FixedExecutorService(1);
+        scheduledThreadPool = new ScheduledThreadPoolExecutor(1);
+        scheduledThreadPool.setRemoveOnCancelPolicy(true);
+        delayQueue = new DelayQueue<>();
+        futures = new ScheduledFuture<?>[timeouts];
+        delayed = new Timeout[timeouts];
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+        scheduledThreadPool.shutdownNow();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clear() {
+        delayQueue.clear();
+    }
+
+    @Benchmark
+    public int timingWheel() {
+        for (int i = 0; i < timeouts; i++) {
+            futures[i] = executorService.schedule(NOOP, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        for (int i = 0; i < timeouts; i++) {
+            futures[i].cancel(false);
+        }
+        return timeouts;
+    }
+
+    @Benchmark
+    public int scheduledThreadPool() {
+        for (int i = 0; i < timeouts; i++) {
+            futures[i] = scheduledThreadPool.schedule(NOOP, TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        for (int i = 0; i < timeouts; i++) {
+            futures[i].cancel(false);
+        }
+        return timeouts;
+    }
+
+    @Benchmark
+    public int delayQueue() {
+        for (int i = 0; i < timeouts; i++) {
+            Timeout timeout = new Timeout(System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS));
+            delayed[i] = timeout;
+            delayQueue.offer(timeout);
+        }
+        for (int i = 0; i < timeouts; i++) {
+            delayed[i].cancelled = true;
+        }
+        return timeouts;
+    }
+
+    static final class Timeout implements Delayed {
+        final long time;
+        volatile boolean cancelled;
+
+        Timeout(long time) {
+            this.time = time;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(time, ((Timeout) other).time);
+        }
+    }
+}
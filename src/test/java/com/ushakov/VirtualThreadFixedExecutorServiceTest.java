@@ -0,0 +1,26 @@
+package com.ushakov;
+
+import org.junit.Before;
+
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the {@link FixedExecutorServiceTest} contract with a virtual thread per task, skipped before Java 21.
+ */
+public class VirtualThreadFixedExecutorServiceTest extends FixedExecutorServiceTest {
+
+    @Before
+    public void requireVirtualThreads() {
+        assumeTrue(VirtualThreads.isSupported());
+    }
+
+    @Override
+    protected FixedExecutorService.Builder builder() {
+        return super.builder().virtualThreads();
+    }
+
+    @Override
+    protected boolean isPooled() {
+        return false;
+    }
+}